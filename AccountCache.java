@@ -0,0 +1,569 @@
+import java.io.*;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Account residency for AdvancedBankSystem3 when the book is not held as one
+ * BankAccount object per account. Two modes:
+ *  - lazy    (-Dbank.accounts.lazy=true, needs -Dbank.store=binary): the
+ *            records stay in accounts.bin and only an index is in memory
+ *            (account number -> record, BVN -> account number)
+ *  - compact (-Dbank.accounts.compact=true, any store): the whole book is
+ *            loaded into a CompactAccountTable, off the Java heap
+ * Either way a full BankAccount is built from its record the first time it
+ * is asked for and kept in a bounded cache (bank.accounts.cacheSize, default
+ * 100000). The cache is W-TinyLFU: newcomers enter a small LRU window, and
+ * one pushed out of the window only displaces the main area's least recently
+ * used account if a frequency sketch says it is asked for more often. A
+ * one-off sweep (the admin list, a month-end job) therefore cannot flush the
+ * accounts that are in daily use.
+ *
+ * There is never more than one BankAccount per account: every instance
+ * handed out is also registered weakly, so an account dropped from the cache
+ * while a session still holds it is found again instead of being built a
+ * second time. The Ledger relies on this, since it changes balances in place.
+ *
+ * Dirty tracking: journaling an account's state (accountRecord) marks it
+ * dirty, and dirty accounts are held until the next snapshot. A snapshot
+ * then writes back only those accounts to their records (new accounts get
+ * one when they are created, deleted ones are flagged) before the backing
+ * makes itself durable; the journal covers them until then, and compaction
+ * keeps the dirty set bounded by bank.journal.compactEvery.
+ */
+final class AccountCache {
+
+    /**
+     * Where the records live and how they are found. Slots are opaque
+     * record positions. Implementations must allow concurrent reads.
+     */
+    interface Backing {
+        /** Reads the stored book, building the index; feeds every live account (a transient copy). */
+        void load(BinaryAccountStore.RecordFile.Scan sink) throws IOException;
+
+        /** Slot of a live account, or -1. */
+        long slotOf(String accNo);
+
+        /** Account number owning a BVN, or null. */
+        String accountOfBvn(String bvn);
+
+        /** A new BankAccount with the state in slot; null if the record is deleted. */
+        AdvancedBankSystem3.BankAccount read(long slot) throws IOException;
+
+        /** Stores and indexes a new account, returning its slot. */
+        long insert(AdvancedBankSystem3.BankAccount a) throws IOException;
+
+        /** Stores a's current state in its slot; a closed account's record becomes deleted. */
+        void update(long slot, AdvancedBankSystem3.BankAccount a) throws IOException;
+
+        /** Drops a from the index (its record is flagged by a later update). */
+        void unindex(AdvancedBankSystem3.BankAccount a);
+
+        /** Feeds every live account (transient copies), for searches. */
+        void scan(BinaryAccountStore.RecordFile.Scan sink) throws IOException;
+
+        /**
+         * Up to size account numbers from position from, in storage order.
+         * Accounts added or removed during a walk shift the positions.
+         */
+        List<String> accountNumbers(int from, int size);
+
+        int size();
+
+        /** Makes everything updated so far durable (called by snapshots). */
+        void flush() throws IOException;
+    }
+
+    /** A journaled change not yet written back; deletions remember the record they must flag. */
+    private static final class Mark {
+        final long deletedSlot;
+
+        Mark(long deletedSlot) {
+            this.deletedSlot = deletedSlot;
+        }
+    }
+
+    private static final class Ref extends WeakReference<AdvancedBankSystem3.BankAccount> {
+        final String accNo;
+
+        Ref(String accNo, AdvancedBankSystem3.BankAccount a, ReferenceQueue<AdvancedBankSystem3.BankAccount> q) {
+            super(a, q);
+            this.accNo = accNo;
+        }
+    }
+
+    private final Backing backing;
+    private final Map<String, Ref> live = new ConcurrentHashMap<>(); // every instance handed out
+    private final ReferenceQueue<AdvancedBankSystem3.BankAccount> collected = new ReferenceQueue<>();
+    private final Map<AdvancedBankSystem3.BankAccount, Mark> dirty = new ConcurrentHashMap<>(); // identity keys
+    private final Set<AdvancedBankSystem3.BankAccount> unstored = ConcurrentHashMap.newKeySet(); // insert failed
+    private final Residency resident;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    AccountCache(Backing backing, int capacity) {
+        this.backing = backing;
+        this.resident = new Residency(Math.max(2, capacity));
+    }
+
+    /** The cache for lazy or compact mode, or null when every account is a plain object (the default). */
+    static AccountCache fromSystemProperties(ShardLayout layout, AccountStore store) {
+        boolean lazy = Boolean.getBoolean("bank.accounts.lazy");
+        boolean compact = Boolean.getBoolean("bank.accounts.compact");
+        int capacity = Integer.getInteger("bank.accounts.cacheSize", 100_000);
+        if (lazy) {
+            String kind = System.getProperty("bank.store", "csv").trim().toLowerCase(Locale.ROOT);
+            if (kind.equals("binary") || kind.equals("bin")) {
+                try {
+                    return new AccountCache(new FileBacking(layout), capacity);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("cannot open " + BinaryAccountStore.DEFAULT_FILE, e);
+                }
+            }
+            System.out.println("bank.accounts.lazy needs -Dbank.store=binary; "
+                    + (compact ? "using the compact table instead." : "loading all accounts instead."));
+        }
+        return compact ? new AccountCache(new CompactAccountTable(store), capacity) : null;
+    }
+
+    // ---------------- Startup ----------------
+    /**
+     * Loads the backing's index and the totals, then applies what the journal
+     * replay found (final state of changed accounts, and deleted account
+     * numbers). The next snapshot makes those changes durable.
+     */
+    void open(BankStats stats, Collection<AdvancedBankSystem3.BankAccount> replayed, Set<String> deleted) throws IOException {
+        stats.reset();
+        backing.load((slot, a) -> stats.accountOpened(a.accountType, a.balance));
+        for (String accNo : deleted) {
+            long slot = backing.slotOf(accNo);
+            if (slot < 0) continue;
+            AdvancedBankSystem3.BankAccount old = backing.read(slot);
+            if (old == null) continue;
+            stats.accountClosed(old.accountType, old.balance);
+            backing.unindex(old);
+            old.closed = true;
+            backing.update(slot, old);
+        }
+        for (AdvancedBankSystem3.BankAccount a : replayed) {
+            long slot = backing.slotOf(a.accountNumber);
+            if (slot >= 0) {
+                AdvancedBankSystem3.BankAccount old = backing.read(slot);
+                if (old != null) stats.accountClosed(old.accountType, old.balance);
+                backing.update(slot, a);
+            } else {
+                backing.insert(a);
+            }
+            stats.accountOpened(a.accountType, a.balance);
+        }
+    }
+
+    // ---------------- Lookups ----------------
+    /** The account, built from its record if it is not in memory; null if there is none (or it is closed). */
+    AdvancedBankSystem3.BankAccount get(String accNo) {
+        AdvancedBankSystem3.BankAccount a = resident.get(accNo);
+        if (a != null && !a.closed) {
+            hits.increment();
+            return a;
+        }
+        if (a != null) resident.remove(accNo); // closed after a lookup put it back
+        misses.increment();
+        a = canonical(accNo);
+        if (a != null) resident.put(accNo, a);
+        return a;
+    }
+
+    boolean contains(String accNo) {
+        return backing.slotOf(accNo) >= 0;
+    }
+
+    boolean hasBvn(String bvn) {
+        return backing.accountOfBvn(bvn) != null;
+    }
+
+    AdvancedBankSystem3.BankAccount byBvn(String bvn) {
+        String accNo = backing.accountOfBvn(bvn);
+        return accNo == null ? null : get(accNo);
+    }
+
+    int size() {
+        return backing.size();
+    }
+
+    /**
+     * Accounts matching a field the index does not cover (email, phone): a
+     * scan of the records. Dirty accounts are checked as they are in memory.
+     */
+    List<AdvancedBankSystem3.BankAccount> find(Predicate<AdvancedBankSystem3.BankAccount> match) {
+        Set<String> found = new LinkedHashSet<>();
+        try {
+            backing.scan((slot, a) -> {
+                if (match.test(a)) found.add(a.accountNumber);
+            });
+        } catch (IOException e) {
+            System.out.println("Error searching accounts: " + e.getMessage());
+        }
+        for (AdvancedBankSystem3.BankAccount a : dirty.keySet()) {
+            if (!a.closed && match.test(a)) found.add(a.accountNumber);
+        }
+        List<AdvancedBankSystem3.BankAccount> out = new ArrayList<>(found.size());
+        for (String accNo : found) {
+            AdvancedBankSystem3.BankAccount a = canonical(accNo);
+            if (a != null && match.test(a)) out.add(a);
+        }
+        return out;
+    }
+
+    /**
+     * Up to size accounts starting at position from. For bulk walks (admin
+     * list, interest, rebalance): accounts are not admitted to the cache, so
+     * the walk does not displace the working set.
+     */
+    List<AdvancedBankSystem3.BankAccount> page(int from, int size) {
+        List<String> accNos = backing.accountNumbers(from, size);
+        List<AdvancedBankSystem3.BankAccount> out = new ArrayList<>(accNos.size());
+        for (String accNo : accNos) {
+            AdvancedBankSystem3.BankAccount a = canonical(accNo);
+            if (a != null) out.add(a);
+        }
+        return out;
+    }
+
+    /** Cache hits, misses and sizes, for the admin dashboard. */
+    String describe() {
+        long h = hits.sum(), m = misses.sum();
+        return String.format("%d accounts indexed, %d cached, %d pending write-back, hit rate %.1f%% (%d/%d)",
+                backing.size(), resident.size(), dirty.size(), h + m == 0 ? 0.0 : h * 100.0 / (h + m), h, h + m);
+    }
+
+    // ---------------- Changes ----------------
+    /** A new account: stored, indexed, resident, and dirty until the next snapshot. */
+    void add(AdvancedBankSystem3.BankAccount a) {
+        register(a);
+        try {
+            backing.insert(a);
+        } catch (IOException e) {
+            // the journal still has it; the next snapshot retries through writeBack
+            System.out.println("Error storing account " + a.accountNumber + ": " + e.getMessage());
+            unstored.add(a);
+        }
+        resident.put(a.accountNumber, a);
+        markDirty(a);
+    }
+
+    /** Takes an account being closed out of the index; its record is flagged at the next write-back. */
+    boolean remove(AdvancedBankSystem3.BankAccount a) {
+        long slot = backing.slotOf(a.accountNumber);
+        if (slot < 0) return false;
+        backing.unindex(a);
+        resident.remove(a.accountNumber);
+        dirty.put(a, new Mark(slot)); // also keeps the closed instance canonical until then
+        return true;
+    }
+
+    void markDirty(AdvancedBankSystem3.BankAccount a) {
+        if (a.closed) return; // remove() has marked it
+        dirty.put(a, new Mark(-1));
+    }
+
+    /**
+     * Writes every dirty account to its record and flushes the backing.
+     * Called by saveAccounts() before the journal is reset. An account marked
+     * again while this runs stays dirty for the next round.
+     */
+    void writeBack() throws IOException {
+        List<Map.Entry<AdvancedBankSystem3.BankAccount, Mark>> pending = new ArrayList<>(dirty.entrySet());
+        for (Map.Entry<AdvancedBankSystem3.BankAccount, Mark> e : pending) {
+            AdvancedBankSystem3.BankAccount a = e.getKey();
+            long slot = a.closed ? e.getValue().deletedSlot : backing.slotOf(a.accountNumber);
+            if (slot >= 0) {
+                backing.update(slot, a);
+            } else if (!a.closed && unstored.contains(a)) {
+                backing.insert(a);
+                unstored.remove(a);
+            }
+            // otherwise: closed before it was stored, or being closed right now (marked again)
+        }
+        backing.flush();
+        for (Map.Entry<AdvancedBankSystem3.BankAccount, Mark> e : pending) {
+            AdvancedBankSystem3.BankAccount a = e.getKey();
+            if (!dirty.remove(a, e.getValue())) continue;
+            if (a.closed) live.computeIfPresent(a.accountNumber, (k, ref) -> ref.get() == a ? null : ref);
+        }
+    }
+
+    // ---------------- Internals ----------------
+    private void register(AdvancedBankSystem3.BankAccount a) {
+        live.put(a.accountNumber, new Ref(a.accountNumber, a, collected));
+    }
+
+    // The one instance of accNo: the registered one if it is still alive, else built from its record.
+    // A closed instance stays registered until its write-back, but is no longer found.
+    private AdvancedBankSystem3.BankAccount canonical(String accNo) {
+        for (Ref r; (r = (Ref) collected.poll()) != null; ) live.remove(r.accNo, r);
+        AdvancedBankSystem3.BankAccount[] out = new AdvancedBankSystem3.BankAccount[1];
+        try {
+            live.compute(accNo, (k, ref) -> {
+                AdvancedBankSystem3.BankAccount a = ref == null ? null : ref.get();
+                if (a != null) {
+                    if (!a.closed) out[0] = a;
+                    return ref;
+                }
+                long slot = backing.slotOf(k);
+                if (slot < 0) return null;
+                try {
+                    a = backing.read(slot);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (a == null) return null;
+                out[0] = a;
+                return new Ref(k, a, collected);
+            });
+        } catch (UncheckedIOException e) {
+            System.out.println("Error reading account " + accNo + ": " + e.getCause().getMessage());
+            return null;
+        }
+        return out[0];
+    }
+
+    /**
+     * Lazy mode's backing: the accounts.bin record files themselves (one per
+     * shard with a sharded layout), with the index on the heap. A slot is
+     * shard << 40 | record number.
+     *
+     * Paging walks the live accounts in slot order. A walk that asks for the
+     * page after the one it just got carries on from the last slot returned
+     * rather than counting from the start, so each page costs its own size.
+     */
+    static final class FileBacking implements Backing {
+        private static final int SHARD_SHIFT = 40;
+        private static final long RECORD_MASK = (1L << SHARD_SHIFT) - 1;
+
+        private final ShardLayout layout;
+        private final BinaryAccountStore.RecordFile[] files;
+        private final Map<String, Long> slots = new ConcurrentHashMap<>();  // accNo -> slot, live accounts only
+        private final Map<String, String> bvns = new ConcurrentHashMap<>(); // bvn -> accNo
+        private final ConcurrentSkipListMap<Long, String> bySlot = new ConcurrentSkipListMap<>(); // live accounts
+        private final Map<Integer, Long> cursors = new ConcurrentHashMap<>(); // next page's position -> last slot before it
+
+        FileBacking(ShardLayout layout) throws IOException {
+            this.layout = layout;
+            this.files = new BinaryAccountStore.RecordFile[Math.max(1, layout.shards)];
+            String name = BinaryAccountStore.DEFAULT_FILE;
+            for (int s = 0; s < files.length; s++) {
+                files[s] = new BinaryAccountStore.RecordFile(layout.flat() ? name : layout.dir(s) + File.separator + name);
+            }
+        }
+
+        @Override
+        public void load(BinaryAccountStore.RecordFile.Scan sink) throws IOException {
+            slots.clear();
+            bvns.clear();
+            bySlot.clear();
+            cursors.clear();
+            for (int s = 0; s < files.length; s++) {
+                long shard = (long) s << SHARD_SHIFT;
+                files[s].scan((recordNo, a) -> {
+                    slots.put(a.accountNumber, shard | recordNo);
+                    bvns.put(a.bvn, a.accountNumber);
+                    bySlot.put(shard | recordNo, a.accountNumber);
+                    sink.record(shard | recordNo, a);
+                });
+            }
+        }
+
+        @Override
+        public long slotOf(String accNo) {
+            return slots.getOrDefault(accNo, -1L);
+        }
+
+        @Override
+        public String accountOfBvn(String bvn) {
+            return bvns.get(bvn);
+        }
+
+        @Override
+        public AdvancedBankSystem3.BankAccount read(long slot) throws IOException {
+            return files[(int) (slot >>> SHARD_SHIFT)].read(slot & RECORD_MASK);
+        }
+
+        @Override
+        public long insert(AdvancedBankSystem3.BankAccount a) throws IOException {
+            int shard = layout.flat() ? 0 : layout.shardOf(a.accountNumber);
+            long slot = ((long) shard << SHARD_SHIFT) | files[shard].append(a);
+            slots.put(a.accountNumber, slot);
+            bvns.put(a.bvn, a.accountNumber);
+            bySlot.put(slot, a.accountNumber);
+            return slot;
+        }
+
+        @Override
+        public void update(long slot, AdvancedBankSystem3.BankAccount a) throws IOException {
+            files[(int) (slot >>> SHARD_SHIFT)].write(slot & RECORD_MASK, a);
+        }
+
+        @Override
+        public void unindex(AdvancedBankSystem3.BankAccount a) {
+            Long slot = slots.remove(a.accountNumber);
+            if (slot != null) bySlot.remove(slot, a.accountNumber);
+            bvns.remove(a.bvn, a.accountNumber);
+        }
+
+        @Override
+        public void scan(BinaryAccountStore.RecordFile.Scan sink) throws IOException {
+            for (int s = 0; s < files.length; s++) {
+                long shard = (long) s << SHARD_SHIFT;
+                files[s].scan((recordNo, a) -> {
+                    if (slotOf(a.accountNumber) == (shard | recordNo)) sink.record(shard | recordNo, a);
+                });
+            }
+        }
+
+        @Override
+        public List<String> accountNumbers(int from, int size) {
+            List<String> out = new ArrayList<>(Math.min(size, 1024));
+            Long after = from == 0 ? null : cursors.remove(from);
+            Iterator<Map.Entry<Long, String>> it = (after != null ? bySlot.tailMap(after, false) : bySlot).entrySet().iterator();
+            if (after == null) {
+                for (int skip = 0; skip < from && it.hasNext(); skip++) it.next(); // not a continued walk
+            }
+            long last = -1;
+            while (out.size() < size && it.hasNext()) {
+                Map.Entry<Long, String> e = it.next();
+                out.add(e.getValue());
+                last = e.getKey();
+            }
+            if (out.size() == size && it.hasNext()) {
+                if (cursors.size() >= 64) cursors.clear(); // walks that were abandoned
+                cursors.put(from + size, last);
+            }
+            return out;
+        }
+
+        @Override
+        public int size() {
+            return slots.size();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            for (BinaryAccountStore.RecordFile f : files) f.force();
+        }
+    }
+
+    /**
+     * W-TinyLFU admission over two access-ordered LinkedHashMaps: a window
+     * of about 1% of the capacity and the main area. Guarded by itself.
+     */
+    private static final class Residency {
+        private final int windowMax;
+        private final int mainMax;
+        private final LinkedHashMap<String, AdvancedBankSystem3.BankAccount> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, AdvancedBankSystem3.BankAccount> main = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+
+        Residency(int capacity) {
+            this.windowMax = Math.max(1, capacity / 100);
+            this.mainMax = Math.max(1, capacity - windowMax);
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        synchronized AdvancedBankSystem3.BankAccount get(String accNo) {
+            sketch.increment(accNo);
+            AdvancedBankSystem3.BankAccount a = window.get(accNo);
+            return a != null ? a : main.get(accNo);
+        }
+
+        synchronized void put(String accNo, AdvancedBankSystem3.BankAccount a) {
+            if (main.containsKey(accNo)) {
+                main.put(accNo, a);
+                return;
+            }
+            window.put(accNo, a);
+            if (window.size() <= windowMax) return;
+            Map.Entry<String, AdvancedBankSystem3.BankAccount> candidate = window.entrySet().iterator().next();
+            window.remove(candidate.getKey());
+            if (main.size() < mainMax) {
+                main.put(candidate.getKey(), candidate.getValue());
+                return;
+            }
+            String victim = main.keySet().iterator().next();
+            if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim)) {
+                main.remove(victim);
+                main.put(candidate.getKey(), candidate.getValue());
+            }
+        }
+
+        synchronized void remove(String accNo) {
+            if (window.remove(accNo) == null) main.remove(accNo);
+        }
+
+        synchronized int size() {
+            return window.size() + main.size();
+        }
+    }
+
+    /**
+     * Count-min sketch of recent access frequency: 4-bit counters, four
+     * hashed positions per key, every counter halved once 10 x capacity
+     * accesses have been counted so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private final long[] table; // 16 counters of 4 bits per long
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int size = Integer.highestOneBit(Math.max(64, capacity) - 1) << 1;
+            table = new long[size / 16 + 1];
+            mask = size - 1;
+            sampleSize = 10 * Math.max(64, capacity);
+        }
+
+        int frequency(String key) {
+            int h = spread(key.hashCode());
+            int min = 15;
+            for (int i = 0; i < 4; i++) min = Math.min(min, counter(index(h, i)));
+            return min;
+        }
+
+        void increment(String key) {
+            int h = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int idx = index(h, i);
+                if (counter(idx) < 15) {
+                    table[idx >>> 4] += 1L << ((idx & 15) << 2);
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) halve();
+        }
+
+        private int counter(int idx) {
+            return (int) (table[idx >>> 4] >>> ((idx & 15) << 2)) & 15;
+        }
+
+        private int index(int h, int i) {
+            long seeded = (h + (long) i * 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L;
+            return (int) (seeded >>> 32) & mask;
+        }
+
+        private void halve() {
+            for (int i = 0; i < table.length; i++) table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            additions /= 2;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 17;
+            h *= 0xed5ad4bb;
+            return h ^ (h >>> 11);
+        }
+    }
+}
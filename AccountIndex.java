@@ -0,0 +1,78 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory lookup tables for AdvancedBankSystem3 accounts.
+ *
+ * Account number and BVN are unique keys. Email (case-insensitive) and phone
+ * are not guaranteed unique, so they map to a list of accounts.
+ * Callers must add/remove accounts here whenever they add/remove them from
+ * the accounts list, so lookups never need to scan it.
+ *
+ * Safe for concurrent use: the maps are concurrent and the email/phone lists
+ * are replaced (copy-on-write) rather than modified in place.
+ */
+class AccountIndex {
+
+    private final Map<String, AdvancedBankSystem3.BankAccount> byAccountNumber = new ConcurrentHashMap<>();
+    private final Map<String, AdvancedBankSystem3.BankAccount> byBvn = new ConcurrentHashMap<>();
+    private final Map<String, List<AdvancedBankSystem3.BankAccount>> byEmail = new ConcurrentHashMap<>();
+    private final Map<String, List<AdvancedBankSystem3.BankAccount>> byPhone = new ConcurrentHashMap<>();
+
+    void add(AdvancedBankSystem3.BankAccount a) {
+        byAccountNumber.put(a.accountNumber, a);
+        byBvn.put(a.bvn, a);
+        addTo(byEmail, emailKey(a.email), a);
+        addTo(byPhone, a.phone, a);
+    }
+
+    void remove(AdvancedBankSystem3.BankAccount a) {
+        byAccountNumber.remove(a.accountNumber, a);
+        byBvn.remove(a.bvn, a);
+        removeFrom(byEmail, emailKey(a.email), a);
+        removeFrom(byPhone, a.phone, a);
+    }
+
+    void clear() {
+        byAccountNumber.clear();
+        byBvn.clear();
+        byEmail.clear();
+        byPhone.clear();
+    }
+
+    int size() { return byAccountNumber.size(); }
+
+    AdvancedBankSystem3.BankAccount byAccountNumber(String accNo) { return byAccountNumber.get(accNo); }
+
+    AdvancedBankSystem3.BankAccount byBvn(String bvn) { return byBvn.get(bvn); }
+
+    List<AdvancedBankSystem3.BankAccount> byEmail(String email) {
+        return byEmail.getOrDefault(emailKey(email), Collections.emptyList());
+    }
+
+    List<AdvancedBankSystem3.BankAccount> byPhone(String phone) {
+        return byPhone.getOrDefault(phone, Collections.emptyList());
+    }
+
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    private static void addTo(Map<String, List<AdvancedBankSystem3.BankAccount>> map, String key,
+                              AdvancedBankSystem3.BankAccount a) {
+        map.compute(key, (k, list) -> {
+            List<AdvancedBankSystem3.BankAccount> copy = list == null ? new ArrayList<>(1) : new ArrayList<>(list);
+            copy.add(a);
+            return Collections.unmodifiableList(copy);
+        });
+    }
+
+    private static void removeFrom(Map<String, List<AdvancedBankSystem3.BankAccount>> map, String key,
+                                   AdvancedBankSystem3.BankAccount a) {
+        map.computeIfPresent(key, (k, list) -> {
+            List<AdvancedBankSystem3.BankAccount> copy = new ArrayList<>(list);
+            copy.remove(a);
+            return copy.isEmpty() ? null : Collections.unmodifiableList(copy);
+        });
+    }
+}
@@ -0,0 +1,269 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of account mutations (used by AdvancedBankSystem3).
+ *
+ * Instead of rewriting the whole accounts.csv after every deposit, withdrawal,
+ * transfer or PIN change, each mutation is appended here as one short group
+ * of lines. On startup the last snapshot (accounts.csv) is loaded and the
+ * journal is replayed on top of it. When the journal gets long, the caller
+ * writes a new snapshot and calls reset() to start an empty journal
+ * (compaction).
+ *
+ * Record format (one per line):
+ *  U,<account csv>          account created or updated (full row, so replay is idempotent)
+ *  D,<accountNo>            account deleted
+ *  L,<accountNo>,<log line> transaction log line belonging to the change
+ *  I,<firstAccNo>,<lastAccNo> interest chunk credited from first up to last (see InterestRun)
+ *  C,<count>,<crc32 hex>    commit: seals the <count> lines before it
+ *
+ * Everything one operation changes (both accounts of a transfer and both of
+ * their log lines) is written as one group closed by a C line, in a single
+ * write. Replay only hands out groups whose C line is present and whose
+ * checksum matches, so a crash mid-write never applies half a transfer; the
+ * torn tail is cut off. The L records let startup re-append log lines the
+ * transaction files lost in the crash.
+ *
+ * Durability follows bank.journal.fsync like the transaction logs: always
+ * (every commit is synced before it returns; commits that arrive while a
+ * sync is running share the next one), interval (synced every
+ * bank.journal.syncMs, default 200) or shutdown.
+ *
+ * The file starts with the line "#journal 2". A journal without it was
+ * written by an older version (U and D lines only, no commits) and is
+ * replayed line by line.
+ */
+class AccountJournal {
+
+    static final String HEADER = "#journal 2";
+
+    private static final Metrics.Op M_WRITE = Metrics.op("io.journal.write");
+    private static final Metrics.Op M_SYNC = Metrics.op("io.journal.fsync");
+
+    /** What replay() found. */
+    static final class Replay {
+        int records;        // records handed to the handler
+        int groups;         // committed groups
+        boolean legacy;     // old format without commits; write a snapshot soon
+        long droppedBytes;  // incomplete or damaged tail that was cut off
+    }
+
+    private final File file;
+    private final int compactEvery;
+    private final TransactionLogWriter.FsyncPolicy policy;
+    private final CRC32 crc = new CRC32();
+    private FileOutputStream fos;  // opened on first write
+    private OutputStream out;
+    private int entries;           // records written since the last snapshot
+    private long written;          // commits written (sequence numbers)
+
+    private final Object syncLock = new Object();
+    private volatile long synced;  // highest commit known to be on disk
+
+    AccountJournal(String fileName, int compactEvery, TransactionLogWriter.FsyncPolicy policy, long syncMillis) {
+        this.file = new File(fileName);
+        this.compactEvery = compactEvery;
+        this.policy = policy;
+        if (policy == TransactionLogWriter.FsyncPolicy.INTERVAL) {
+            Thread t = new Thread(() -> {
+                while (true) {
+                    try {
+                        Thread.sleep(syncMillis);
+                        syncNow();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (IOException e) {
+                        System.out.println("Error syncing journal: " + e.getMessage());
+                    }
+                }
+            }, "journal-sync");
+            t.setDaemon(true);
+            t.start();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "journal-shutdown"));
+    }
+
+    /**
+     * Writes records as one committed group and returns its sequence number
+     * for awaitDurable(). The group reaches the OS in one write.
+     */
+    synchronized long write(List<String> records) throws IOException {
+        if (records.isEmpty()) return written;
+        open();
+        StringBuilder sb = new StringBuilder(records.size() * 96);
+        for (String r : records) sb.append(r).append('\n');
+        byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        crc.reset();
+        crc.update(body);
+        byte[] commit = ("C," + records.size() + "," + Long.toHexString(crc.getValue()) + "\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        byte[] group = Arrays.copyOf(body, body.length + commit.length);
+        System.arraycopy(commit, 0, group, body.length, commit.length);
+        long t0 = M_WRITE.start();
+        out.write(group);
+        M_WRITE.stop(t0, group.length);
+        entries += records.size();
+        return ++written;
+    }
+
+    /**
+     * Under the "always" policy, returns once commit seq is on disk. Callers
+     * waiting at the same time are covered by a single sync. Other policies
+     * return at once.
+     */
+    void awaitDurable(long seq) throws IOException {
+        if (policy != TransactionLogWriter.FsyncPolicy.ALWAYS || synced >= seq) return;
+        synchronized (syncLock) {
+            if (synced >= seq) return; // someone else's sync covered it
+            syncNow();
+        }
+    }
+
+    // Syncs everything written so far
+    private void syncNow() throws IOException {
+        FileChannel ch;
+        long upTo;
+        synchronized (this) {
+            if (fos == null || synced >= written) return;
+            ch = fos.getChannel();
+            upTo = written;
+        }
+        long t0 = M_SYNC.start();
+        ch.force(false);
+        M_SYNC.stop(t0);
+        synced = Math.max(synced, upTo);
+    }
+
+    /** True once enough records have piled up that a new snapshot is worth writing. */
+    synchronized boolean needsCompaction() {
+        return entries >= compactEvery;
+    }
+
+    /**
+     * Feeds every committed record to the handler in order. An incomplete
+     * or damaged tail (crash during a write) is skipped and cut off, so
+     * later commits follow the last good one.
+     */
+    synchronized Replay replay(Consumer<String> handler) throws IOException {
+        close();
+        entries = 0;
+        Replay r = new Replay();
+        if (!file.exists()) return r;
+
+        long goodEnd = 0;
+        long length = file.length();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[1 << 16];
+            int n = 0;      // bytes in buf
+            int start = 0;  // start of the current line in buf
+            long bufPos = 0; // file offset of buf[0]
+            List<String> pending = new ArrayList<>();
+            CRC32 check = new CRC32();
+            boolean first = true;
+            scan:
+            while (true) {
+                int nl = start;
+                while (nl < n && buf[nl] != '\n') nl++;
+                if (nl == n) {
+                    // need more bytes: keep the partial line, grow if it fills the buffer
+                    System.arraycopy(buf, start, buf, 0, n - start);
+                    bufPos += start;
+                    n -= start;
+                    start = 0;
+                    if (n == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                    int got = in.read(buf, n, buf.length - n);
+                    if (got < 0) break; // leftover without newline: torn last line
+                    n += got;
+                    continue;
+                }
+                long end = bufPos + nl + 1;
+                int len = nl - start;
+                if (r.legacy && len > 0 && buf[nl - 1] == '\r') len--;
+                String rec = new String(buf, start, len, StandardCharsets.UTF_8);
+                int lineStart = start;
+                start = nl + 1;
+
+                if (first) {
+                    first = false;
+                    if (rec.equals(HEADER)) {
+                        goodEnd = end;
+                        continue;
+                    }
+                    r.legacy = true;
+                    if (rec.endsWith("\r")) rec = rec.substring(0, rec.length() - 1);
+                }
+                if (r.legacy) {
+                    goodEnd = end;
+                    if (!rec.isEmpty()) deliver(handler, rec, r);
+                    continue;
+                }
+                if (!rec.startsWith("C,")) {
+                    pending.add(rec);
+                    check.update(buf, lineStart, nl + 1 - lineStart);
+                    continue;
+                }
+                String[] p = rec.split(",");
+                boolean sealed = p.length == 3 && p[1].equals(String.valueOf(pending.size()))
+                        && p[2].equals(Long.toHexString(check.getValue()));
+                if (!sealed) break scan; // damaged: stop at the last good commit
+                for (String rr : pending) deliver(handler, rr, r);
+                r.groups++;
+                pending.clear();
+                check.reset();
+                goodEnd = end;
+            }
+        }
+        if (goodEnd < length) {
+            r.droppedBytes = length - goodEnd;
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                ch.truncate(goodEnd);
+                ch.force(true);
+            }
+        }
+        return r;
+    }
+
+    private void deliver(Consumer<String> handler, String rec, Replay r) {
+        handler.accept(rec);
+        r.records++;
+        entries++;
+    }
+
+    /** Truncates the journal. Call only after a snapshot containing every record has been written. */
+    synchronized void reset() throws IOException {
+        close();
+        try (FileOutputStream f = new FileOutputStream(file)) {
+            f.write((HEADER + "\n").getBytes(StandardCharsets.US_ASCII));
+            f.getFD().sync();
+        }
+        entries = 0;
+    }
+
+    synchronized void close() {
+        if (fos == null) return;
+        try {
+            out.flush();
+            fos.getFD().sync();
+            synced = written;
+            out.close();
+        } catch (IOException e) {
+            System.out.println("Error closing journal: " + e.getMessage());
+        }
+        fos = null;
+        out = null;
+    }
+
+    private void open() throws IOException {
+        if (fos != null) return;
+        boolean fresh = !file.exists() || file.length() == 0;
+        fos = new FileOutputStream(file, true);
+        out = fos; // each group is already one array; no second buffer needed
+        if (fresh) out.write((HEADER + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+}
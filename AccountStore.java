@@ -0,0 +1,115 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Where AdvancedBankSystem3 keeps its account snapshot.
+ *
+ * Two backends exist:
+ *  - csv    accounts.csv, one text row per account (default, human readable)
+ *  - binary accounts.bin, fixed-size binary records (see BinaryAccountStore)
+ *
+ * Pick one at startup with -Dbank.store=csv|binary. The journal sits on top
+ * of either backend unchanged. To switch an existing CSV book to binary, run
+ *   java BinaryAccountStore accounts.csv accounts.bin
+ *
+ * When shards.layout says the book is sharded (see ShardLayout), the chosen
+ * backend is used once per shard directory through ShardedAccountStore.
+ */
+interface AccountStore {
+
+    /** Snapshot file this store reads and writes. */
+    String fileName();
+
+    /** Feeds every stored account to sink, in file order. Missing file = no accounts. */
+    void load(Consumer<AdvancedBankSystem3.BankAccount> sink) throws IOException;
+
+    /** Replaces the snapshot with exactly these accounts, atomically (see replaceAtomically). */
+    void save(Collection<AdvancedBankSystem3.BankAccount> accounts) throws IOException;
+
+    interface FileWriting {
+        /** Writes the complete new file at tmp and syncs it. */
+        void writeTo(Path tmp) throws IOException;
+    }
+
+    /**
+     * Writes fileName through a temporary sibling (<file>.tmp) that is renamed
+     * over it only once fully written and synced, so a crash mid-save leaves
+     * the previous snapshot intact instead of a half-written one.
+     */
+    static void replaceAtomically(String fileName, FileWriting w) throws IOException {
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Metrics.Op snapshotFile = Metrics.op("io.snapshot.file");
+        long t0 = snapshotFile.start();
+        try {
+            w.writeTo(tmp);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            snapshotFile.failed(t0);
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        snapshotFile.stop(t0, Metrics.ENABLED ? Files.size(target) : 0);
+        // make the rename itself durable; not every platform can open a directory, which is fine
+        try (FileChannel dir = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ignored) { }
+    }
+
+    static AccountStore fromSystemProperties() {
+        return forLayout(ShardLayout.current());
+    }
+
+    /** The bank.store backend, flat or once per shard of layout. */
+    static AccountStore forLayout(ShardLayout layout) {
+        String kind = System.getProperty("bank.store", "csv").trim().toLowerCase(Locale.ROOT);
+        boolean binary = kind.equals("binary") || kind.equals("bin");
+        String name = binary ? BinaryAccountStore.DEFAULT_FILE : AdvancedBankSystem3.ACCOUNTS_FILE;
+        if (layout.flat()) return binary ? new BinaryAccountStore(name) : new Csv(name);
+        return new ShardedAccountStore(layout, s -> {
+            String file = layout.dir(s) + File.separator + name;
+            return binary ? new BinaryAccountStore(file) : new Csv(file);
+        });
+    }
+
+    /** The original accounts.csv format: BankAccount.toCSV() rows. */
+    final class Csv implements AccountStore {
+        private final String fileName;
+
+        Csv(String fileName) {
+            this.fileName = fileName;
+        }
+
+        @Override
+        public String fileName() { return fileName; }
+
+        @Override
+        public void load(Consumer<AdvancedBankSystem3.BankAccount> sink) throws IOException {
+            File f = new File(fileName);
+            if (!f.exists()) return;
+            try (BufferedReader br = new BufferedReader(new FileReader(f))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    AdvancedBankSystem3.BankAccount a = AdvancedBankSystem3.BankAccount.fromCSV(line);
+                    if (a != null) sink.accept(a);
+                }
+            }
+        }
+
+        @Override
+        public void save(Collection<AdvancedBankSystem3.BankAccount> accounts) throws IOException {
+            AccountStore.replaceAtomically(fileName, tmp -> {
+                FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                try (PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(fos)))) {
+                    for (AdvancedBankSystem3.BankAccount a : accounts) pw.println(a.toCSV());
+                    pw.flush();
+                    if (pw.checkError()) throw new IOException("write to " + tmp + " failed");
+                    fos.getFD().sync();
+                }
+            });
+        }
+    }
+}
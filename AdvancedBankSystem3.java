@@ -1,5 +1,13 @@
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
@@ -7,28 +15,120 @@ import java.util.*;
  * Complete Java Banking System (features 1-9)
  *
  * Files:
- *  - accounts.csv                 (stores accounts)
+ *  - accounts.csv                 (snapshot of all accounts; accounts.bin with -Dbank.store=binary)
+ *  - accounts.journal             (account changes and their log lines since the last snapshot,
+ *                                  in atomic groups; replayed and repaired at startup)
  *  - transactions_<accountNo>.csv (per-account transaction history)
+ *  - transactions_<accountNo>.csv.idx (line/timestamp index used by the admin history view)
+ *  - shards.layout                (present once the book is sharded: the snapshot and the
+ *                                  transaction files then live in shards<N>/<hex>/, see ShardLayout;
+ *                                  rebalance offline with java ShardLayout <N>)
+ *  - accounts.lock                (locked while a process uses these files: only one may)
  *
  * Admin password: admin123
  *
+ * Batch mode (no prompts): java AdvancedBankSystem3 --batch postings.csv [results.csv]
+ * HTTP/JSON API:            java AdvancedBankSystem3 --http [port]   (see BankHttpServer)
+ * Month-end statements:     java AdvancedBankSystem3 --statements yyyy-MM [csv|json|text]
+ *                           (one file per account under statements/<yyyy-MM>/, see StatementGenerator)
+ *
+ * Lazy mode (-Dbank.accounts.lazy=true -Dbank.store=binary): only an index of the
+ * accounts stays in memory and accounts are read on first use into a bounded
+ * cache; snapshots write back only the changed records (see AccountCache).
+ * Compact mode (-Dbank.accounts.compact=true): the book is held off-heap in a
+ * CompactAccountTable, with the same cache in front of it.
+ *
+ * Metrics (-Dbank.metrics=true): call counts, latency percentiles and bytes
+ * written for postings, commits, snapshots and log writes, on the admin
+ * dashboard and in metrics.txt (see Metrics).
+ *
+ * Balances are only changed through the Ledger (striped locks), and the
+ * accounts list is guarded by its own monitor, so several sessions can run
+ * against the same data at once.
+ *
  * Notes:
+ *  - Amounts are held as kobo in a long (see Money) and written as "1234.50"
  *  - Login uses Account Number + PIN
  *  - BVN is auto-generated at account creation but NOT required for login
- *  - PINs are stored in plain text here (for learning/demo). For production, hash them.
+ *  - PINs are stored as salted hashes (see Credentials); plain-text PINs in older files
+ *    still work and are hashed at the owner's next login
  */
 public class AdvancedBankSystem3 {
 
     static final String ACCOUNTS_FILE = "accounts.csv";
     static final Scanner input = new Scanner(System.in);
-    static final ArrayList<BankAccount> accounts = new ArrayList<>();
+    static final ArrayList<BankAccount> accounts = new ArrayList<>(); // guarded by itself; empty in lazy and compact mode
+    static final AccountIndex index = new AccountIndex(); // keep in step with accounts
     static final DateTimeFormatter TF = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     static final String ADMIN_PASSWORD = "admin123";
+    static final String JOURNAL_FILE = "accounts.journal";
+    static final String LOCK_FILE = "accounts.lock";
+    private static FileLock dataLock; // held until the process exits
+    static final int HISTORY_PAGE_SIZE = 20;
+    // number of journal records after which a fresh snapshot is written
+    static final int COMPACT_EVERY = Integer.getInteger("bank.journal.compactEvery", 10_000);
+    static final AccountJournal journal = new AccountJournal(JOURNAL_FILE, COMPACT_EVERY,
+            TransactionLogWriter.FsyncPolicy.fromProperty("bank.journal.fsync"), Long.getLong("bank.journal.syncMs", 200L));
+    static final ShardLayout layout = ShardLayout.current(); // flat or hashed shard directories, see ShardLayout
+    static final AccountStore store = AccountStore.forLayout(layout);
+    static final AccountCache cache = AccountCache.fromSystemProperties(layout, store); // null unless lazy or compact mode
+    static final TransactionLogWriter txLog = TransactionLogWriter.fromSystemProperties();
+    static final BankStats stats = new BankStats(); // running totals, kept by addAccount/removeAccount and the Ledger
+    static final Ledger ledger = new Ledger(Integer.getInteger("bank.ledger.stripes", 1024), stats);
+    static final int ACCOUNTS_PAGE_SIZE = 20;
+    static final Credentials credentials = Credentials.fromSystemProperties();
+
+    // Hot-path metrics (no-ops unless -Dbank.metrics=true, see Metrics)
+    static final Metrics.Op M_CREATE = Metrics.op("bank.createAccount");
+    static final Metrics.Op M_DEPOSIT = Metrics.op("bank.deposit");
+    static final Metrics.Op M_WITHDRAW = Metrics.op("bank.withdraw");
+    static final Metrics.Op M_TRANSFER = Metrics.op("bank.transfer");
+    static final Metrics.Op M_COMMIT = Metrics.op("bank.commit");
+    static final Metrics.Op M_SAVE = Metrics.op("bank.saveAccounts");
+    static final Metrics.Op M_LOG = Metrics.op("bank.logTransaction");
 
     public static void main(String[] args) {
+        if (!lockDataDirectory()) return;
+        if (args.length >= 2 && args[0].equals("--batch")) {
+            BatchProcessor.main(args[1], args.length > 2 ? args[2] : null); // headless, see BatchProcessor
+            return;
+        }
+        if (args.length >= 1 && args[0].equals("--http")) {
+            BankHttpServer.main(args.length > 1 ? Integer.parseInt(args[1]) : Integer.getInteger("bank.http.port", 8080));
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--statements")) {
+            loadAccounts();
+            try {
+                StatementGenerator.monthEnd(YearMonth.parse(args[1]),
+                        StatementGenerator.Format.parse(args.length > 2 ? args[2] : "csv"));
+            } catch (IOException e) {
+                System.out.println("Error writing statements: " + e.getMessage());
+            }
+            txLog.closeAll();
+            return;
+        }
         loadAccounts();
         mainMenu();
-        saveAccounts(); // final save on exit
+        saveAccounts(); // final snapshot on exit
+        txLog.closeAll();
+    }
+
+    // One process at a time: two would interleave their journal groups, and each one's
+    // snapshot and journal reset would throw away the other's postings. The OS drops
+    // the lock when the process ends, however it ends.
+    static boolean lockDataDirectory() {
+        try {
+            FileChannel ch = FileChannel.open(Paths.get(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            dataLock = ch.tryLock();
+            if (dataLock != null) return true;
+            ch.close();
+            System.out.println("Another bank process (console, --batch, --http or ShardLayout) is using these files."
+                    + " Stop it first.");
+        } catch (IOException e) {
+            System.out.println("Error locking " + LOCK_FILE + ": " + e.getMessage());
+        }
+        return false;
     }
 
     // ---------------- BankAccount class ----------------
@@ -39,11 +139,12 @@ public class AdvancedBankSystem3 {
         String bvn;
         String accountNumber;
         String accountType; // SAVINGS or CURRENT
-        String pin;
-        double balance;
+        volatile String pin;     // salted hash (Credentials); plain text in old files until next login
+        volatile long balance;   // kobo; written only under the Ledger lock
+        volatile boolean closed; // set once the account is deleted
 
         BankAccount(String name, String email, String phone, String bvn,
-                    String accountNumber, String accountType, String pin, double balance) {
+                    String accountNumber, String accountType, String pin, long balance) {
             this.name = name;
             this.email = email;
             this.phone = phone;
@@ -57,76 +158,329 @@ public class AdvancedBankSystem3 {
         // CSV for accounts file
         String toCSV() {
             // Simple CSV; don't include commas in fields for simplicity
-            return String.join(",", name, email, phone, bvn, accountNumber, accountType, pin, String.valueOf(balance));
+            StringBuilder sb = new StringBuilder(96);
+            sb.append(name).append(',').append(email).append(',').append(phone).append(',').append(bvn).append(',')
+              .append(accountNumber).append(',').append(accountType).append(',').append(pin).append(',');
+            return Money.appendTo(sb, balance).toString();
         }
 
         static BankAccount fromCSV(String line) {
             String[] p = line.split(",", -1);
             if (p.length < 8) return null;
-            return new BankAccount(p[0], p[1], p[2], p[3], p[4], p[5], p[6], Double.parseDouble(p[7]));
+            return new BankAccount(p[0], p[1], p[2], p[3], p[4], p[5], p[6], Money.parse(p[7]));
         }
     }
 
     // ---------------- Persistence ----------------
+    // Writes a full snapshot and empties the journal. Used on exit, after bulk
+    // updates and when the journal is due for compaction; single-account
+    // changes go through persist()/commit() instead. The store replaces its
+    // file atomically, so a crash here leaves the old snapshot plus journal.
     static void saveAccounts() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(ACCOUNTS_FILE))) {
-            for (BankAccount a : accounts) pw.println(a.toCSV());
+        // holding the journal blocks appends, so no change can slip in between snapshot and reset
+        long t0 = M_SAVE.start();
+        synchronized (journal) {
+            try {
+                if (cache != null) cache.writeBack(); // only the changed records
+                else store.save(accountsSnapshot());
+                txLog.syncAll(); // the journal's L records are about to go; their lines must be on disk
+                InterestRun.syncCheckpoint(); // and so are its I records
+            } catch (IOException e) {
+                M_SAVE.failed(t0);
+                System.out.println("Error saving accounts: " + e.getMessage());
+                return; // keep the journal, it still holds the changes
+            }
+            try {
+                journal.reset();
+            } catch (IOException e) {
+                System.out.println("Error resetting journal: " + e.getMessage());
+            }
+        }
+        M_SAVE.stop(t0);
+    }
+
+    // Journal records: account state, deletion, and a transaction log line.
+    // Journaling an account's state is what makes it dirty for the AccountCache write-back.
+    static String accountRecord(BankAccount a) {
+        if (cache != null) cache.markDirty(a);
+        return "U," + a.toCSV();
+    }
+
+    static String logRecord(String accNo, String line) {
+        return "L," + accNo + "," + line;
+    }
+
+    // Journals one account's current state (one small write instead of a full rewrite)
+    static void persist(BankAccount a) {
+        commit(List.of(accountRecord(a)));
+    }
+
+    static void persistDelete(BankAccount a) {
+        commit(List.of("D," + a.accountNumber));
+    }
+
+    // Journals records as one atomic group (see AccountJournal), then compacts if due
+    static void commit(List<String> records) {
+        try {
+            commitGroup(records);
         } catch (IOException e) {
-            System.out.println("Error saving accounts: " + e.getMessage());
+            System.out.println("Error writing journal: " + e.getMessage());
+            saveAccounts(); // fall back to a full snapshot so the change is not lost
+            return;
+        }
+        if (journal.needsCompaction()) saveAccounts();
+    }
+
+    /**
+     * A group that is in the journal, but whose log append or sync failed. The
+     * change stands (replay applies it, and restores its log lines), so callers
+     * must not undo it in memory.
+     */
+    static final class UnconfirmedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UnconfirmedException(IOException cause) {
+            super("journaled but not confirmed: " + cause.getMessage(), cause);
+        }
+    }
+
+    // Writes the group, hands its L lines to the transaction log writer and waits
+    // for the group to be durable (per bank.journal.fsync). No compaction: bulk
+    // jobs call this directly and write one snapshot at the end.
+    static void commitGroup(List<String> records) throws IOException {
+        long t0 = M_COMMIT.start();
+        long seq = writeGroup(records);
+        try {
+            journal.awaitDurable(seq);
+        } catch (IOException e) {
+            M_COMMIT.failed(t0);
+            throw new UnconfirmedException(e);
+        }
+        M_COMMIT.stop(t0);
+    }
+
+    // commitGroup without the wait: returns the group's sequence number for journal.awaitDurable.
+    // A plain IOException means the group is not in the journal; UnconfirmedException that it is.
+    static long writeGroup(List<String> records) throws IOException {
+        synchronized (journal) { // a snapshot cannot run between the journal write and the log append
+            long seq = journal.write(records);
+            Map<String, List<String>> lines = new LinkedHashMap<>();
+            for (String r : records) {
+                if (r.startsWith("I,")) InterestRun.chunkCommitted(r.substring(2));
+                if (!r.startsWith("L,")) continue;
+                int comma = r.indexOf(',', 2);
+                lines.computeIfAbsent(txFile(r.substring(2, comma)), k -> new ArrayList<>(1)).add(r.substring(comma + 1));
+            }
+            try {
+                if (!lines.isEmpty()) txLog.appendAll(lines);
+            } catch (IOException e) {
+                throw new UnconfirmedException(e);
+            }
+            return seq;
         }
     }
 
     static void loadAccounts() {
-        File f = new File(ACCOUNTS_FILE);
-        if (!f.exists()) return;
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                BankAccount a = BankAccount.fromCSV(line);
-                if (a != null) accounts.add(a);
+        // snapshot first, then replay the journal on top of it (keyed by account number);
+        // with an AccountCache the backing reads the snapshot itself, and byNo holds just the journaled accounts
+        LinkedHashMap<String, BankAccount> byNo = new LinkedHashMap<>();
+        Set<String> deleted = new HashSet<>();
+        if (cache == null) {
+            try {
+                store.load(a -> byNo.put(a.accountNumber, a));
+            } catch (IOException e) {
+                System.out.println("Error loading accounts from " + store.fileName() + ": " + e.getMessage());
             }
+        }
+        Map<String, List<String>> journaledLines = new HashMap<>(); // accNo -> log lines, in order
+        List<String> interestChunks = new ArrayList<>(); // I records: chunks of an interrupted interest run
+        AccountJournal.Replay replay = null;
+        try {
+            replay = journal.replay(rec -> {
+                if (rec.startsWith("U,")) {
+                    BankAccount a = BankAccount.fromCSV(rec.substring(2));
+                    if (a != null) {
+                        byNo.put(a.accountNumber, a);
+                        deleted.remove(a.accountNumber);
+                    }
+                } else if (rec.startsWith("D,")) {
+                    byNo.remove(rec.substring(2));
+                    deleted.add(rec.substring(2));
+                    journaledLines.remove(rec.substring(2));
+                } else if (rec.startsWith("L,")) {
+                    int comma = rec.indexOf(',', 2);
+                    if (comma > 0) {
+                        journaledLines.computeIfAbsent(rec.substring(2, comma), k -> new ArrayList<>()).add(rec.substring(comma + 1));
+                    }
+                } else if (rec.startsWith("I,")) {
+                    interestChunks.add(rec.substring(2));
+                }
+            });
         } catch (IOException e) {
-            System.out.println("Error loading accounts: " + e.getMessage());
+            System.out.println("Error replaying journal: " + e.getMessage());
+        }
+        if (cache != null) {
+            try {
+                cache.open(stats, byNo.values(), deleted);
+            } catch (IOException e) {
+                System.out.println("Error indexing accounts in " + store.fileName() + ": " + e.getMessage());
+            }
+        } else {
+            synchronized (accounts) {
+                accounts.addAll(byNo.values());
+                index.clear();
+                stats.reset();
+                for (BankAccount a : accounts) {
+                    index.add(a);
+                    stats.accountOpened(a.accountType, a.balance);
+                }
+            }
+        }
+        // A non-empty journal means the last run did not end with a snapshot (crash or kill)
+        if (replay != null && replay.records > 0) recover(replay, journaledLines, interestChunks, byNo.keySet());
+    }
+
+    // Restores transaction lines lost with the crash, then folds everything into a fresh snapshot
+    static void recover(AccountJournal.Replay replay, Map<String, List<String>> journaledLines,
+                        List<String> interestChunks, Set<String> live) {
+        try {
+            InterestRun.recoverChunks(interestChunks); // before the snapshot drops the I records
+        } catch (IOException e) {
+            System.out.println("Error updating interest checkpoint: " + e.getMessage());
+            return; // keep the journal: the snapshot must not outlive the chunks' record
+        }
+        int restored = 0;
+        for (Map.Entry<String, List<String>> e : journaledLines.entrySet()) {
+            if (!live.contains(e.getKey())) continue;
+            try {
+                restored += restoreLogLines(e.getKey(), e.getValue());
+            } catch (IOException ex) {
+                System.out.println("Error restoring transactions of " + e.getKey() + ": " + ex.getMessage());
+            }
+        }
+        System.out.println("Recovered " + replay.groups + " journal commits (" + replay.records + " records)"
+                + (replay.droppedBytes > 0 ? ", dropped an incomplete last write of " + replay.droppedBytes + " bytes" : "")
+                + (restored > 0 ? ", restored " + restored + " transaction lines" : "") + ".");
+        saveAccounts();
+    }
+
+    // The journal commits before the log line is written, so the file ends with some
+    // prefix of the journaled lines; append whatever is missing after that prefix.
+    static int restoreLogLines(String accNo, List<String> lines) throws IOException {
+        List<String> tail;
+        try (TransactionHistory h = openHistory(accNo)) {
+            tail = h.last(lines.size());
+        }
+        int have = 0;
+        for (int m = Math.min(tail.size(), lines.size()); m > 0 && have == 0; m--) {
+            if (tail.subList(tail.size() - m, tail.size()).equals(lines.subList(0, m))) have = m;
+        }
+        for (int i = have; i < lines.size(); i++) txLog.append(txFile(accNo), lines.get(i));
+        return lines.size() - have;
+    }
+
+    static void addAccount(BankAccount a) {
+        if (cache != null) {
+            cache.add(a);
+        } else {
+            synchronized (accounts) {
+                accounts.add(a);
+                index.add(a);
+            }
+        }
+        stats.accountOpened(a.accountType, a.balance);
+        bvnGenerator.release(a.bvn);
+        accountNumberGenerator.release(a.accountNumber);
+    }
+
+    // Marks the account closed under its ledger lock, so no posting can land after removal
+    static boolean removeAccount(BankAccount a) {
+        boolean[] removed = new boolean[1];
+        ledger.withLock(a, () -> {
+            synchronized (accounts) {
+                removed[0] = cache != null ? !a.closed && cache.remove(a) : accounts.remove(a);
+                if (removed[0]) {
+                    index.remove(a);
+                    a.closed = true;
+                    stats.accountClosed(a.accountType, a.balance);
+                    credentials.forget(a.accountNumber);
+                }
+            }
+        });
+        return removed[0];
+    }
+
+    // Copy of one page of the accounts list (from = index of the first account)
+    static List<BankAccount> accountsPage(int from, int size) {
+        if (cache != null) return cache.page(from, size);
+        synchronized (accounts) {
+            if (from >= accounts.size()) return List.of();
+            return new ArrayList<>(accounts.subList(from, Math.min(accounts.size(), from + size)));
+        }
+    }
+
+    // Copy of the accounts list for iterating without holding its lock. With an AccountCache
+    // this builds the whole book, so only bulk jobs (interest, rebalance) use it.
+    static List<BankAccount> accountsSnapshot() {
+        if (cache != null) return cache.page(0, Integer.MAX_VALUE);
+        synchronized (accounts) {
+            return new ArrayList<>(accounts);
         }
     }
 
     // ---------------- Generators ----------------
+    // Unique against the index; the last digit is a Luhn check digit. The ID stays
+    // reserved until addAccount() has indexed it.
+    static final IdGenerator bvnGenerator = new IdGenerator("", 11,
+            bvn -> cache != null ? cache.hasBvn(bvn) : index.byBvn(bvn) != null);
+    static final IdGenerator accountNumberGenerator = new IdGenerator("", 10,
+            no -> cache != null ? cache.contains(no) : index.byAccountNumber(no) != null);
+
     static String generateBVN() {
-        Random r = new Random();
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < 11; i++) sb.append(r.nextInt(10));
-        return sb.toString();
+        return bvnGenerator.next();
     }
 
     static String generateAccountNumber() {
-        Random r = new Random();
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < 10; i++) sb.append(r.nextInt(10));
-        return sb.toString();
+        return accountNumberGenerator.next();
     }
 
     // ---------------- Transactions logging ----------------
-    static void logTransaction(String accNumber, String type, double amount, double before, double after, String note) {
-        String fileName = "transactions_" + accNumber + ".csv";
-        String timestamp = LocalDateTime.now().format(TF);
-        String line = String.join(",", timestamp, type, String.valueOf(amount),
-                String.valueOf(before), String.valueOf(after), note == null ? "" : note);
-        try (PrintWriter pw = new PrintWriter(new FileWriter(fileName, true))) {
-            pw.println(line);
+    static String txFile(String accNumber) {
+        return layout.txFile(accNumber);
+    }
+
+    // timestamp,type,amount,before,after,note
+    static String transactionLine(String timestamp, String type, long amount, long before, long after, String note) {
+        StringBuilder line = new StringBuilder(80);
+        line.append(timestamp).append(',').append(type).append(',');
+        Money.appendTo(line, amount).append(',');
+        Money.appendTo(line, before).append(',');
+        Money.appendTo(line, after).append(',');
+        if (note != null) line.append(note);
+        return line.toString();
+    }
+
+    static void logTransaction(String accNumber, String type, long amount, long before, long after, String note) {
+        long t0 = M_LOG.start();
+        String line = transactionLine(LocalDateTime.now().format(TF), type, amount, before, after, note);
+        try {
+            txLog.append(txFile(accNumber), line);
+            M_LOG.stop(t0, line.length() + 1);
         } catch (IOException e) {
+            M_LOG.failed(t0);
             System.out.println("Error logging transaction: " + e.getMessage());
         }
     }
 
-    static void printReceipt(String accNumber, String type, double amount, double before, double after) {
+    static void printReceipt(String accNumber, String type, long amount, long before, long after) {
         String ts = LocalDateTime.now().format(TF);
         System.out.println("\n----- TRANSACTION RECEIPT -----");
         System.out.println("Timestamp     : " + ts);
         System.out.println("Account Number: " + accNumber);
         System.out.println("Type          : " + type);
-        System.out.println("Amount        : " + amount);
-        System.out.println("Balance Before: " + before);
-        System.out.println("Balance After : " + after);
+        System.out.println("Amount        : " + Money.format(amount));
+        System.out.println("Balance Before: " + Money.format(before));
+        System.out.println("Balance After : " + Money.format(after));
         System.out.println("-------------------------------\n");
     }
 
@@ -158,14 +512,22 @@ public class AdvancedBankSystem3 {
     }
 
     // ---------------- Create account ----------------
+    // Reads a field until it fits its slot in the account records (see BinaryAccountStore)
+    static String readField(String prompt, String field) {
+        while (true) {
+            System.out.print(prompt);
+            String v = input.nextLine().trim();
+            if (BinaryAccountStore.fits(field, v)) return v;
+            System.out.println("Too long: at most " + BinaryAccountStore.maxBytes(field)
+                    + " bytes (letters outside plain English take 2 or more each).");
+        }
+    }
+
     static void createAccount() {
         System.out.println("\n--- Create Account ---");
-        System.out.print("Full name: ");
-        String name = input.nextLine().trim();
-        System.out.print("Email: ");
-        String email = input.nextLine().trim();
-        System.out.print("Phone: ");
-        String phone = input.nextLine().trim();
+        String name = readField("Full name: ", "name");
+        String email = readField("Email: ", "email");
+        String phone = readField("Phone: ", "phone");
 
         String accType;
         while (true) {
@@ -184,20 +546,22 @@ public class AdvancedBankSystem3 {
         }
 
         System.out.print("Initial deposit amount (numbers only): ");
-        double initBalance = readDouble();
+        long initBalance = readMoney();
 
+        long t0 = M_CREATE.start(); // from here on no prompts: IDs, PIN hash, index and journal
         String bvn = generateBVN();
         String accNo = generateAccountNumber();
 
-        BankAccount a = new BankAccount(name, email, phone, bvn, accNo, accType, pin, initBalance);
-        accounts.add(a);
-        saveAccounts();
+        BankAccount a = new BankAccount(name, email, phone, bvn, accNo, accType, credentials.hash(pin), initBalance);
+        addAccount(a);
+        commit(List.of(accountRecord(a), logRecord(accNo,
+                transactionLine(LocalDateTime.now().format(TF), "ACCOUNT_OPEN", initBalance, 0, initBalance, "Initial deposit"))));
+        M_CREATE.stop(t0);
         System.out.println("\nAccount created successfully!");
         System.out.println("Name: " + name);
         System.out.println("BVN: " + bvn + "  (kept for your record)");
         System.out.println("Account Number: " + accNo);
         System.out.println("Use Account Number + PIN to login.");
-        logTransaction(accNo, "ACCOUNT_OPEN", initBalance, 0.0, initBalance, "Initial deposit");
     }
 
     // ---------------- Login ----------------
@@ -212,13 +576,42 @@ public class AdvancedBankSystem3 {
         }
         System.out.print("PIN: ");
         String pin = input.nextLine().trim();
-        if (!acc.pin.equals(pin)) {
-            System.out.println("Incorrect PIN.");
-            return;
-        }
+        if (!pinAccepted(acc, pin)) return;
         userMenu(acc);
     }
 
+    // Checks a PIN and explains a refusal. A plain-text or cheaper stored hash is upgraded on success.
+    static boolean pinAccepted(BankAccount a, String pin) {
+        switch (checkPin(a, pin)) {
+            case OK -> { return true; }
+            case LOCKED -> System.out.println("Too many wrong PINs. Try again in "
+                    + credentials.lockedForSeconds(a.accountNumber) + " seconds.");
+            default -> System.out.println("Incorrect PIN.");
+        }
+        return false;
+    }
+
+    static Credentials.Check checkPin(BankAccount a, String pin) {
+        Credentials.Check c = credentials.verify(a.accountNumber, a.pin, pin);
+        if (c == Credentials.Check.OK && credentials.needsRehash(a.pin)) setPin(a, pin);
+        return c;
+    }
+
+    // Stores a new PIN hash; hashing (the slow part) happens before taking the account lock.
+    // False if the account was closed meanwhile: like a posting, the change must not outlive the delete.
+    static boolean setPin(BankAccount a, String pin) {
+        String hashed = credentials.hash(pin);
+        boolean[] set = new boolean[1];
+        ledger.withLock(a, () -> {
+            if (a.closed) return;
+            a.pin = hashed;
+            persist(a);
+            set[0] = true;
+        });
+        if (set[0]) credentials.forget(a.accountNumber);
+        return set[0];
+    }
+
     // ---------------- User menu (logged in) ----------------
     static void userMenu(BankAccount acc) {
         while (true) {
@@ -236,7 +629,7 @@ public class AdvancedBankSystem3 {
 
             switch (ch) {
                 case "1" -> showAccountDetails(acc);
-                case "2" -> System.out.println("Balance: ₦" + acc.balance);
+                case "2" -> System.out.println("Balance: ₦" + Money.format(acc.balance));
                 case "3" -> doDeposit(acc);
                 case "4" -> doWithdraw(acc);
                 case "5" -> doTransfer(acc);
@@ -249,7 +642,6 @@ public class AdvancedBankSystem3 {
                 }
                 case "8" -> {
                     System.out.println("Logged out.");
-                    saveAccounts();
                     return;
                 }
                 default -> System.out.println("Invalid option.");
@@ -266,35 +658,26 @@ public class AdvancedBankSystem3 {
         System.out.println("BVN           : " + a.bvn);
         System.out.println("Account No.   : " + a.accountNumber);
         System.out.println("Account Type  : " + a.accountType);
-        System.out.println("Balance       : ₦" + a.balance);
+        System.out.println("Balance       : ₦" + Money.format(a.balance));
     }
 
     // ---------------- Deposit ----------------
     static void doDeposit(BankAccount a) {
         System.out.print("Amount to deposit: ");
-        double amt = readDouble();
-        if (amt <= 0) { System.out.println("Invalid amount."); return; }
-        double before = a.balance;
-        a.balance += amt;
-        double after = a.balance;
-        saveAccounts();
-        logTransaction(a.accountNumber, "DEPOSIT", amt, before, after, "");
-        printReceipt(a.accountNumber, "DEPOSIT", amt, before, after);
+        long amt = readMoney();
+        Ledger.Result r = postDeposit(a, amt);
+        if (!r.ok()) { printRejection(r); return; }
+        printReceipt(a.accountNumber, "DEPOSIT", amt, r.before, r.after);
         System.out.println("Deposit successful.");
     }
 
     // ---------------- Withdraw ----------------
     static void doWithdraw(BankAccount a) {
         System.out.print("Amount to withdraw: ");
-        double amt = readDouble();
-        if (amt <= 0) { System.out.println("Invalid amount."); return; }
-        if (amt > a.balance) { System.out.println("Insufficient funds."); return; }
-        double before = a.balance;
-        a.balance -= amt;
-        double after = a.balance;
-        saveAccounts();
-        logTransaction(a.accountNumber, "WITHDRAW", amt, before, after, "");
-        printReceipt(a.accountNumber, "WITHDRAW", amt, before, after);
+        long amt = readMoney();
+        Ledger.Result r = postWithdraw(a, amt);
+        if (!r.ok()) { printRejection(r); return; }
+        printReceipt(a.accountNumber, "WITHDRAW", amt, r.before, r.after);
         System.out.println("Withdrawal successful.");
     }
 
@@ -305,29 +688,67 @@ public class AdvancedBankSystem3 {
         BankAccount receiver = findByAccountNumber(rAccNo);
         if (receiver == null) { System.out.println("Receiver not found."); return; }
         System.out.print("Amount to transfer: ");
-        double amt = readDouble();
-        if (amt <= 0) { System.out.println("Invalid amount."); return; }
-        if (amt > sender.balance) { System.out.println("Insufficient funds."); return; }
+        long amt = readMoney();
+        Ledger.Result r = postTransfer(sender, receiver, amt);
+        if (!r.ok()) { printRejection(r); return; }
+
+        printReceipt(sender.accountNumber, "TRANSFER_OUT", amt, r.before, r.after);
+        System.out.println("Transfer successful.");
+    }
 
-        double sBefore = sender.balance;
-        double rBefore = receiver.balance;
+    // Postings shared by the menu and the HTTP server: Ledger update, then the new
+    // balance(s) and log line(s) committed as one journal group
+    static Ledger.Result postDeposit(BankAccount a, long amt) {
+        long t0 = M_DEPOSIT.start();
+        return timed(M_DEPOSIT, t0, ledger.deposit(a, amt, done -> {
+            String ts = LocalDateTime.now().format(TF);
+            commit(List.of(accountRecord(a),
+                    logRecord(a.accountNumber, transactionLine(ts, "DEPOSIT", done.amount, done.before, done.after, ""))));
+        }));
+    }
 
-        sender.balance -= amt;
-        receiver.balance += amt;
+    static Ledger.Result postWithdraw(BankAccount a, long amt) {
+        long t0 = M_WITHDRAW.start();
+        return timed(M_WITHDRAW, t0, ledger.withdraw(a, amt, done -> {
+            String ts = LocalDateTime.now().format(TF);
+            commit(List.of(accountRecord(a),
+                    logRecord(a.accountNumber, transactionLine(ts, "WITHDRAW", done.amount, done.before, done.after, ""))));
+        }));
+    }
 
-        saveAccounts();
-        logTransaction(sender.accountNumber, "TRANSFER_OUT", amt, sBefore, sender.balance, "To " + receiver.accountNumber);
-        logTransaction(receiver.accountNumber, "TRANSFER_IN", amt, rBefore, receiver.balance, "From " + sender.accountNumber);
+    static Ledger.Result postTransfer(BankAccount sender, BankAccount receiver, long amt) {
+        long t0 = M_TRANSFER.start();
+        return timed(M_TRANSFER, t0, ledger.transfer(sender, receiver, amt, done -> {
+            String ts = LocalDateTime.now().format(TF);
+            commit(List.of(accountRecord(sender), accountRecord(receiver),
+                    logRecord(sender.accountNumber, transactionLine(ts, "TRANSFER_OUT", done.amount, done.before, done.after,
+                            "To " + receiver.accountNumber)),
+                    logRecord(receiver.accountNumber, transactionLine(ts, "TRANSFER_IN", done.amount, done.otherBefore, done.otherAfter,
+                            "From " + sender.accountNumber))));
+        }));
+    }
 
-        printReceipt(sender.accountNumber, "TRANSFER_OUT", amt, sBefore, sender.balance);
-        System.out.println("Transfer successful.");
+    // A rejected posting (bad amount, insufficient funds) counts as failed
+    private static Ledger.Result timed(Metrics.Op op, long t0, Ledger.Result r) {
+        if (r.ok()) op.stop(t0);
+        else op.failed(t0);
+        return r;
+    }
+
+    static void printRejection(Ledger.Result r) {
+        switch (r.status) {
+            case INVALID_AMOUNT -> System.out.println("Invalid amount.");
+            case INSUFFICIENT_FUNDS -> System.out.println("Insufficient funds.");
+            case ACCOUNT_CLOSED -> System.out.println("Account is closed.");
+            default -> { }
+        }
     }
 
     // ---------------- Change PIN ----------------
     static void changePin(BankAccount a) {
         System.out.print("Enter current PIN: ");
         String cur = input.nextLine().trim();
-        if (!cur.equals(a.pin)) { System.out.println("Incorrect current PIN."); return; }
+        if (!pinAccepted(a, cur)) return;
         String np;
         while (true) {
             System.out.print("Enter new 4-digit PIN: ");
@@ -335,22 +756,19 @@ public class AdvancedBankSystem3 {
             if (np.matches("\\d{4}")) break;
             System.out.println("PIN must be exactly 4 digits.");
         }
-        a.pin = np;
-        saveAccounts();
-        System.out.println("PIN changed successfully.");
+        if (setPin(a, np)) System.out.println("PIN changed successfully.");
+        else System.out.println("Account is closed.");
     }
 
     // ---------------- Delete account (user) ----------------
     static void deleteAccount(BankAccount a) {
-        if (!accounts.remove(a)) {
+        if (!removeAccount(a)) {
             System.out.println("Error deleting account.");
             return;
         }
-        saveAccounts();
+        persistDelete(a);
         // Optionally archive or delete transaction file:
-        String txFile = "transactions_" + a.accountNumber + ".csv";
-        File f = new File(txFile);
-        if (f.exists()) f.delete();
+        deleteTransactionFiles(a.accountNumber);
         System.out.println("Account deleted.");
     }
 
@@ -374,9 +792,8 @@ public class AdvancedBankSystem3 {
                 if (newPin.matches("\\d{4}")) break;
                 System.out.println("PIN must be 4 digits.");
             }
-            a.pin = newPin;
-            saveAccounts();
-            System.out.println("PIN reset successful. Use Account Number + new PIN to login.");
+            if (setPin(a, newPin)) System.out.println("PIN reset successful. Use Account Number + new PIN to login.");
+            else System.out.println("Account is closed.");
         } else {
             System.out.println("Verification failed. Email or phone does not match.");
         }
@@ -398,12 +815,15 @@ public class AdvancedBankSystem3 {
         while (true) {
             System.out.println("\n--- ADMIN DASHBOARD ---");
             System.out.println("1. View all accounts");
-            System.out.println("2. Search account (AccountNo or BVN)");
+            System.out.println("2. Search account (AccountNo, BVN, email or phone)");
             System.out.println("3. Delete account");
             System.out.println("4. View account transactions");
             System.out.println("5. Total bank balance");
             System.out.println("6. Apply interest to SAVINGS accounts");
-            System.out.println("7. Back to main menu");
+            System.out.println("7. Export account statement");
+            System.out.println("8. Month-end statements for all accounts");
+            System.out.println("9. Performance metrics");
+            System.out.println("10. Back to main menu");
             System.out.print("Choose: ");
             String ch = input.nextLine().trim();
 
@@ -414,30 +834,56 @@ public class AdvancedBankSystem3 {
                 case "4" -> adminViewTransactions();
                 case "5" -> totalBankBalance();
                 case "6" -> applyInterest();
-                case "7" -> { saveAccounts(); return; }
+                case "7" -> exportStatement();
+                case "8" -> monthEndStatements();
+                case "9" -> showMetrics();
+                case "10" -> { return; }
                 default -> System.out.println("Invalid option.");
             }
         }
     }
 
+    // Shown a page at a time so large books do not flood the console
     static void viewAllAccounts() {
-        System.out.println("\n--- ALL ACCOUNTS ---");
-        if (accounts.isEmpty()) { System.out.println("No accounts found."); return; }
-        for (BankAccount a : accounts) {
-            System.out.printf("Name: %s | AccNo: %s | BVN: %s | Type: %s | Balance: ₦%.2f%n",
-                    a.name, a.accountNumber, a.bvn, a.accountType, a.balance);
+        System.out.println("\n--- ALL ACCOUNTS (" + stats.accountCount() + ") ---");
+        int from = 0;
+        while (true) {
+            List<BankAccount> page = accountsPage(from, ACCOUNTS_PAGE_SIZE);
+            if (page.isEmpty()) {
+                if (from == 0) System.out.println("No accounts found.");
+                return;
+            }
+            StringBuilder sb = new StringBuilder(page.size() * 100);
+            for (BankAccount a : page) {
+                sb.append("Name: ").append(a.name).append(" | AccNo: ").append(a.accountNumber)
+                  .append(" | BVN: ").append(a.bvn).append(" | Type: ").append(a.accountType)
+                  .append(" | Balance: ₦");
+                Money.appendTo(sb, a.balance).append(System.lineSeparator());
+            }
+            System.out.print(sb);
+            from += page.size();
+            if (page.size() < ACCOUNTS_PAGE_SIZE) return;
+            System.out.print("Enter for next page, q to stop: ");
+            if (input.nextLine().trim().equalsIgnoreCase("q")) return;
         }
     }
 
     static void searchAccount() {
-        System.out.print("Enter Account Number or BVN: ");
+        System.out.print("Enter Account Number, BVN, email or phone: ");
         String key = input.nextLine().trim();
-        BankAccount found = null;
-        for (BankAccount a : accounts) {
-            if (a.accountNumber.equals(key) || a.bvn.equals(key)) { found = a; break; }
+        BankAccount found = findByAccountNumber(key);
+        if (found == null) found = cache != null ? cache.byBvn(key) : index.byBvn(key);
+        if (found != null) { showAccountDetails(found); return; }
+
+        // email and phone are not unique, so show every match (AccountCache scans the records)
+        List<BankAccount> matches;
+        if (cache != null) {
+            matches = cache.find(key.contains("@") ? a -> a.email.equalsIgnoreCase(key) : a -> a.phone.equals(key));
+        } else {
+            matches = key.contains("@") ? index.byEmail(key) : index.byPhone(key);
         }
-        if (found == null) System.out.println("Account not found.");
-        else showAccountDetails(found);
+        if (matches.isEmpty()) { System.out.println("Account not found."); return; }
+        for (BankAccount a : matches) showAccountDetails(a);
     }
 
     static void adminDeleteAccount() {
@@ -446,10 +892,9 @@ public class AdvancedBankSystem3 {
         BankAccount a = findByAccountNumber(accNo);
         if (a == null) { System.out.println("Not found."); return; }
         if (confirmAction("Are you sure you want to delete account " + accNo + " (yes/no): ")) {
-            accounts.remove(a);
-            saveAccounts();
-            File f = new File("transactions_" + accNo + ".csv");
-            if (f.exists()) f.delete();
+            if (!removeAccount(a)) { System.out.println("Not found."); return; }
+            persistDelete(a);
+            deleteTransactionFiles(accNo);
             System.out.println("Account deleted.");
         }
     }
@@ -457,56 +902,168 @@ public class AdvancedBankSystem3 {
     static void adminViewTransactions() {
         System.out.print("Enter Account Number: ");
         String accNo = input.nextLine().trim();
-        File f = new File("transactions_" + accNo + ".csv");
-        if (!f.exists()) {
+        try (TransactionHistory h = openHistory(accNo)) {
+            showTransactions(accNo, h);
+        } catch (IOException e) {
+            System.out.println("Error reading transactions: " + e.getMessage());
+        }
+    }
+
+    static void showTransactions(String accNo, TransactionHistory h) {
+        if (h.lineCount() == 0) {
             System.out.println("No transactions found for this account.");
             return;
         }
-        System.out.println("\n--- TRANSACTIONS for " + accNo + " ---");
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                // timestamp,type,amount,before,after,note
-                String[] p = line.split(",", -1);
-                System.out.printf("%s | %s | %s | before=%s after=%s | %s%n", p[0], p[1], p[2], p[3], p[4], p.length > 5 ? p[5] : "");
+        System.out.println(h.lineCount() + " transactions on file.");
+        System.out.println("1. Show all");
+        System.out.println("2. Last N");
+        System.out.println("3. Page K (" + HISTORY_PAGE_SIZE + " per page)");
+        System.out.println("4. Between two dates");
+        System.out.print("Choose: ");
+        String ch = input.nextLine().trim();
+
+        List<String> lines;
+        switch (ch) {
+            case "2" -> {
+                System.out.print("How many: ");
+                lines = h.last((int) readDouble());
             }
-        } catch (IOException e) {
-            System.out.println("Error reading transactions: " + e.getMessage());
+            case "3" -> {
+                System.out.print("Page (1-" + h.pageCount(HISTORY_PAGE_SIZE) + "): ");
+                lines = h.page((int) readDouble(), HISTORY_PAGE_SIZE);
+            }
+            case "4" -> {
+                System.out.print("From (yyyy-MM-dd [HH:mm:ss]): ");
+                LocalDateTime from = readDateTime(false);
+                System.out.print("To (yyyy-MM-dd [HH:mm:ss]): ");
+                LocalDateTime to = readDateTime(true);
+                lines = h.between(from, to);
+            }
+            default -> lines = h.lines(0, h.lineCount());
         }
+
+        System.out.println("\n--- TRANSACTIONS for " + accNo + " ---");
+        if (lines.isEmpty()) System.out.println("No matching transactions.");
+        for (String line : lines) {
+            // timestamp,type,amount,before,after,note
+            String[] p = line.split(",", -1);
+            if (p.length < 5) continue;
+            System.out.printf("%s | %s | %s | before=%s after=%s | %s%n", p[0], p[1], p[2], p[3], p[4], p.length > 5 ? p[5] : "");
+        }
+    }
+
+    // Opens an account's history, first making lines still buffered in the writer visible; close it after use
+    static TransactionHistory openHistory(String accNo) throws IOException {
+        txLog.flush(txFile(accNo));
+        return TransactionHistory.open(txFile(accNo));
+    }
+
+    static void deleteTransactionFiles(String accNo) {
+        txLog.close(txFile(accNo));
+        TransactionHistory.delete(txFile(accNo));
     }
 
     static void totalBankBalance() {
-        double total = 0;
-        for (BankAccount a : accounts) total += a.balance;
-        System.out.printf("Total bank balance across all accounts: ₦%.2f%n", total);
+        System.out.println("Total bank balance across all accounts: ₦" + Money.format(stats.totalBalance()));
+        System.out.println("Accounts: " + stats.accountCount());
+        if (cache != null) System.out.println("Account cache: " + cache.describe());
+        for (Map.Entry<String, BankStats.TypeTotals> e : stats.byType().entrySet()) {
+            System.out.printf("  %-8s %8d accounts  ₦%s%n", e.getKey(),
+                    e.getValue().accounts.sum(), Money.format(e.getValue().balance.sum()));
+        }
+    }
+
+    // ---------------- Statements (admin) ----------------
+    static void exportStatement() {
+        System.out.print("Enter Account Number: ");
+        String accNo = input.nextLine().trim();
+        BankAccount a = findByAccountNumber(accNo);
+        if (a == null) { System.out.println("Account not found."); return; }
+        System.out.print("From (yyyy-MM-dd [HH:mm:ss]): ");
+        LocalDateTime from = readDateTime(false);
+        System.out.print("To (yyyy-MM-dd [HH:mm:ss]): ");
+        LocalDateTime to = readDateTime(true);
+        System.out.print("Types, comma separated (e.g. DEPOSIT,TRANSFER_OUT; blank = all): ");
+        String typeList = input.nextLine().trim();
+        Set<String> types = null;
+        if (!typeList.isEmpty()) {
+            types = new HashSet<>();
+            for (String t : typeList.split(",")) if (!t.isBlank()) types.add(t.trim().toUpperCase());
+        }
+        System.out.print("Format (csv/json/text): ");
+        StatementGenerator.Format format = StatementGenerator.Format.parse(input.nextLine());
+        String file = "statement_" + accNo + "_" + from.toLocalDate() + "_" + to.toLocalDate() + "." + format.extension;
+
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            StatementGenerator.Totals t = StatementGenerator.write(a, new StatementGenerator.Spec(from, to, types, format), w);
+            System.out.printf("Statement written to %s: %d transactions, opening ₦%s, closing ₦%s%n",
+                    file, t.count, Money.format(t.opening), Money.format(t.closing));
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Error writing statement: " + e.getMessage());
+        }
+    }
+
+    static void monthEndStatements() {
+        YearMonth last = YearMonth.now().minusMonths(1);
+        System.out.print("Month (yyyy-MM, blank = " + last + "): ");
+        String m = input.nextLine().trim();
+        YearMonth month;
+        try {
+            month = m.isEmpty() ? last : YearMonth.parse(m);
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid month.");
+            return;
+        }
+        System.out.print("Format (csv/json/text): ");
+        StatementGenerator.Format format = StatementGenerator.Format.parse(input.nextLine());
+        try {
+            StatementGenerator.monthEnd(month, format);
+        } catch (IOException e) {
+            System.out.println("Error writing statements: " + e.getMessage());
+        }
+    }
+
+    // ---------------- Metrics (admin) ----------------
+    static void showMetrics() {
+        System.out.println();
+        System.out.print(Metrics.report());
+        if (!Metrics.ENABLED) return;
+        if (confirmAction("Reset the counters? (yes/no): ")) {
+            Metrics.resetAll();
+            System.out.println("Metrics reset.");
+        }
     }
 
     // ---------------- Apply interest (admin) ----------------
     static void applyInterest() {
-        System.out.print("Enter annual interest rate percent to apply to SAVINGS (e.g. 1.5): ");
-        double rate = readDouble(); // percent
-        if (rate <= 0) { System.out.println("Rate must be positive."); return; }
-        System.out.print("Apply now? This will update balances immediately (yes/no): ");
-        String ok = input.nextLine().trim().toLowerCase();
-        if (!ok.equals("yes")) { System.out.println("Cancelled."); return; }
-
-        for (BankAccount a : accounts) {
-            if ("SAVINGS".equalsIgnoreCase(a.accountType)) {
-                double before = a.balance;
-                // For simplicity: apply rate as a single-period percentage (not compounding)
-                double interest = before * (rate / 100.0);
-                a.balance += interest;
-                logTransaction(a.accountNumber, "INTEREST", interest, before, a.balance, "Interest applied: " + rate + "%");
-            }
+        double rate;
+        double pending = InterestRun.pendingRate();
+        if (!Double.isNaN(pending)
+                && confirmAction("An interrupted interest run at " + pending + "% was found. Resume it? (yes/no): ")) {
+            rate = pending;
+        } else {
+            System.out.print("Enter annual interest rate percent to apply to SAVINGS (e.g. 1.5): ");
+            rate = readDouble(); // percent
+            if (rate <= 0) { System.out.println("Rate must be positive."); return; }
+            System.out.print("Apply now? This will update balances immediately (yes/no): ");
+            String ok = input.nextLine().trim().toLowerCase();
+            if (!ok.equals("yes")) { System.out.println("Cancelled."); return; }
+            new File(InterestRun.CHECKPOINT_FILE).delete(); // fresh run
         }
-        saveAccounts();
-        System.out.println("Interest applied to all SAVINGS accounts.");
+
+        InterestRun run = new InterestRun(rate);
+        try {
+            run.run();
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Interest run stopped: " + e.getMessage() + " (run it again to resume)");
+            return;
+        }
+        System.out.println("Interest applied to all SAVINGS accounts. Total credited: ₦" + Money.format(run.creditedKobo()));
     }
 
     // ---------------- Helpers ----------------
     static BankAccount findByAccountNumber(String accNo) {
-        for (BankAccount a : accounts) if (a.accountNumber.equals(accNo)) return a;
-        return null;
+        return cache != null ? cache.get(accNo) : index.byAccountNumber(accNo);
     }
 
     static boolean confirmAction(String prompt) {
@@ -515,6 +1072,34 @@ public class AdvancedBankSystem3 {
         return r.equals("yes");
     }
 
+    // Reads a naira amount, returned in kobo
+    static long readMoney() {
+        while (true) {
+            String s = input.nextLine().trim();
+            try {
+                return Money.parse(s);
+            } catch (NumberFormatException e) {
+                System.out.print("Enter a valid amount: ");
+            }
+        }
+    }
+
+    // Reads "yyyy-MM-dd" or "yyyy-MM-dd HH:mm:ss"; a bare date means start (or end) of that day
+    static LocalDateTime readDateTime(boolean endOfDay) {
+        while (true) {
+            String s = input.nextLine().trim();
+            try {
+                if (s.length() == 10) {
+                    LocalDate d = LocalDate.parse(s);
+                    return endOfDay ? d.atTime(23, 59, 59) : d.atStartOfDay();
+                }
+                return LocalDateTime.parse(s, TF);
+            } catch (DateTimeParseException e) {
+                System.out.print("Enter a date as yyyy-MM-dd or yyyy-MM-dd HH:mm:ss: ");
+            }
+        }
+    }
+
     static double readDouble() {
         while (true) {
             String s = input.nextLine().trim();
@@ -0,0 +1,243 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Micro-benchmarks for the banking and billing hot paths.
+ *
+ * The workloads live in Fixture, which builds a book of a given size and
+ * hands out each measured operation. They are run two ways:
+ *  - the JMH suite in benchmarks/ (Maven module; see bench.BankingBenchmarks),
+ *    which is the reference for regressions;
+ *  - this program, a dependency-free quick check that follows the same
+ *    routine: each benchmark is warmed up, then measured over several timed
+ *    iterations, and results go through a sink so the JIT cannot drop the
+ *    work. Report: mean per op with its spread.
+ *
+ * Usage (from an EMPTY scratch directory: it writes accounts.csv,
+ * transactions_*.csv and sales_*.csv into the current directory):
+ *   java BankBenchmark [maxSize] [filter]
+ * maxSize  largest account/line count to test, powers of ten from 1000
+ *          (default 100000; 10000000 needs several GB of heap)
+ * filter   only run benchmarks whose name contains this text
+ */
+public class BankBenchmark {
+
+    static final int WARMUP_ITERATIONS = 3;
+    static final int MEASURE_ITERATIONS = 5;
+    static final long ITERATION_NANOS = 500_000_000L;
+
+    static volatile long sink; // results are folded in here so the work stays live
+
+    /** Workload names with the units they are reported in, in report order. */
+    static final String[][] WORKLOADS = {
+            { "findByAccountNumber", "ns/op" },
+            { "BankAccount.fromCSV", "ns/op" },
+            { "saveAccounts", "ms/op" },
+            { "loadAccounts", "ms/op" },
+            { "logTransaction", "ns/op" },
+            { "Bill.generateReceipt", "us/op" },
+            { "MarketBillingSystem6.saveSale", "ns/op" },
+    };
+
+    /** One operation; a LongUnaryOperator so code outside the default package (the JMH suite) can call it. */
+    public interface Op extends LongUnaryOperator {
+        /** Runs the operation {@code ops} times, returning something derived from the results. */
+        long run(long ops) throws Exception;
+
+        @Override
+        default long applyAsLong(long ops) {
+            try {
+                return run(ops);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        String filter = args.length > 1 ? args[1] : "";
+        if (!Fixture.scratchDirectory()) {
+            System.out.println("Account files exist here. Run the benchmark from an empty scratch directory.");
+            return;
+        }
+
+        System.out.printf("%-40s %10s %14s %12s  %s%n", "Benchmark", "Size", "Score", "Error", "Units");
+        for (int size = 1000; size <= maxSize && size > 0; size *= 10) {
+            Fixture f = new Fixture(size);
+            for (String[] w : WORKLOADS) bench(filter, w[0], f.sizeOf(w[0]), w[1], f.op(w[0]));
+        }
+        AdvancedBankSystem3.txLog.closeAll();
+        System.out.println("(sink " + sink + ")");
+    }
+
+    /** A book of size accounts and a bill of up to 10^4 lines, and the operations measured on them. */
+    public static final class Fixture {
+        static final String MARKER = "bank-benchmark.dir";
+
+        final int size;
+        final List<String> accNos;
+        final String csvRow;
+        final MarketBillingSystem.Bill bill;
+
+        public Fixture(int size) {
+            if (!scratchDirectory()) {
+                throw new IllegalStateException("account files exist in " + new File("").getAbsolutePath()
+                        + "; run the benchmark from an empty scratch directory");
+            }
+            this.size = size;
+            populate(size);
+            AdvancedBankSystem3.saveAccounts(); // loadAccounts reads this book, whichever benchmark ran before
+            accNos = new ArrayList<>(size);
+            for (AdvancedBankSystem3.BankAccount a : AdvancedBankSystem3.accountsSnapshot()) accNos.add(a.accountNumber);
+            csvRow = AdvancedBankSystem3.accountsSnapshot().get(size / 2).toCSV();
+            bill = new MarketBillingSystem.Bill(0.05); // receipt lines capped at 10^4
+            for (int i = 0; i < Math.min(size, 10_000); i++) {
+                bill.addLine(new MarketBillingSystem.BillLine("Item " + i, 2, 150_00, 300_00, false));
+            }
+            bill.setDiscountPercent(5);
+        }
+
+        /**
+         * True if the working directory holds no account files, or only ones an
+         * earlier benchmark run wrote (it leaves a marker file, so repeated JMH
+         * forks can share one scratch directory).
+         */
+        static boolean scratchDirectory() {
+            File marker = new File(MARKER);
+            if (marker.exists()) return true;
+            for (String f : new String[] { AdvancedBankSystem3.ACCOUNTS_FILE, BinaryAccountStore.DEFAULT_FILE,
+                    AdvancedBankSystem3.JOURNAL_FILE }) {
+                if (new File(f).exists()) return false;
+            }
+            try {
+                marker.createNewFile();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+
+        int sizeOf(String workload) {
+            return workload.startsWith("Bill.") ? Math.min(size, 10_000) : size;
+        }
+
+        public Op op(String workload) {
+            return switch (workload) {
+                case "findByAccountNumber" -> {
+                    int[] next = { 0 }; // carries on through the book across calls, so short batches don't replay the same keys
+                    yield ops -> {
+                        long h = 0;
+                        for (long i = 0; i < ops; i++) {
+                            AdvancedBankSystem3.BankAccount a = AdvancedBankSystem3.findByAccountNumber(accNos.get(next[0]));
+                            if (++next[0] == size) next[0] = 0;
+                            h += a.balance;
+                        }
+                        return h;
+                    };
+                }
+                case "BankAccount.fromCSV" -> ops -> {
+                    long h = 0;
+                    for (long i = 0; i < ops; i++) h += AdvancedBankSystem3.BankAccount.fromCSV(csvRow).balance;
+                    return h;
+                };
+                case "saveAccounts" -> ops -> {
+                    for (long i = 0; i < ops; i++) AdvancedBankSystem3.saveAccounts();
+                    return new File(AdvancedBankSystem3.store.fileName()).length();
+                };
+                case "loadAccounts" -> ops -> {
+                    long h = 0;
+                    for (long i = 0; i < ops; i++) {
+                        clearAccounts();
+                        AdvancedBankSystem3.loadAccounts();
+                        h += AdvancedBankSystem3.stats.accountCount();
+                    }
+                    return h;
+                };
+                case "logTransaction" -> ops -> {
+                    for (long i = 0; i < ops; i++) {
+                        String accNo = accNos.get((int) (i % Math.min(size, 1000))); // 1000 distinct log files
+                        AdvancedBankSystem3.logTransaction(accNo, "DEPOSIT", 100, 0, 100, "");
+                    }
+                    AdvancedBankSystem3.txLog.flushAll();
+                    return ops;
+                };
+                case "Bill.generateReceipt" -> ops -> {
+                    long h = 0;
+                    for (long i = 0; i < ops; i++) {
+                        h += bill.generateReceipt(MarketBillingSystem.BusinessType.PROVISION_STORE).length();
+                    }
+                    return h;
+                };
+                case "MarketBillingSystem6.saveSale" -> ops -> {
+                    MarketBillingSystem6.currentCashier = "bench";
+                    MarketBillingSystem6.Item item = new MarketBillingSystem6.Item("Sugar 1kg", 900_00, 2, 0);
+                    for (long i = 0; i < ops; i++) MarketBillingSystem6.saveSale(item);
+                    return ops;
+                };
+                default -> throw new IllegalArgumentException("unknown workload " + workload);
+            };
+        }
+    }
+
+    /** Replaces the in-memory book with size generated accounts. */
+    static void populate(int size) {
+        clearAccounts();
+        for (int i = 0; i < size; i++) {
+            String no = String.valueOf(1_000_000_000L + i);
+            AdvancedBankSystem3.addAccount(new AdvancedBankSystem3.BankAccount("Customer " + i, "c" + i + "@example.com",
+                    "080" + (10_000_000 + i), String.valueOf(20_000_000_000L + i), no,
+                    i % 2 == 0 ? "SAVINGS" : "CURRENT", "1234", 1_000_00L + i));
+        }
+    }
+
+    static void clearAccounts() {
+        synchronized (AdvancedBankSystem3.accounts) {
+            AdvancedBankSystem3.accounts.clear();
+            AdvancedBankSystem3.index.clear();
+            AdvancedBankSystem3.stats.reset();
+        }
+    }
+
+    /** Warms up, then measures op; units is ns/op, us/op or ms/op. */
+    static void bench(String filter, String name, int size, String units, Op op) throws Exception {
+        if (!name.contains(filter)) return;
+        double nanosPerUnit = switch (units) {
+            case "ms/op" -> 1e6;
+            case "us/op" -> 1e3;
+            default -> 1;
+        };
+
+        // find a batch size that takes roughly one iteration
+        long batch = 1;
+        while (true) {
+            long t = System.nanoTime();
+            sink += op.run(batch);
+            long took = System.nanoTime() - t;
+            if (took > ITERATION_NANOS / 10 || batch >= 1L << 30) {
+                batch = Math.max(1, batch * ITERATION_NANOS / Math.max(1, took));
+                break;
+            }
+            batch *= 4;
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) sink += op.run(batch);
+        double[] perOp = new double[MEASURE_ITERATIONS];
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long t = System.nanoTime();
+            sink += op.run(batch);
+            perOp[i] = (System.nanoTime() - t) / (double) batch;
+        }
+
+        double mean = 0;
+        for (double v : perOp) mean += v;
+        mean /= perOp.length;
+        double var = 0;
+        for (double v : perOp) var += (v - mean) * (v - mean);
+        double stdev = Math.sqrt(var / (perOp.length - 1));
+        System.out.printf("%-40s %10d %14.3f %12.3f  %s%n", name, size, mean / nanosPerUnit, stdev / nanosPerUnit, units);
+    }
+}
@@ -0,0 +1,378 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * HTTP/JSON front end for AdvancedBankSystem3 (branch terminals), built on
+ * the JDK's com.sun.net.httpserver, so nothing extra is needed.
+ *
+ *   java AdvancedBankSystem3 --http [port]      (default 8080, -Dbank.http.port)
+ *
+ * Endpoints (bodies are flat JSON objects, amounts are naira strings like "250.00"):
+ *   POST /api/login     {"account":"0123456789","pin":"1234"} -> {"token":"...","expiresInSeconds":900}
+ *   POST /api/logout
+ *   GET  /api/balance
+ *   POST /api/deposit   {"amount":"100.00"}
+ *   POST /api/withdraw  {"amount":"100.00"}
+ *   POST /api/transfer  {"to":"9876543210","amount":"100.00"}
+ *   GET  /api/history   ?last=N | ?page=K[&size=S] | ?from=yyyy-MM-dd[ HH:mm:ss]&to=...
+ *                       (at most 1000 lines; a range gives its oldest 1000)
+ * Everything except login needs "Authorization: Bearer <token>". Errors come
+ * back as {"error":"..."} with a 4xx status; login answers 429 while the
+ * account is locked after too many wrong PINs (see Credentials).
+ *
+ * Postings use the same helpers as the console menu (postDeposit etc.), so
+ * they go through the Ledger and are journaled and logged identically. The
+ * server owns the data files while it runs: startup locks accounts.lock, so
+ * the console, --batch and ShardLayout refuse to start on the same files
+ * until it is stopped.
+ *
+ * Each request is handled on its own virtual thread when the JVM has them
+ * (Java 21+). The server itself parks idle keep-alive connections on one
+ * selector thread, so only requests in progress occupy a thread at all. On
+ * older JVMs a fixed pool of bank.http.threads (default 200) is used.
+ *
+ * Settings: bank.http.host (default 127.0.0.1, local only),
+ * bank.http.sessionMinutes (15), bank.http.backlog (1024).
+ */
+class BankHttpServer {
+
+    static final int MAX_BODY = 64 * 1024;
+    static final int MAX_HISTORY_LINES = 1000; // per history request
+
+    /** A logged-in terminal. */
+    static final class Session {
+        final String accountNumber;
+        volatile long expiresAt; // System.currentTimeMillis()
+
+        Session(String accountNumber, long expiresAt) {
+            this.accountNumber = accountNumber;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** Thrown by handlers to answer with an error status. */
+    static final class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message, null, false, false);
+            this.status = status;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService sweeper;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long sessionMillis = TimeUnit.MINUTES.toMillis(Integer.getInteger("bank.http.sessionMinutes", 15));
+    private final SecureRandom random = new SecureRandom();
+
+    BankHttpServer(String host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), Integer.getInteger("bank.http.backlog", 1024));
+        executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "http-session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::dropExpiredSessions, 1, 1, TimeUnit.MINUTES);
+    }
+
+    static void main(int port) {
+        String host = System.getProperty("bank.http.host", "127.0.0.1");
+        AdvancedBankSystem3.loadAccounts();
+        BankHttpServer s;
+        try {
+            s = new BankHttpServer(host, port);
+        } catch (IOException e) {
+            System.out.println("Cannot start HTTP server on " + host + ":" + port + ": " + e.getMessage());
+            return;
+        }
+        s.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            s.stop();
+            AdvancedBankSystem3.saveAccounts(); // final snapshot, as on console exit
+        }, "http-shutdown"));
+        System.out.println("Banking API listening on http://" + host + ":" + port + "/api/ (Ctrl+C to stop)");
+    }
+
+    void start() { server.start(); }
+
+    void stop() {
+        server.stop(1);
+        executor.shutdown();
+        sweeper.shutdownNow();
+    }
+
+    // One task per request: a virtual thread if this JVM has them, else a bounded pool
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(1, Integer.getInteger("bank.http.threads", 200)));
+        }
+    }
+
+    // ---------------- Dispatch ----------------
+    private void handle(HttpExchange ex) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            String path = ex.getRequestURI().getPath();
+            String method = ex.getRequestMethod();
+            if (path.equals("/api/login")) {
+                requireMethod(method, "POST");
+                body = login(readBody(ex));
+            } else {
+                Session s = session(ex);
+                AdvancedBankSystem3.BankAccount a = AdvancedBankSystem3.findByAccountNumber(s.accountNumber);
+                if (a == null) {
+                    sessions.values().remove(s);
+                    throw new HttpError(401, "account no longer exists");
+                }
+                body = switch (path) {
+                    case "/api/logout" -> {
+                        requireMethod(method, "POST");
+                        sessions.values().remove(s);
+                        yield "{}";
+                    }
+                    case "/api/balance" -> {
+                        requireMethod(method, "GET");
+                        yield balance(a);
+                    }
+                    case "/api/deposit" -> {
+                        requireMethod(method, "POST");
+                        yield posted(a, AdvancedBankSystem3.postDeposit(a, amount(readBody(ex))));
+                    }
+                    case "/api/withdraw" -> {
+                        requireMethod(method, "POST");
+                        yield posted(a, AdvancedBankSystem3.postWithdraw(a, amount(readBody(ex))));
+                    }
+                    case "/api/transfer" -> {
+                        requireMethod(method, "POST");
+                        yield transfer(a, readBody(ex));
+                    }
+                    case "/api/history" -> {
+                        requireMethod(method, "GET");
+                        yield history(a, query(ex));
+                    }
+                    default -> throw new HttpError(404, "no such endpoint");
+                };
+            }
+        } catch (HttpError e) {
+            status = e.status;
+            body = error(e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = error("internal error");
+            System.out.println("HTTP " + ex.getRequestURI() + ": " + e);
+        }
+        send(ex, status, body);
+    }
+
+    private static void requireMethod(String method, String expected) throws HttpError {
+        if (!method.equals(expected)) throw new HttpError(405, "use " + expected);
+    }
+
+    // ---------------- Endpoints ----------------
+    private String login(Map<String, String> req) throws HttpError {
+        String accNo = req.get("account");
+        String pin = req.get("pin");
+        if (accNo == null || pin == null) throw new HttpError(400, "account and pin are required");
+        AdvancedBankSystem3.BankAccount a = AdvancedBankSystem3.findByAccountNumber(accNo.trim());
+        // same answer for unknown account and wrong PIN, so numbers cannot be probed
+        if (a == null) throw new HttpError(401, "invalid account number or PIN");
+        switch (AdvancedBankSystem3.checkPin(a, pin.trim())) {
+            case LOCKED -> throw new HttpError(429, "too many wrong PINs, try again in "
+                    + AdvancedBankSystem3.credentials.lockedForSeconds(a.accountNumber) + " seconds");
+            case WRONG_PIN -> throw new HttpError(401, "invalid account number or PIN");
+            default -> { }
+        }
+
+        byte[] raw = new byte[24];
+        random.nextBytes(raw);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+        sessions.put(token, new Session(a.accountNumber, System.currentTimeMillis() + sessionMillis));
+        StringBuilder sb = new StringBuilder("{\"token\":");
+        Json.quote(sb, token).append(",\"expiresInSeconds\":").append(sessionMillis / 1000).append('}');
+        return sb.toString();
+    }
+
+    private static String balance(AdvancedBankSystem3.BankAccount a) {
+        StringBuilder sb = new StringBuilder("{\"account\":");
+        Json.quote(sb, a.accountNumber).append(",\"name\":");
+        Json.quote(sb, a.name).append(",\"type\":");
+        Json.quote(sb, a.accountType).append(",\"balance\":\"");
+        return Money.appendTo(sb, a.balance).append("\"}").toString();
+    }
+
+    private static String transfer(AdvancedBankSystem3.BankAccount a, Map<String, String> req) throws HttpError {
+        String toNo = req.get("to");
+        if (toNo == null) throw new HttpError(400, "to is required");
+        AdvancedBankSystem3.BankAccount to = AdvancedBankSystem3.findByAccountNumber(toNo.trim());
+        if (to == null) throw new HttpError(404, "receiver not found");
+        return posted(a, AdvancedBankSystem3.postTransfer(a, to, amount(req)));
+    }
+
+    // Posting outcome: the account's balance before and after, or the rejection
+    private static String posted(AdvancedBankSystem3.BankAccount a, Ledger.Result r) throws HttpError {
+        switch (r.status) {
+            case INVALID_AMOUNT -> throw new HttpError(400, "invalid amount");
+            case INSUFFICIENT_FUNDS -> throw new HttpError(409, "insufficient funds");
+            case ACCOUNT_CLOSED -> throw new HttpError(410, "account is closed");
+            default -> { }
+        }
+        StringBuilder sb = new StringBuilder("{\"account\":");
+        Json.quote(sb, a.accountNumber).append(",\"amount\":\"");
+        Money.appendTo(sb, r.amount).append("\",\"balanceBefore\":\"");
+        Money.appendTo(sb, r.before).append("\",\"balanceAfter\":\"");
+        return Money.appendTo(sb, r.after).append("\"}").toString();
+    }
+
+    private static String history(AdvancedBankSystem3.BankAccount a, Map<String, String> q) throws HttpError {
+        List<String> lines;
+        int total;
+        try (TransactionHistory h = AdvancedBankSystem3.openHistory(a.accountNumber)) {
+            if (q.containsKey("from") || q.containsKey("to")) {
+                LocalDateTime from = q.containsKey("from") ? dateTime(q.get("from"), false) : LocalDateTime.of(1970, 1, 1, 0, 0);
+                LocalDateTime to = q.containsKey("to") ? dateTime(q.get("to"), true) : LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+                lines = h.between(from, to, MAX_HISTORY_LINES);
+            } else if (q.containsKey("page")) {
+                int size = intParam(q, "size", AdvancedBankSystem3.HISTORY_PAGE_SIZE);
+                lines = h.page(intParam(q, "page", 1), Math.min(size, MAX_HISTORY_LINES));
+            } else {
+                lines = h.last(Math.min(intParam(q, "last", AdvancedBankSystem3.HISTORY_PAGE_SIZE), MAX_HISTORY_LINES));
+            }
+            total = h.lineCount();
+        } catch (IOException e) {
+            throw new HttpError(503, "transactions unavailable: " + e.getMessage());
+        }
+
+        StringBuilder sb = new StringBuilder(64 + lines.size() * 120);
+        sb.append("{\"account\":");
+        Json.quote(sb, a.accountNumber).append(",\"total\":").append(total).append(",\"transactions\":[");
+        boolean first = true;
+        for (String line : lines) {
+            // timestamp,type,amount,before,after,note
+            String[] p = line.split(",", 6);
+            if (p.length < 5) continue;
+            if (!first) sb.append(',');
+            first = false;
+            sb.append("{\"timestamp\":");
+            Json.quote(sb, p[0]).append(",\"type\":");
+            Json.quote(sb, p[1]).append(",\"amount\":");
+            Json.quote(sb, p[2]).append(",\"balanceBefore\":");
+            Json.quote(sb, p[3]).append(",\"balanceAfter\":");
+            Json.quote(sb, p[4]).append(",\"note\":");
+            Json.quote(sb, p.length > 5 ? p[5] : "").append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    // ---------------- Sessions ----------------
+    private Session session(HttpExchange ex) throws HttpError {
+        String auth = ex.getRequestHeaders().getFirst("Authorization");
+        if (auth == null || !auth.regionMatches(true, 0, "Bearer ", 0, 7)) throw new HttpError(401, "login required");
+        Session s = sessions.get(auth.substring(7).trim());
+        long now = System.currentTimeMillis();
+        if (s == null || s.expiresAt < now) throw new HttpError(401, "session expired, login again");
+        s.expiresAt = now + sessionMillis; // sliding expiry
+        return s;
+    }
+
+    private void dropExpiredSessions() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(s -> s.expiresAt < now);
+    }
+
+    // ---------------- Request/response helpers ----------------
+    private static Map<String, String> readBody(HttpExchange ex) throws HttpError {
+        byte[] b;
+        try (InputStream in = ex.getRequestBody()) {
+            b = in.readNBytes(MAX_BODY + 1);
+        } catch (IOException e) {
+            throw new HttpError(400, "cannot read request body");
+        }
+        if (b.length > MAX_BODY) throw new HttpError(413, "request body too large");
+        Map<String, String> m = Json.parseObject(new String(b, StandardCharsets.UTF_8));
+        if (m == null) throw new HttpError(400, "body must be a JSON object");
+        return m;
+    }
+
+    private static long amount(Map<String, String> req) throws HttpError {
+        String s = req.get("amount");
+        if (s == null) throw new HttpError(400, "amount is required");
+        try {
+            return Money.parse(s);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "invalid amount");
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> q = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null) return q;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            q.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return q;
+    }
+
+    private static int intParam(Map<String, String> q, String name, int dflt) throws HttpError {
+        String v = q.get(name);
+        if (v == null) return dflt;
+        try {
+            int n = Integer.parseInt(v.trim());
+            if (n < 1) throw new NumberFormatException();
+            return n;
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, name + " must be a positive number");
+        }
+    }
+
+    // "yyyy-MM-dd" or "yyyy-MM-dd HH:mm:ss"; a bare date means start (or end) of that day
+    private static LocalDateTime dateTime(String s, boolean endOfDay) throws HttpError {
+        s = s.trim();
+        try {
+            if (s.length() == 10) {
+                LocalDate d = LocalDate.parse(s);
+                return endOfDay ? d.atTime(23, 59, 59) : d.atStartOfDay();
+            }
+            return LocalDateTime.parse(s, AdvancedBankSystem3.TF);
+        } catch (DateTimeParseException e) {
+            throw new HttpError(400, "dates are yyyy-MM-dd or yyyy-MM-dd HH:mm:ss");
+        }
+    }
+
+    private static String error(String message) {
+        return Json.quote(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+
+    private static void send(HttpExchange ex, int status, String body) throws IOException {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, b.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(b);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals for the AdvancedBankSystem3 admin dashboard.
+ *
+ * Instead of summing every balance on request, the totals are adjusted by
+ * each change as it happens: the Ledger reports every posting, and account
+ * open/close report the account's balance. Reading a total is then O(1)
+ * however many accounts there are. LongAdder keeps updates from concurrent
+ * sessions cheap.
+ */
+class BankStats {
+
+    /** Count and balance (kobo) for one account type. */
+    static final class TypeTotals {
+        final LongAdder accounts = new LongAdder();
+        final LongAdder balance = new LongAdder();
+    }
+
+    private final LongAdder totalBalance = new LongAdder();
+    private final LongAdder accountCount = new LongAdder();
+    private final Map<String, TypeTotals> byType = new ConcurrentHashMap<>();
+
+    void reset() {
+        totalBalance.reset();
+        accountCount.reset();
+        byType.clear();
+    }
+
+    void accountOpened(String accountType, long balance) {
+        accountCount.increment();
+        TypeTotals t = typeTotals(accountType);
+        t.accounts.increment();
+        balanceChanged(t, balance);
+    }
+
+    void accountClosed(String accountType, long balance) {
+        accountCount.decrement();
+        TypeTotals t = typeTotals(accountType);
+        t.accounts.decrement();
+        balanceChanged(t, -balance);
+    }
+
+    /** delta in kobo, positive for credits and negative for debits. */
+    void balanceChanged(String accountType, long delta) {
+        balanceChanged(typeTotals(accountType), delta);
+    }
+
+    long totalBalance() { return totalBalance.sum(); }
+
+    long accountCount() { return accountCount.sum(); }
+
+    /** Read-only view, account type -> totals, sorted by type name. */
+    Map<String, TypeTotals> byType() {
+        return Collections.unmodifiableMap(new TreeMap<>(byType));
+    }
+
+    private void balanceChanged(TypeTotals t, long delta) {
+        t.balance.add(delta);
+        totalBalance.add(delta);
+    }
+
+    private TypeTotals typeTotals(String accountType) {
+        return byType.computeIfAbsent(accountType.toUpperCase(Locale.ROOT), k -> new TypeTotals());
+    }
+}
@@ -9,10 +9,10 @@ class BankAccount {
     String accountNumber;
     String accountType;
     String pin;
-    double balance;
+    long balance; // kobo (see Money)
 
     public BankAccount(String name, String email, String phone, String bvn,
-                       String accNum, String accType, String pin, double balance) {
+                       String accNum, String accType, String pin, long balance) {
 
         this.name = name;
         this.email = email;
@@ -26,13 +26,13 @@ class BankAccount {
 
     public String toCSV() {
         return name + "," + email + "," + phone + "," + bvn + "," +
-                accountNumber + "," + accountType + "," + pin + "," + balance;
+                accountNumber + "," + accountType + "," + pin + "," + Money.format(balance);
     }
 
     public static BankAccount fromCSV(String line) {
         String[] p = line.split(",");
         return new BankAccount(p[0], p[1], p[2], p[3], p[4], p[5], p[6],
-                Double.parseDouble(p[7]));
+                Money.parse(p[7]));
     }
 }
 
@@ -40,6 +40,9 @@ public class BankSystem2 {
 
     static Scanner input = new Scanner(System.in);
     static ArrayList<BankAccount> accounts = new ArrayList<>();
+    // BVNs and account numbers of the accounts list, so the ID generators check them in O(1)
+    static final Set<String> bvnsInUse = new HashSet<>();
+    static final Set<String> accountNumbersInUse = new HashSet<>();
     static final String FILE_NAME = "accounts.csv";
 
     public static void main(String[] args) {
@@ -58,7 +61,7 @@ public class BankSystem2 {
             String line;
 
             while ((line = br.readLine()) != null) {
-                accounts.add(BankAccount.fromCSV(line));
+                addAccount(BankAccount.fromCSV(line));
             }
             br.close();
         } catch (Exception e) {
@@ -66,6 +69,12 @@ public class BankSystem2 {
         }
     }
 
+    static void addAccount(BankAccount acc) {
+        accounts.add(acc);
+        bvnsInUse.add(acc.bvn);
+        accountNumbersInUse.add(acc.accountNumber);
+    }
+
     // -------- SAVE ACCOUNTS --------
     static void saveAccounts() {
         try {
@@ -123,10 +132,12 @@ public class BankSystem2 {
         String accType = input.nextLine().toUpperCase();
 
         BankAccount acc = new BankAccount(
-                name, email, phone, bvn, accNum, accType, pin, 0.0
+                name, email, phone, bvn, accNum, accType, pin, 0
         );
 
-        accounts.add(acc);
+        addAccount(acc);
+        bvnGenerator.release(bvn);
+        accountNumberGenerator.release(accNum);
         saveAccounts();
 
         System.out.println("\n=== ACCOUNT CREATED ===");
@@ -197,13 +208,13 @@ public class BankSystem2 {
 
     // -------- BALANCE --------
     static void checkBalance(BankAccount acc) {
-        System.out.println("Your Balance: ₦" + acc.balance);
+        System.out.println("Your Balance: ₦" + Money.format(acc.balance));
     }
 
     // -------- DEPOSIT --------
     static void deposit(BankAccount acc) {
         System.out.print("Enter amount: ");
-        double amount = input.nextDouble();
+        long amount = readMoney();
 
         if (amount > 0) {
             acc.balance += amount;
@@ -216,7 +227,7 @@ public class BankSystem2 {
     // -------- WITHDRAW --------
     static void withdraw(BankAccount acc) {
         System.out.print("Enter amount: ");
-        double amount = input.nextDouble();
+        long amount = readMoney();
 
         if (amount > 0 && amount <= acc.balance) {
             acc.balance -= amount;
@@ -248,7 +259,7 @@ public class BankSystem2 {
         }
 
         System.out.print("Enter amount: ");
-        double amount = input.nextDouble();
+        long amount = readMoney();
 
         if (amount > 0 && sender.balance >= amount) {
             sender.balance -= amount;
@@ -278,23 +289,41 @@ public class BankSystem2 {
         System.out.println("BVN: " + acc.bvn);
         System.out.println("Account Number: " + acc.accountNumber);
         System.out.println("Account Type: " + acc.accountType);
-        System.out.println("Balance: ₦" + acc.balance);
+        System.out.println("Balance: ₦" + Money.format(acc.balance));
     }
 
     // -------- DELETE ACCOUNT (Feature 2) --------
     static void deleteAccount(BankAccount acc) {
         accounts.remove(acc);
+        bvnsInUse.remove(acc.bvn);
+        accountNumbersInUse.remove(acc.accountNumber);
         saveAccounts();
         System.out.println("Account deleted successfully!");
     }
 
+    // -------- READ AMOUNT (naira, returned in kobo) --------
+    static long readMoney() {
+        while (true) {
+            String s = input.next();
+            try {
+                return Money.parse(s);
+            } catch (NumberFormatException e) {
+                System.out.print("Enter a valid amount: ");
+            }
+        }
+    }
+
     // -------- GENERATE BVN --------
+    static final IdGenerator bvnGenerator = new IdGenerator("22", 11, bvnsInUse::contains);
+    static final IdGenerator accountNumberGenerator = new IdGenerator("10", 11, accountNumbersInUse::contains);
+
+    // Unique among loaded accounts, last digit is a Luhn check digit
     static String generateBVN() {
-        return "22" + (int)(Math.random() * 900000000 + 100000000);
+        return bvnGenerator.next();
     }
 
     // -------- GENERATE ACCOUNT NUMBER --------
     static String generateAccountNumber() {
-        return "10" + (int)(Math.random() * 900000000 + 100000000);
+        return accountNumberGenerator.next();
     }
 }
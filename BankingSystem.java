@@ -10,10 +10,10 @@ class BankAccount implements Serializable {
     private String bvn;
     private String accountType;
     private String pin;
-    private double balance;
+    private long balance; // kobo (see Money)
 
     public BankAccount(String name, String email, String phone,
-                       String accountType, String bvn, String pin, double balance) {
+                       String accountType, String bvn, String pin, long balance) {
         this.name = name;
         this.email = email;
         this.phone = phone;
@@ -26,11 +26,12 @@ class BankAccount implements Serializable {
     public String getName() { return name; }
     public String getBVN() { return bvn; }
     public String getPIN() { return pin; }
-    public double getBalance() { return balance; }
+    public void setPIN(String pin) { this.pin = pin; }
+    public long getBalance() { return balance; }
 
-    public void deposit(double amt) { balance += amt; }
+    public void deposit(long amt) { balance += amt; }
     
-    public boolean withdraw(double amt) {
+    public boolean withdraw(long amt) {
         if (amt > 0 && amt <= balance) {
             balance -= amt;
             return true;
@@ -38,7 +39,7 @@ class BankAccount implements Serializable {
         return false;
     }
 
-    public void transfer(BankAccount receiver, double amt) {
+    public void transfer(BankAccount receiver, long amt) {
         this.balance -= amt;
         receiver.balance += amt;
     }
@@ -46,7 +47,7 @@ class BankAccount implements Serializable {
     @Override
     public String toString() {
         return name + "," + email + "," + phone + "," + accountType 
-               + "," + bvn + "," + pin + "," + balance;
+               + "," + bvn + "," + pin + "," + Money.format(balance);
     }
 }
 
@@ -57,6 +58,7 @@ public class BankingSystem {
     private static Scanner input = new Scanner(System.in);
     private static Map<String, BankAccount> accounts = new HashMap<>();
     private static final String FILE_NAME = "accounts.txt";
+    private static final Credentials credentials = Credentials.fromSystemProperties(); // PIN hashes
 
     public static void main(String[] args) {
         loadAccounts();
@@ -83,11 +85,25 @@ public class BankingSystem {
 
     // ===================== BVN GENERATOR ======================
 
+    // unique among loaded accounts, last digit is a Luhn check digit
+    private static final IdGenerator bvnGenerator = new IdGenerator("", 10, accounts::containsKey);
+
     public static String generateBVN() {
-        Random rand = new Random();
-        StringBuilder bvn = new StringBuilder();
-        for (int i = 0; i < 10; i++) bvn.append(rand.nextInt(10));
-        return bvn.toString();
+        return bvnGenerator.next();
+    }
+
+    // ===================== AMOUNT INPUT ======================
+
+    // Reads a naira amount, returned in kobo
+    public static long readMoney() {
+        while (true) {
+            String s = input.next();
+            try {
+                return Money.parse(s);
+            } catch (NumberFormatException e) {
+                System.out.print("Enter a valid amount: ");
+            }
+        }
     }
 
     // ===================== SAVE & LOAD ======================
@@ -112,7 +128,7 @@ public class BankingSystem {
                 
                 BankAccount acc = new BankAccount(
                         data[0], data[1], data[2], data[3],
-                        data[4], data[5], Double.parseDouble(data[6])
+                        data[4], data[5], Money.parse(data[6])
                 );
 
                 accounts.put(data[4], acc);
@@ -139,13 +155,14 @@ public class BankingSystem {
         String pin = input.nextLine();
 
         System.out.print("Enter initial deposit: ");
-        double initial = input.nextDouble();
+        long initial = readMoney();
         input.nextLine();
 
         String bvn = generateBVN();
 
-        BankAccount acc = new BankAccount(name, email, phone, accountType, bvn, pin, initial);
+        BankAccount acc = new BankAccount(name, email, phone, accountType, bvn, credentials.hash(pin), initial);
         accounts.put(bvn, acc);
+        bvnGenerator.release(bvn);
         saveAccounts();
 
         System.out.println("\nAccount created successfully!");
@@ -169,9 +186,20 @@ public class BankingSystem {
 
         BankAccount acc = accounts.get(bvn);
 
-        if (!acc.getPIN().equals(pin)) {
-            System.out.println("Incorrect PIN!");
-            return;
+        switch (credentials.verify(bvn, acc.getPIN(), pin)) {
+            case LOCKED -> {
+                System.out.println("Too many wrong PINs! Try again in " + credentials.lockedForSeconds(bvn) + " seconds.");
+                return;
+            }
+            case WRONG_PIN -> {
+                System.out.println("Incorrect PIN!");
+                return;
+            }
+            default -> { }
+        }
+        if (credentials.needsRehash(acc.getPIN())) { // plain text from an older file
+            acc.setPIN(credentials.hash(pin));
+            saveAccounts();
         }
 
         System.out.println("\nLogin Successful! Welcome " + acc.getName());
@@ -197,7 +225,7 @@ public class BankingSystem {
                 case 1 -> deposit(acc);
                 case 2 -> withdraw(acc);
                 case 3 -> transfer(acc);
-                case 4 -> System.out.println("Balance: " + acc.getBalance());
+                case 4 -> System.out.println("Balance: " + Money.format(acc.getBalance()));
                 case 5 -> System.out.println("Logged out.");
                 default -> System.out.println("Invalid option!");
             }
@@ -208,7 +236,7 @@ public class BankingSystem {
 
     public static void deposit(BankAccount acc) {
         System.out.print("Enter amount: ");
-        double amt = input.nextDouble();
+        long amt = readMoney();
         acc.deposit(amt);
         saveAccounts();
         System.out.println("Deposit successful!");
@@ -216,7 +244,7 @@ public class BankingSystem {
 
     public static void withdraw(BankAccount acc) {
         System.out.print("Enter amount: ");
-        double amt = input.nextDouble();
+        long amt = readMoney();
 
         if (acc.withdraw(amt)) {
             saveAccounts();
@@ -237,7 +265,7 @@ public class BankingSystem {
         }
 
         System.out.print("Enter amount: ");
-        double amt = input.nextDouble();
+        long amt = readMoney();
 
         BankAccount receiver = accounts.get(receiverBVN);
 
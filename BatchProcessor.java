@@ -0,0 +1,272 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Headless batch mode for AdvancedBankSystem3: posts a file of transactions
+ * without any prompts.
+ *
+ *   java AdvancedBankSystem3 --batch postings.csv [results.csv]
+ *
+ * Input is one record per line, either CSV or JSON (a line starting with '{'
+ * is read as JSON, so both can be mixed). Blank lines and lines starting
+ * with '#' are skipped, as is a CSV header line starting with "type".
+ *
+ *   CSV   type,account,amount[,to[,ref]]
+ *   JSON  {"type":"TRANSFER","account":"0123456789","amount":"250.00","to":"9876543210","ref":"T-17"}
+ *
+ * type is DEPOSIT, WITHDRAW, TRANSFER or INTEREST. For INTEREST the amount
+ * is the rate in percent (e.g. 2.5). Each record goes through the Ledger
+ * exactly like the matching menu option, so the same rules apply: amounts
+ * must be positive, withdrawals and transfers need sufficient funds, and
+ * closed or unknown accounts are rejected.
+ *
+ * Records are applied in file order. Persistence is batched: every
+ * bank.batch.size records (default 10000) the touched accounts (once each,
+ * latest state) and all their log lines are committed to the journal as one
+ * group, so after a crash a batch is either fully on file or not at all. A
+ * snapshot is written at the end. If the run stops early (a read, write or
+ * journal error), no snapshot is taken: the committed batches are in the
+ * journal, which the next start folds into a snapshot. The batch in progress
+ * is rolled back in memory if it never reached the journal. If it was
+ * written but its log append or sync failed, it stands, and its lines are
+ * reported as unconfirmed.
+ *
+ * Every input record gets one line in the result file (default
+ * <input>.results.csv):
+ *   line,ref,status,balanceBefore,balanceAfter,message
+ * status is OK, INVALID_AMOUNT, INSUFFICIENT_FUNDS, ACCOUNT_CLOSED,
+ * NO_SUCH_ACCOUNT or BAD_RECORD. A batch's result lines are written once
+ * the batch is committed, so the file never reports a posting that is not
+ * on file. Re-running a file posts it again, so keep the result file to see
+ * what was applied.
+ */
+class BatchProcessor {
+
+    private final int batchSize = Math.max(1, Integer.getInteger("bank.batch.size", 10_000));
+    private final Map<String, AdvancedBankSystem3.BankAccount> touched = new LinkedHashMap<>();
+    private final Map<String, Long> startBalance = new HashMap<>(); // touched account -> balance before the batch
+    private final StringBuilder results = new StringBuilder(1 << 16); // result lines of the batch in progress
+    private long committedLines; // input lines whose results are written
+    private String unconfirmed; // input lines of a batch journaled but not confirmed, if any
+    private final List<String> logRecords = new ArrayList<>();
+    private final long[] counts = new long[Outcome.values().length];
+    private String ts; // one timestamp per batch; formatting it per record would dominate
+    private Outcome outcome; // set by reject()
+    private String message;
+
+    enum Outcome { OK, INVALID_AMOUNT, INSUFFICIENT_FUNDS, ACCOUNT_CLOSED, NO_SUCH_ACCOUNT, BAD_RECORD }
+
+    /** One parsed input line. */
+    static final class Record {
+        String type, account, amount, to, ref;
+    }
+
+    static void main(String inputFile, String resultFile) {
+        if (resultFile == null) resultFile = inputFile + ".results.csv";
+        AdvancedBankSystem3.loadAccounts();
+        BatchProcessor p = new BatchProcessor();
+        long start = System.nanoTime();
+        long n;
+        try {
+            n = p.run(inputFile, resultFile);
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Batch stopped: " + e.getMessage());
+            p.rollBack();
+            if (p.unconfirmed != null) {
+                System.out.println("Input lines " + p.unconfirmed + " are in the journal but not confirmed on disk;"
+                        + " the next start replays them.");
+            }
+            System.out.println("Input lines up to " + p.committedLines + " are posted and in " + resultFile
+                    + "; the rest were not posted.");
+            return; // no snapshot: the journal holds every committed batch
+        } finally {
+            AdvancedBankSystem3.txLog.closeAll();
+        }
+        double secs = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        System.out.printf("Processed %d records in %.2f s (%.0f records/s). Results in %s%n", n, secs, n / secs, resultFile);
+        for (Outcome o : Outcome.values()) {
+            if (p.counts[o.ordinal()] > 0) System.out.printf("  %-20s %d%n", o, p.counts[o.ordinal()]);
+        }
+    }
+
+    /** Posts every record of inputFile, writing one result line each; returns the record count. */
+    long run(String inputFile, String resultFile) throws IOException {
+        long records = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile), StandardCharsets.UTF_8), 1 << 16);
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(resultFile), StandardCharsets.UTF_8), 1 << 16)) {
+            out.write("line,ref,status,balanceBefore,balanceAfter,message\n");
+            StringBuilder result = new StringBuilder(128);
+            String line;
+            long lineNo = 0;
+            int inBatch = 0;
+            ts = LocalDateTime.now().format(AdvancedBankSystem3.TF);
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+                if (lineNo == 1 && trimmed.regionMatches(true, 0, "type", 0, 4)) continue; // CSV header
+
+                Record r = trimmed.charAt(0) == '{' ? parseJson(trimmed) : parseCsv(trimmed);
+                message = "";
+                Ledger.Result res = null;
+                Outcome o;
+                if (r == null) {
+                    o = Outcome.BAD_RECORD;
+                    message = "unreadable record";
+                } else {
+                    res = apply(r);
+                    o = res == null ? outcome : Outcome.valueOf(res.status.name());
+                }
+                counts[o.ordinal()]++;
+
+                result.setLength(0);
+                result.append(lineNo).append(',');
+                if (r != null && r.ref != null) result.append(r.ref.replace(',', ' '));
+                result.append(',').append(o).append(',');
+                if (o == Outcome.OK) {
+                    Money.appendTo(result, res.before).append(',');
+                    Money.appendTo(result, res.after).append(',');
+                } else {
+                    result.append(",,");
+                }
+                result.append(message.replace(',', ' ')).append('\n');
+                results.append(result);
+                records++;
+                if (++inBatch == batchSize) {
+                    flushBatch(out, lineNo);
+                    inBatch = 0;
+                }
+            }
+            flushBatch(out, lineNo);
+        }
+        AdvancedBankSystem3.saveAccounts();
+        AdvancedBankSystem3.txLog.flushAll();
+        return records;
+    }
+
+    // Posts one record; null (with outcome and message set) if it never reached the Ledger
+    private Ledger.Result apply(Record r) {
+        String type = r.type == null ? "" : r.type.trim().toUpperCase(Locale.ROOT);
+        if (!type.equals("DEPOSIT") && !type.equals("WITHDRAW") && !type.equals("TRANSFER") && !type.equals("INTEREST")) {
+            return reject(Outcome.BAD_RECORD, "unknown type " + r.type);
+        }
+        AdvancedBankSystem3.BankAccount a = r.account == null ? null : AdvancedBankSystem3.findByAccountNumber(r.account.trim());
+        if (a == null) return reject(Outcome.NO_SUCH_ACCOUNT, "account " + r.account);
+        if (r.amount == null) return reject(Outcome.BAD_RECORD, "missing amount");
+
+        if (type.equals("INTEREST")) {
+            double rate;
+            try {
+                rate = Double.parseDouble(r.amount.trim());
+            } catch (NumberFormatException e) {
+                return reject(Outcome.BAD_RECORD, "bad rate " + r.amount);
+            }
+            String note = "Interest applied: " + rate + "%";
+            return AdvancedBankSystem3.ledger.applyRate(a, rate, done -> posted(a, "INTEREST", done.amount, done.before, done.after, note));
+        }
+
+        long amt;
+        try {
+            amt = Money.parse(r.amount);
+        } catch (NumberFormatException e) {
+            return reject(Outcome.BAD_RECORD, "bad amount " + r.amount);
+        }
+        return switch (type) {
+            case "DEPOSIT" -> AdvancedBankSystem3.ledger.deposit(a, amt,
+                    done -> posted(a, "DEPOSIT", done.amount, done.before, done.after, ""));
+            case "WITHDRAW" -> AdvancedBankSystem3.ledger.withdraw(a, amt,
+                    done -> posted(a, "WITHDRAW", done.amount, done.before, done.after, ""));
+            default -> {
+                AdvancedBankSystem3.BankAccount to = r.to == null ? null : AdvancedBankSystem3.findByAccountNumber(r.to.trim());
+                if (to == null) yield reject(Outcome.NO_SUCH_ACCOUNT, "receiver " + r.to);
+                yield AdvancedBankSystem3.ledger.transfer(a, to, amt, done -> {
+                    posted(a, "TRANSFER_OUT", done.amount, done.before, done.after, "To " + to.accountNumber);
+                    posted(to, "TRANSFER_IN", done.amount, done.otherBefore, done.otherAfter, "From " + a.accountNumber);
+                });
+            }
+        };
+    }
+
+    private Ledger.Result reject(Outcome o, String why) {
+        outcome = o;
+        message = why;
+        return null;
+    }
+
+    // Commit callback: runs under the Ledger lock, only collects; writing happens per batch
+    private void posted(AdvancedBankSystem3.BankAccount a, String type, long amount, long before, long after, String note) {
+        if (touched.put(a.accountNumber, a) == null) startBalance.put(a.accountNumber, before);
+        logRecords.add(AdvancedBankSystem3.logRecord(a.accountNumber,
+                AdvancedBankSystem3.transactionLine(ts, type, amount, before, after, note)));
+    }
+
+    // Commits the batch, then writes its result lines (up to input line lineNo)
+    private void flushBatch(Writer out, long lineNo) throws IOException {
+        IOException failure = null;
+        if (!touched.isEmpty()) {
+            List<String> records = new ArrayList<>(touched.size() + logRecords.size());
+            for (AdvancedBankSystem3.BankAccount a : touched.values()) {
+                String[] row = new String[1];
+                AdvancedBankSystem3.ledger.withLock(a, () -> row[0] = AdvancedBankSystem3.accountRecord(a)); // consistent row
+                records.add(row[0]);
+            }
+            records.addAll(logRecords);
+            try {
+                AdvancedBankSystem3.commitGroup(records); // a plain IOException: not journaled, main rolls back
+            } catch (AdvancedBankSystem3.UnconfirmedException e) {
+                failure = e; // journaled: the batch stands, so nothing to roll back
+            }
+            touched.clear();
+            startBalance.clear();
+            logRecords.clear();
+        }
+        out.append(results);
+        results.setLength(0);
+        if (failure != null) unconfirmed = (committedLines + 1) + "-" + lineNo;
+        committedLines = lineNo;
+        if (failure != null) throw failure;
+        ts = LocalDateTime.now().format(AdvancedBankSystem3.TF);
+    }
+
+    // Puts back the balances the batch changed when it never reached the journal, so memory is not ahead of it
+    private void rollBack() {
+        for (AdvancedBankSystem3.BankAccount a : touched.values()) {
+            long start = startBalance.get(a.accountNumber);
+            AdvancedBankSystem3.ledger.withLock(a, () -> {
+                AdvancedBankSystem3.stats.balanceChanged(a.accountType, start - a.balance);
+                a.balance = start;
+            });
+        }
+        touched.clear();
+        startBalance.clear();
+        logRecords.clear();
+        results.setLength(0);
+    }
+
+    // ---------------- Parsing ----------------
+    static Record parseCsv(String line) {
+        String[] p = line.split(",", -1);
+        if (p.length < 3) return null;
+        Record r = new Record();
+        r.type = p[0];
+        r.account = p[1];
+        r.amount = p[2];
+        if (p.length > 3 && !p[3].isBlank()) r.to = p[3];
+        if (p.length > 4 && !p[4].isBlank()) r.ref = p[4].trim();
+        return r;
+    }
+
+    static Record parseJson(String line) {
+        Map<String, String> m = Json.parseObject(line);
+        if (m == null) return null;
+        Record r = new Record();
+        r.type = m.get("type");
+        r.account = m.get("account");
+        r.amount = m.containsKey("amount") ? m.get("amount") : m.get("rate");
+        r.to = m.get("to");
+        r.ref = m.get("ref");
+        return r;
+    }
+}
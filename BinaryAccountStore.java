@@ -0,0 +1,297 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * accounts.bin: every account stored as one fixed-size binary record.
+ *
+ * Loading maps the file and decodes each record field by field, with no
+ * line splitting or number parsing, so startup stays fast for large books.
+ * Because every record has the same size, record i always starts at
+ * HEADER_SIZE + i * RECORD_SIZE.
+ *
+ * Header (64 bytes): magic "ONITACCT", int version, int record size,
+ * long record count, rest zero.
+ *
+ * Record (RECORD_SIZE bytes):
+ *   long  balance (kobo)
+ *   byte  flags (bit 0 = deleted)
+ *   byte  account type (0 = SAVINGS, 1 = CURRENT)
+ *   text  accountNumber, bvn, phone, pin, name, email
+ * Each text field is a length byte followed by a fixed number of UTF-8
+ * bytes (see WIDTHS). Input is checked against the widths with fits() where
+ * it is typed in; a longer value still reaching save() is rejected.
+ *
+ * Convert an existing CSV book (or back, with --to-csv):
+ *   java BinaryAccountStore accounts.csv accounts.bin
+ *   java BinaryAccountStore --to-csv accounts.bin accounts.csv
+ */
+class BinaryAccountStore implements AccountStore {
+
+    static final String DEFAULT_FILE = "accounts.bin";
+
+    static final byte[] MAGIC = "ONITACCT".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    static final String[] TYPES = { "SAVINGS", "CURRENT" };
+    static final String[] FIELDS = { "accountNumber", "bvn", "phone", "pin", "name", "email" };
+    static final int[] WIDTHS = { 16, 16, 20, 100, 64, 80 };
+    static final int FLAG_DELETED = 1;
+    static final int RECORD_SIZE;
+
+    static {
+        int size = 8 + 1 + 1;
+        for (int w : WIDTHS) size += 1 + w;
+        RECORD_SIZE = size;
+    }
+
+    private static final int BATCH = 1024; // records per write on save
+
+    private final String fileName;
+
+    BinaryAccountStore(String fileName) {
+        this.fileName = fileName;
+    }
+
+    @Override
+    public String fileName() { return fileName; }
+
+    /** Bytes field (one of FIELDS) can hold. */
+    static int maxBytes(String field) {
+        for (int f = 0; f < FIELDS.length; f++) if (FIELDS[f].equals(field)) return WIDTHS[f];
+        throw new IllegalArgumentException("unknown field " + field);
+    }
+
+    /** True if value fits the field's slot, so every store can save it. */
+    static boolean fits(String field, String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length <= maxBytes(field);
+    }
+
+    @Override
+    public void load(Consumer<AdvancedBankSystem3.BankAccount> sink) throws IOException {
+        Path p = Paths.get(fileName);
+        if (!Files.exists(p)) return;
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            long count = readHeader(ch);
+            byte[] rec = new byte[RECORD_SIZE];
+            // a single mapping is limited to 2 GB, so map the records in windows
+            long perWindow = Integer.MAX_VALUE / RECORD_SIZE;
+            for (long first = 0; first < count; first += perWindow) {
+                int n = (int) Math.min(perWindow, count - first);
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + first * RECORD_SIZE, (long) n * RECORD_SIZE);
+                for (int i = 0; i < n; i++) {
+                    buf.get(i * RECORD_SIZE, rec);
+                    AdvancedBankSystem3.BankAccount a = decode(rec);
+                    if (a != null) sink.accept(a);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void save(Collection<AdvancedBankSystem3.BankAccount> accounts) throws IOException {
+        AccountStore.replaceAtomically(fileName, tmp -> write(tmp, accounts));
+    }
+
+    private static void write(Path file, Collection<AdvancedBankSystem3.BankAccount> accounts) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putLong(accounts.size());
+            header.clear();
+            ch.write(header);
+
+            ByteBuffer batch = ByteBuffer.allocateDirect(RECORD_SIZE * BATCH);
+            for (AdvancedBankSystem3.BankAccount a : accounts) {
+                if (!batch.hasRemaining()) {
+                    batch.flip();
+                    while (batch.hasRemaining()) ch.write(batch);
+                    batch.clear();
+                }
+                encode(a, batch);
+            }
+            batch.flip();
+            while (batch.hasRemaining()) ch.write(batch);
+            ch.force(true);
+        }
+    }
+
+    /** Validates the header and returns the record count. */
+    static long readHeader(FileChannel ch) throws IOException {
+        long fileSize = ch.size();
+        if (fileSize < HEADER_SIZE) throw new IOException("not an account file (too short)");
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE);
+        while (buf.hasRemaining() && ch.read(buf, buf.position()) > 0) { }
+        byte[] magic = new byte[MAGIC.length];
+        buf.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("not an account file (bad magic)");
+        int version = buf.getInt(8);
+        int recordSize = buf.getInt(12);
+        long count = buf.getLong(16);
+        if (version != VERSION || recordSize != RECORD_SIZE) {
+            throw new IOException("unsupported account file version " + version + "/" + recordSize);
+        }
+        if (HEADER_SIZE + count * RECORD_SIZE > fileSize) throw new IOException("account file is truncated");
+        return count;
+    }
+
+    /** Writes one record at buf's position (advances it by RECORD_SIZE). */
+    static void encode(AdvancedBankSystem3.BankAccount a, ByteBuffer buf) throws IOException {
+        int type = typeCode(a.accountType);
+        if (type < 0) throw new IOException("account " + a.accountNumber + ": unsupported type " + a.accountType);
+        buf.putLong(a.balance);
+        buf.put((byte) (a.closed ? FLAG_DELETED : 0));
+        buf.put((byte) type);
+        String[] values = { a.accountNumber, a.bvn, a.phone, a.pin, a.name, a.email };
+        for (int f = 0; f < values.length; f++) {
+            byte[] b = values[f].getBytes(StandardCharsets.UTF_8);
+            if (b.length > WIDTHS[f]) {
+                throw new IOException("account " + a.accountNumber + ": " + FIELDS[f] + " longer than "
+                        + WIDTHS[f] + " bytes");
+            }
+            buf.put((byte) b.length);
+            buf.put(b);
+            for (int i = b.length; i < WIDTHS[f]; i++) buf.put((byte) 0);
+        }
+    }
+
+    /** Decodes one record; null if it is marked deleted. */
+    static AdvancedBankSystem3.BankAccount decode(byte[] rec) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(rec);
+        long balance = b.getLong();
+        int flags = b.get();
+        int type = b.get();
+        if ((flags & FLAG_DELETED) != 0) return null;
+        if (type < 0 || type >= TYPES.length) throw new IOException("corrupt account record (type " + type + ")");
+        String[] v = new String[WIDTHS.length];
+        int pos = 10;
+        for (int f = 0; f < WIDTHS.length; f++) {
+            int len = rec[pos] & 0xFF;
+            if (len > WIDTHS[f]) throw new IOException("corrupt account record (" + FIELDS[f] + ")");
+            v[f] = new String(rec, pos + 1, len, StandardCharsets.UTF_8);
+            pos += 1 + WIDTHS[f];
+        }
+        return new AdvancedBankSystem3.BankAccount(v[4], v[5], v[2], v[1], v[0], TYPES[type], v[3], balance);
+    }
+
+    static int typeCode(String accountType) {
+        for (int i = 0; i < TYPES.length; i++) if (TYPES[i].equalsIgnoreCase(accountType)) return i;
+        return -1;
+    }
+
+    // ---------------- Record access ----------------
+    /**
+     * An accounts.bin opened for reading and writing single records in place
+     * (used by AccountCache in lazy mode). Record numbers are stable: a
+     * deleted account keeps its record, flagged, until the next full save.
+     * Positional channel I/O, so concurrent reads need no locking; appends
+     * are serialised.
+     */
+    static final class RecordFile implements Closeable {
+        private final FileChannel ch;
+        private long count;
+
+        RecordFile(String fileName) throws IOException {
+            Path p = Paths.get(fileName);
+            ch = FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            if (ch.size() == 0) {
+                writeCount(0);
+            } else {
+                count = readHeader(ch);
+            }
+        }
+
+        synchronized long count() { return count; }
+
+        interface Scan {
+            void record(long recordNo, AdvancedBankSystem3.BankAccount a) throws IOException;
+        }
+
+        /** Feeds every live record with its number, in file order. */
+        void scan(Scan sink) throws IOException {
+            long n = count();
+            byte[] rec = new byte[RECORD_SIZE];
+            long perWindow = Integer.MAX_VALUE / RECORD_SIZE;
+            for (long first = 0; first < n; first += perWindow) {
+                int len = (int) Math.min(perWindow, n - first);
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + first * RECORD_SIZE, (long) len * RECORD_SIZE);
+                for (int i = 0; i < len; i++) {
+                    buf.get(i * RECORD_SIZE, rec);
+                    AdvancedBankSystem3.BankAccount a = decode(rec);
+                    if (a != null) sink.record(first + i, a);
+                }
+            }
+        }
+
+        /** The account in record recordNo, or null if that record is deleted. */
+        AdvancedBankSystem3.BankAccount read(long recordNo) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+            long pos = HEADER_SIZE + recordNo * RECORD_SIZE;
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, pos + buf.position()) < 0) throw new EOFException("record " + recordNo + " past end of file");
+            }
+            return decode(buf.array());
+        }
+
+        /** Overwrites record recordNo with a (a closed account is written as deleted). */
+        void write(long recordNo, AdvancedBankSystem3.BankAccount a) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+            encode(a, buf);
+            buf.flip();
+            long pos = HEADER_SIZE + recordNo * RECORD_SIZE;
+            while (buf.hasRemaining()) ch.write(buf, pos + buf.position());
+        }
+
+        /** Adds a record at the end and returns its number. The count in the header follows the record. */
+        synchronized long append(AdvancedBankSystem3.BankAccount a) throws IOException {
+            write(count, a);
+            writeCount(count + 1);
+            return count++;
+        }
+
+        void force() throws IOException {
+            ch.force(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            ch.close();
+        }
+
+        private void writeCount(long n) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putLong(n);
+            header.clear();
+            while (header.hasRemaining()) ch.write(header, header.position());
+        }
+    }
+
+    // ---------------- CSV <-> binary converter ----------------
+    public static void main(String[] args) throws IOException {
+        boolean toCsv = args.length == 3 && args[0].equals("--to-csv");
+        if (!(args.length == 2 || toCsv)) {
+            System.out.println("Usage: java BinaryAccountStore <accounts.csv> <accounts.bin>");
+            System.out.println("       java BinaryAccountStore --to-csv <accounts.bin> <accounts.csv>");
+            return;
+        }
+        String src = toCsv ? args[1] : args[0];
+        String dst = toCsv ? args[2] : args[1];
+        AccountStore from = toCsv ? new BinaryAccountStore(src) : new AccountStore.Csv(src);
+        AccountStore to = toCsv ? new AccountStore.Csv(dst) : new BinaryAccountStore(dst);
+
+        List<AdvancedBankSystem3.BankAccount> accounts = new ArrayList<>();
+        long start = System.nanoTime();
+        from.load(accounts::add);
+        to.save(accounts);
+        System.out.printf("Converted %d accounts from %s to %s in %d ms%n",
+                accounts.size(), src, dst, (System.nanoTime() - start) / 1_000_000);
+    }
+}
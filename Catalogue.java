@@ -0,0 +1,416 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Item catalogue for MarketBillingSystem: exact lookup by code, barcode or
+ * name, and name search that accepts word prefixes and typos.
+ *
+ * Catalogue files hold one item per line ('#' comments and blank lines are
+ * skipped):
+ *   code,barcode,name,price
+ * barcode may be empty, price is in naira, and the name may itself contain
+ * commas (everything between the second and the last comma).
+ *
+ * Indexes, all built once by build() and read-only afterwards:
+ *   code, barcode, name  hash maps; codes are case-insensitive, names are
+ *                        compared as their lower-case words ("Sugar  1KG" =
+ *                        "sugar 1kg")
+ *   words                every distinct name word, sorted, with the items
+ *                        using it: a flattened trie, where the words starting
+ *                        with a prefix are one binary-searched range
+ *   trigrams             word ids by 3-letter substring of "$word$", used to
+ *                        find words within one edit (4-7 letters) or two
+ *                        edits (8+) of a mistyped query word
+ *   lengths              word ids by word length, scanned instead when the
+ *                        query word is too short for the trigrams to tell
+ * search() needs every query word to match some word of the name exactly,
+ * as a prefix, or within the allowed edits, and ranks exact matches first.
+ * It starts from the query word with the fewest items and checks the others
+ * against each candidate, so a lookup touches a few hundred entries even in
+ * a 100k-item catalogue.
+ */
+final class Catalogue {
+
+    private final MarketBillingSystem.Item[] items;
+    private final Map<String, Integer> byCode, byBarcode, byName;
+    private final String[] words;          // sorted, distinct
+    private final int[][] wordItems;       // word id -> item ids, shortest name first
+    private final long[] itemsBefore;      // word id -> sum of wordItems lengths before it
+    private final int[][] itemWords;       // item id -> word ids of its name
+    private final Map<Long, int[]> trigrams;
+    private final int[][] byLength;        // word length -> word ids
+
+    private Catalogue(Builder b) {
+        items = b.items.toArray(new MarketBillingSystem.Item[0]);
+        byCode = b.byCode;
+        byBarcode = b.byBarcode;
+        byName = new HashMap<>(items.length * 2);
+
+        // words numbered as first seen, then renumbered in sorted order
+        Map<String, Integer> seen = new HashMap<>();
+        List<String> seenWords = new ArrayList<>();
+        int[][] tokenIds = new int[items.length][];
+        for (int i = 0; i < items.length; i++) {
+            String[] t = words(items[i].name);
+            byName.putIfAbsent(String.join(" ", t), i);
+            int[] ids = new int[t.length];
+            int n = 0;
+            for (String word : t) {
+                Integer id = seen.get(word);
+                if (id == null) {
+                    id = seenWords.size();
+                    seen.put(word, id);
+                    seenWords.add(word);
+                }
+                if (!contains(ids, n, id)) ids[n++] = id;
+            }
+            tokenIds[i] = n == ids.length ? ids : Arrays.copyOf(ids, n);
+        }
+        words = seenWords.toArray(new String[0]);
+        Arrays.sort(words);
+        int[] rank = new int[words.length];
+        for (int r = 0; r < words.length; r++) rank[seen.get(words[r])] = r;
+
+        itemWords = tokenIds;
+        int[] count = new int[words.length];
+        for (int[] ids : itemWords) {
+            for (int k = 0; k < ids.length; k++) count[ids[k] = rank[ids[k]]]++;
+        }
+        wordItems = new int[words.length][];
+        for (int w = 0; w < words.length; w++) wordItems[w] = new int[count[w]];
+        Arrays.fill(count, 0);
+        for (int i = 0; i < items.length; i++) {
+            for (int w : itemWords[i]) wordItems[w][count[w]++] = i;
+        }
+        // postings shortest name first, so search() can stop a word early
+        itemsBefore = new long[words.length + 1];
+        for (int w = 0; w < words.length; w++) {
+            int[] p = wordItems[w];
+            long[] keys = new long[p.length];
+            for (int k = 0; k < p.length; k++) keys[k] = (long) items[p[k]].name.length() << 32 | p[k];
+            Arrays.sort(keys);
+            for (int k = 0; k < p.length; k++) p[k] = (int) keys[k];
+            itemsBefore[w + 1] = itemsBefore[w] + p.length;
+        }
+
+        Map<Long, List<Integer>> grams = new HashMap<>();
+        for (int w = 0; w < words.length; w++) {
+            for (long g : trigramsOf(words[w])) {
+                List<Integer> l = grams.computeIfAbsent(g, k -> new ArrayList<>());
+                if (l.isEmpty() || l.get(l.size() - 1) != w) l.add(w);
+            }
+        }
+        trigrams = new HashMap<>(grams.size() * 2);
+        for (Map.Entry<Long, List<Integer>> e : grams.entrySet()) {
+            trigrams.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        int longest = 0;
+        for (String w : words) longest = Math.max(longest, w.length());
+        int[] perLength = new int[longest + 1];
+        for (String w : words) perLength[w.length()]++;
+        byLength = new int[longest + 1][];
+        for (int len = 0; len <= longest; len++) byLength[len] = new int[perLength[len]];
+        Arrays.fill(perLength, 0);
+        for (int w = 0; w < words.length; w++) byLength[words[w].length()][perLength[words[w].length()]++] = w;
+    }
+
+    private static boolean contains(int[] a, int n, int v) {
+        for (int i = 0; i < n; i++) if (a[i] == v) return true;
+        return false;
+    }
+
+    // ---------------- Loading ----------------
+    static final class Builder {
+        private final List<MarketBillingSystem.Item> items = new ArrayList<>();
+        private final Map<String, Integer> byCode = new HashMap<>();
+        private final Map<String, Integer> byBarcode = new HashMap<>();
+
+        /** Adds it; a code or barcode seen before now points at it. */
+        Builder add(MarketBillingSystem.Item it) {
+            int id = items.size();
+            items.add(it);
+            byCode.put(it.code.toUpperCase(Locale.ROOT), id);
+            if (it.barcode != null && !it.barcode.isEmpty()) byBarcode.put(it.barcode, id);
+            return this;
+        }
+
+        Catalogue build() {
+            return new Catalogue(this);
+        }
+    }
+
+    /** Reads a catalogue file; lines that do not parse are reported and skipped. */
+    static Catalogue load(Path file) throws IOException {
+        Builder b = new Builder();
+        int lineNo = 0, skipped = 0;
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                int c1 = line.indexOf(',');
+                int c2 = c1 < 0 ? -1 : line.indexOf(',', c1 + 1);
+                int last = line.lastIndexOf(',');
+                try {
+                    if (c2 < 0 || last <= c2) throw new NumberFormatException("expected code,barcode,name,price");
+                    String code = line.substring(0, c1).trim();
+                    String name = line.substring(c2 + 1, last).trim();
+                    if (code.isEmpty() || name.isEmpty()) throw new NumberFormatException("empty code or name");
+                    b.add(new MarketBillingSystem.Item(code, line.substring(c1 + 1, c2).trim(), name,
+                            Money.parse(line.substring(last + 1))));
+                } catch (NumberFormatException e) {
+                    if (skipped++ < 10) System.out.println(file + ":" + lineNo + ": skipped (" + e.getMessage() + ")");
+                }
+            }
+        }
+        if (skipped > 10) System.out.println(file + ": " + skipped + " lines skipped in all");
+        return b.build();
+    }
+
+    // ---------------- Lookup ----------------
+    int size() { return items.length; }
+
+    /** Items in catalogue order, from..from+count. */
+    List<MarketBillingSystem.Item> list(int from, int count) {
+        from = Math.max(0, from);
+        return Arrays.asList(items).subList(Math.min(from, items.length), Math.min(items.length, from + count));
+    }
+
+    MarketBillingSystem.Item byCode(String code) {
+        return item(byCode.get(code.trim().toUpperCase(Locale.ROOT)));
+    }
+
+    MarketBillingSystem.Item byBarcode(String barcode) {
+        return item(byBarcode.get(barcode.trim()));
+    }
+
+    MarketBillingSystem.Item byName(String name) {
+        return item(byName.get(String.join(" ", words(name))));
+    }
+
+    /** Exact match on code, then barcode, then name; null if none. */
+    MarketBillingSystem.Item find(String key) {
+        MarketBillingSystem.Item it = byCode(key);
+        if (it == null) it = byBarcode(key);
+        if (it == null) it = byName(key);
+        return it;
+    }
+
+    private MarketBillingSystem.Item item(Integer id) {
+        return id == null ? null : items[id];
+    }
+
+    // ---------------- Search ----------------
+    // Postings looked at per search at most; only reached by one- or two-letter queries
+    private static final int MAX_SCAN = 20_000;
+
+    /** Up to limit items whose name matches every word of query, best first. */
+    List<MarketBillingSystem.Item> search(String query, int limit) {
+        String[] q = words(query);
+        if (q.length == 0 || limit <= 0) return List.of();
+        WordMatch[] m = new WordMatch[q.length];
+        int driver = 0;
+        long othersAtBest = 0;
+        for (int j = 0; j < q.length; j++) {
+            m[j] = new WordMatch(q[j]);
+            if (m[j].wordIds().length == 0) return List.of();
+            if (m[j].postings() < m[driver].postings()) driver = j;
+            othersAtBest += m[j].bestScore();
+        }
+        othersAtBest -= m[driver].bestScore();
+
+        // candidates from the most selective query word, its best-scoring words first; each hit
+        // is packed as score | name length | item, and top keeps the best limit of them in order
+        long[] top = new long[limit];
+        int found = 0, scanned = 0;
+        BitSet seen = new BitSet(items.length);
+        for (int wid : m[driver].wordIds()) {
+            long floor = (m[driver].score(wid) + othersAtBest) << 48; // no unseen item of this word scores better
+            if (found == limit && floor > top[limit - 1]) break;
+            for (int item : wordItems[wid]) {
+                // postings are shortest first: once past the worst hit's length, the rest of the word cannot place
+                if (found == limit && (floor | (long) nameLength(item) << 32) > top[limit - 1]) break;
+                if (scanned++ >= MAX_SCAN) break;
+                if (seen.get(item)) continue;
+                seen.set(item);
+                int total = 0;
+                for (int j = 0; j < q.length && total >= 0; j++) {
+                    int best = Integer.MAX_VALUE;
+                    for (int iw : itemWords[item]) best = Math.min(best, m[j].score(iw));
+                    total = best == Integer.MAX_VALUE ? -1 : total + best;
+                }
+                if (total < 0) continue;
+                long key = (long) total << 48 | (long) nameLength(item) << 32 | item;
+                if (found == limit && key >= top[limit - 1]) continue;
+                int at = found < limit ? found++ : limit - 1;
+                while (at > 0 && top[at - 1] > key) {
+                    top[at] = top[at - 1];
+                    at--;
+                }
+                top[at] = key;
+            }
+        }
+        List<MarketBillingSystem.Item> out = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) out.add(items[(int) top[i]]);
+        return out;
+    }
+
+    private int nameLength(int item) {
+        return Math.min(items[item].name.length(), 0xFFFF);
+    }
+
+    /**
+     * The catalogue words one query word matches, with a score: 0 the same
+     * word, 1 a longer word it is a prefix of, 2 per edit for a typo.
+     */
+    private final class WordMatch {
+        final int from, to;      // words starting with the query word; from is the word itself if present
+        final boolean exact;
+        final int[] typoIds;     // sorted word ids within the allowed edits
+        final int[] typoScores;
+
+        WordMatch(String w) {
+            from = lowerBound(w);
+            to = lowerBound(w + Character.MAX_VALUE);
+            exact = from < to && words[from].equals(w);
+            Map<Integer, Integer> typos = new TreeMap<>(typos(w));
+            typoIds = new int[typos.size()];
+            typoScores = new int[typos.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> e : typos.entrySet()) {
+                typoIds[i] = e.getKey();
+                typoScores[i++] = e.getValue();
+            }
+        }
+
+        /** Score of word wid for this query word, Integer.MAX_VALUE if it does not match. */
+        int score(int wid) {
+            if (wid >= from && wid < to) return exact && wid == from ? 0 : 1;
+            if (typoIds.length == 0) return Integer.MAX_VALUE;
+            int k = Arrays.binarySearch(typoIds, wid);
+            return k >= 0 ? typoScores[k] : Integer.MAX_VALUE;
+        }
+
+        int bestScore() {
+            if (from < to) return exact ? 0 : 1;
+            int best = Integer.MAX_VALUE;
+            for (int sc : typoScores) best = Math.min(best, sc);
+            return best;
+        }
+
+        long postings() {
+            long n = itemsBefore[to] - itemsBefore[from];
+            for (int wid : typoIds) n += wordItems[wid].length;
+            return n;
+        }
+
+        /** Matching words, best score first. */
+        int[] wordIds() {
+            int[] out = new int[to - from + typoIds.length];
+            for (int wid = from; wid < to; wid++) out[wid - from] = wid;
+            for (int k = 0, at = to - from; k < typoIds.length; k++) out[at++] = typoIds[k];
+            Integer[] boxed = Arrays.stream(out).boxed().toArray(Integer[]::new);
+            Arrays.sort(boxed, Comparator.comparingInt(this::score));
+            for (int k = 0; k < out.length; k++) out[k] = boxed[k];
+            return out;
+        }
+    }
+
+    private int lowerBound(String w) {
+        int lo = 0, hi = words.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (words[mid].compareTo(w) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Words within the allowed edits of w (not w itself), scored 2 per edit
+    private Map<Integer, Integer> typos(String w) {
+        int maxEdits = w.length() >= 8 ? 2 : w.length() >= 4 ? 1 : 0;
+        if (maxEdits == 0) return Map.of();
+        long[] grams = trigramsOf(w);
+        // each edit spoils at most four trigrams (an adjacent swap), so a
+        // short word may share none with its typo: then scan by length
+        int needed = grams.length - 4 * maxEdits;
+        Map<Integer, Integer> out = new HashMap<>();
+        if (needed <= 0) {
+            for (int len = Math.max(0, w.length() - maxEdits); len <= w.length() + maxEdits && len < byLength.length; len++) {
+                for (int wid : byLength[len]) addTypo(out, w, wid, maxEdits);
+            }
+            return out;
+        }
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (long g : grams) {
+            int[] ws = trigrams.get(g);
+            if (ws == null) continue;
+            for (int wid : ws) shared.merge(wid, 1, Integer::sum);
+        }
+        for (Map.Entry<Integer, Integer> e : shared.entrySet()) {
+            if (e.getValue() >= needed) addTypo(out, w, e.getKey(), maxEdits);
+        }
+        return out;
+    }
+
+    private void addTypo(Map<Integer, Integer> out, String w, int wid, int maxEdits) {
+        String cand = words[wid];
+        if (Math.abs(cand.length() - w.length()) > maxEdits || cand.equals(w)) return;
+        int d = distance(w, cand, maxEdits);
+        if (d <= maxEdits) out.put(wid, 2 * d);
+    }
+
+    // Edit distance counting an adjacent swap as one edit; anything over max comes back as max + 1
+    static int distance(String a, String b, int max) {
+        int n = a.length(), m = b.length();
+        int[] prev2 = new int[m + 1], prev = new int[m + 1], cur = new int[m + 1];
+        for (int j = 0; j <= m; j++) prev[j] = j;
+        for (int i = 1; i <= n; i++) {
+            cur[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= m; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int v = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    v = Math.min(v, prev2[j - 2] + 1);
+                }
+                cur[j] = v;
+                rowMin = Math.min(rowMin, v);
+            }
+            if (rowMin > max) return max + 1;
+            int[] t = prev2; prev2 = prev; prev = cur; cur = t;
+        }
+        return Math.min(prev[m], max + 1);
+    }
+
+    // ---------------- Text ----------------
+    /** Lower-case words of s (runs of letters and digits). */
+    static String[] words(String s) {
+        List<String> out = new ArrayList<>(4);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i <= s.length(); i++) {
+            char c = i < s.length() ? s.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            } else if (sb.length() > 0) {
+                out.add(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        return out.toArray(new String[0]);
+    }
+
+    // 3-char windows of "$w$", packed 16 bits per char
+    private static long[] trigramsOf(String w) {
+        String p = "$" + w + "$";
+        long[] out = new long[Math.max(0, p.length() - 2)];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = ((long) p.charAt(i) << 32) | ((long) p.charAt(i + 1) << 16) | p.charAt(i + 2);
+        }
+        return out;
+    }
+}
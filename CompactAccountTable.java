@@ -0,0 +1,466 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The whole account book in a compact, mostly off-heap table (compact mode,
+ * -Dbank.accounts.compact=true; see AccountCache).
+ *
+ * A BankAccount object costs well over 500 bytes of heap: the object, seven
+ * Strings and their byte arrays. Here each account is one fixed 40-byte row
+ * in a direct ByteBuffer:
+ *   long  account number, long BVN  (digits packed into a long, see packId)
+ *   long  balance (kobo)
+ *   long  offset of the account's text in the arena
+ *   int   length of that text
+ *   byte  account type (index into BinaryAccountStore.TYPES, 0xFF = in the text)
+ *   byte  flags (deleted, account number or BVN kept as text)
+ * and name, email, phone and PIN hash go, length-prefixed UTF-8, into an
+ * off-heap arena of 16 MB direct chunks. The only heap structures are two
+ * open-addressing hash indexes (account number and BVN -> row) held as
+ * long[] (32-bit hash and row number per entry), about 32 bytes per account
+ * in all.
+ *
+ * Rows are never moved, so a row number is the slot AccountCache uses.
+ * Deleted rows stay flagged until the process restarts, and replaced text
+ * (a PIN change) stays in the arena; both are dropped because a restart
+ * loads only live accounts. Snapshots stream the rows through the
+ * configured AccountStore, so the on-disk formats are unchanged.
+ *
+ * Reads take a shared lock, changes an exclusive one.
+ */
+final class CompactAccountTable implements AccountCache.Backing {
+
+    private static final int ROW = 40;
+    private static final int ACC = 0, BVN = 8, BALANCE = 16, TEXT = 24, TEXT_LEN = 32, TYPE = 36, FLAGS = 37;
+    private static final byte DELETED = 1, ACC_TEXT = 2, BVN_TEXT = 4;
+    private static final int TYPE_TEXT = 0xFF;
+    private static final int CHUNK = 1 << 24;
+
+    private final AccountStore store;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private ByteBuffer rows = ByteBuffer.allocateDirect(1024 * ROW);
+    private int rowCount;
+    private int liveCount;
+    private final List<ByteBuffer> arena = new ArrayList<>();
+    private int arenaPos = CHUNK; // forces the first chunk
+    private final HashIndex byAccount = new HashIndex();
+    private final HashIndex byBvn = new HashIndex();
+
+    CompactAccountTable(AccountStore store) {
+        this.store = store;
+    }
+
+    // ---------------- AccountCache.Backing ----------------
+    @Override
+    public void load(BinaryAccountStore.RecordFile.Scan sink) throws IOException {
+        lock.writeLock().lock();
+        try {
+            rowCount = 0;
+            liveCount = 0;
+            arena.clear();
+            arenaPos = CHUNK;
+            byAccount.clear();
+            byBvn.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        IOException[] failed = new IOException[1];
+        store.load(a -> {
+            if (failed[0] != null) return;
+            try {
+                sink.record(insert(a), a);
+            } catch (IOException e) {
+                failed[0] = e;
+            }
+        });
+        if (failed[0] != null) throw failed[0];
+    }
+
+    @Override
+    public long slotOf(String accNo) {
+        lock.readLock().lock();
+        try {
+            return byAccount.find(accNo, this::accountMatches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String accountOfBvn(String bvn) {
+        lock.readLock().lock();
+        try {
+            int row = byBvn.find(bvn, this::bvnMatches);
+            return row < 0 ? null : id(row, ACC);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public AdvancedBankSystem3.BankAccount read(long slot) {
+        lock.readLock().lock();
+        try {
+            return slot < 0 || slot >= rowCount || deleted((int) slot) ? null : account((int) slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long insert(AdvancedBankSystem3.BankAccount a) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (rowCount == Integer.MAX_VALUE / ROW) throw new IOException("account table is full");
+            if ((rowCount + 1) * ROW > rows.capacity()) {
+                ByteBuffer bigger = ByteBuffer.allocateDirect((int) Math.min((long) rows.capacity() * 2, (long) Integer.MAX_VALUE / ROW * ROW));
+                bigger.put(0, rows, 0, rowCount * ROW);
+                rows = bigger;
+            }
+            int row = rowCount;
+            writeRow(row, a); // may refuse the account; the row is only counted once written
+            rowCount++;
+            byAccount.add(a.accountNumber.hashCode(), row);
+            byBvn.add(a.bvn.hashCode(), row);
+            liveCount++;
+            return row;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void update(long slot, AdvancedBankSystem3.BankAccount a) throws IOException {
+        lock.writeLock().lock();
+        try {
+            int row = (int) slot;
+            if (deleted(row)) return;
+            if (a.closed) {
+                rows.put(row * ROW + FLAGS, (byte) (rows.get(row * ROW + FLAGS) | DELETED));
+                return;
+            }
+            rows.putLong(row * ROW + BALANCE, a.balance);
+            // text rarely changes (PIN); only then is a new copy appended
+            byte[] text = text(a, rows.get(row * ROW + FLAGS), rows.get(row * ROW + TYPE) & 0xFF);
+            if (!textEquals(row, text)) putText(row, text);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void unindex(AdvancedBankSystem3.BankAccount a) {
+        lock.writeLock().lock();
+        try {
+            int row = byAccount.find(a.accountNumber, this::accountMatches);
+            if (row < 0) return;
+            byAccount.remove(a.accountNumber.hashCode(), row);
+            byBvn.remove(a.bvn.hashCode(), row);
+            liveCount--;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void scan(BinaryAccountStore.RecordFile.Scan sink) throws IOException {
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < rowCount; row++) {
+                if (!deleted(row)) sink.record(row, account(row));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> accountNumbers(int from, int size) {
+        lock.readLock().lock();
+        try {
+            List<String> out = new ArrayList<>(Math.min(size, 1024));
+            int pos = 0;
+            for (int row = 0; row < rowCount && out.size() < size; row++) {
+                if (deleted(row)) continue;
+                if (pos++ >= from) out.add(id(row, ACC));
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Writes the live rows through the store as a full snapshot, one account object at a time. */
+    @Override
+    public void flush() throws IOException {
+        int upTo, live;
+        lock.readLock().lock();
+        try {
+            upTo = rowCount; // rows added while saving belong to the next snapshot
+            live = 0;
+            for (int row = 0; row < upTo; row++) if (!deleted(row)) live++;
+        } finally {
+            lock.readLock().unlock();
+        }
+        int size = live;
+        store.save(new AbstractCollection<>() {
+            @Override
+            public int size() { return size; }
+
+            @Override
+            public Iterator<AdvancedBankSystem3.BankAccount> iterator() {
+                return new Iterator<>() {
+                    int row = nextLive(0);
+
+                    @Override
+                    public boolean hasNext() { return row < upTo; }
+
+                    @Override
+                    public AdvancedBankSystem3.BankAccount next() {
+                        if (row >= upTo) throw new NoSuchElementException();
+                        AdvancedBankSystem3.BankAccount a = read(row);
+                        row = nextLive(row + 1);
+                        return a;
+                    }
+
+                    private int nextLive(int from) {
+                        lock.readLock().lock();
+                        try {
+                            while (from < upTo && deleted(from)) from++;
+                            return from;
+                        } finally {
+                            lock.readLock().unlock();
+                        }
+                    }
+                };
+            }
+        });
+    }
+
+    // ---------------- Rows ----------------
+    private boolean deleted(int row) {
+        return (rows.get(row * ROW + FLAGS) & DELETED) != 0;
+    }
+
+    private void writeRow(int row, AdvancedBankSystem3.BankAccount a) throws IOException {
+        int base = row * ROW;
+        long acc = packId(a.accountNumber), bvn = packId(a.bvn);
+        int type = BinaryAccountStore.typeCode(a.accountType);
+        byte flags = (byte) ((acc < 0 ? ACC_TEXT : 0) | (bvn < 0 ? BVN_TEXT : 0));
+        rows.putLong(base + ACC, acc);
+        rows.putLong(base + BVN, bvn);
+        rows.putLong(base + BALANCE, a.balance);
+        rows.put(base + TYPE, (byte) (type < 0 ? TYPE_TEXT : type));
+        rows.put(base + FLAGS, flags);
+        putText(row, text(a, flags, type < 0 ? TYPE_TEXT : type));
+    }
+
+    private AdvancedBankSystem3.BankAccount account(int row) {
+        int base = row * ROW;
+        int type = rows.get(base + TYPE) & 0xFF;
+        String[] t = texts(row);
+        // text order: name, email, phone, pin, [account number], [bvn], [type]
+        int extra = 4;
+        byte flags = rows.get(base + FLAGS);
+        String acc = (flags & ACC_TEXT) != 0 ? t[extra++] : unpackId(rows.getLong(base + ACC));
+        String bvn = (flags & BVN_TEXT) != 0 ? t[extra++] : unpackId(rows.getLong(base + BVN));
+        String accType = type == TYPE_TEXT ? t[extra] : BinaryAccountStore.TYPES[type];
+        return new AdvancedBankSystem3.BankAccount(t[0], t[1], t[2], bvn, acc, accType, t[3], rows.getLong(base + BALANCE));
+    }
+
+    // account number (field ACC) or BVN (field BVN) of a row, from the long or the text
+    private String id(int row, int field) {
+        int base = row * ROW;
+        byte flags = rows.get(base + FLAGS);
+        if ((flags & (field == ACC ? ACC_TEXT : BVN_TEXT)) == 0) return unpackId(rows.getLong(base + field));
+        String[] t = texts(row);
+        return t[field == ACC || (flags & ACC_TEXT) == 0 ? 4 : 5];
+    }
+
+    private boolean accountMatches(int row, String accNo) {
+        long packed = packId(accNo);
+        byte flags = rows.get(row * ROW + FLAGS);
+        if ((flags & ACC_TEXT) == 0) return packed >= 0 && rows.getLong(row * ROW + ACC) == packed;
+        return packed < 0 && id(row, ACC).equals(accNo);
+    }
+
+    private boolean bvnMatches(int row, String bvn) {
+        long packed = packId(bvn);
+        byte flags = rows.get(row * ROW + FLAGS);
+        if ((flags & BVN_TEXT) == 0) return packed >= 0 && rows.getLong(row * ROW + BVN) == packed;
+        return packed < 0 && id(row, BVN).equals(bvn);
+    }
+
+    /**
+     * Up to 17 digits packed into a long: the value in the low 57 bits and
+     * the digit count above, so leading zeros survive. -1 if s does not fit.
+     */
+    static long packId(String s) {
+        int n = s.length();
+        if (n == 0 || n > 17) return -1;
+        long v = 0;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return ((long) n << 57) | v;
+    }
+
+    static String unpackId(long packed) {
+        int n = (int) (packed >>> 57);
+        long v = packed & ((1L << 57) - 1);
+        char[] d = new char[n];
+        for (int i = n - 1; i >= 0; i--) {
+            d[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        return new String(d);
+    }
+
+    // ---------------- Text arena ----------------
+    // length-prefixed (unsigned short) UTF-8 fields
+    private static byte[] text(AdvancedBankSystem3.BankAccount a, byte flags, int type) throws IOException {
+        List<String> fields = new ArrayList<>(7);
+        fields.add(a.name);
+        fields.add(a.email);
+        fields.add(a.phone);
+        fields.add(a.pin);
+        if ((flags & ACC_TEXT) != 0) fields.add(a.accountNumber);
+        if ((flags & BVN_TEXT) != 0) fields.add(a.bvn);
+        if (type == TYPE_TEXT) fields.add(a.accountType);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(160);
+        for (String f : fields) {
+            byte[] b = f.getBytes(StandardCharsets.UTF_8);
+            if (b.length > 0xFFFF) throw new IOException("account " + a.accountNumber + ": field too long");
+            out.write(b.length >>> 8);
+            out.write(b.length);
+            out.write(b, 0, b.length);
+        }
+        return out.toByteArray();
+    }
+
+    private void putText(int row, byte[] text) {
+        if (arenaPos + text.length > CHUNK) {
+            arena.add(ByteBuffer.allocateDirect(CHUNK));
+            arenaPos = 0;
+        }
+        int chunk = arena.size() - 1;
+        arena.get(chunk).put(arenaPos, text);
+        rows.putLong(row * ROW + TEXT, (long) chunk * CHUNK + arenaPos);
+        rows.putInt(row * ROW + TEXT_LEN, text.length);
+        arenaPos += text.length;
+    }
+
+    private byte[] textBytes(int row) {
+        long off = rows.getLong(row * ROW + TEXT);
+        byte[] b = new byte[rows.getInt(row * ROW + TEXT_LEN)];
+        arena.get((int) (off / CHUNK)).get((int) (off % CHUNK), b);
+        return b;
+    }
+
+    private boolean textEquals(int row, byte[] text) {
+        return rows.getInt(row * ROW + TEXT_LEN) == text.length && Arrays.equals(textBytes(row), text);
+    }
+
+    private String[] texts(int row) {
+        byte[] b = textBytes(row);
+        List<String> out = new ArrayList<>(7);
+        for (int p = 0; p < b.length; ) {
+            int len = ((b[p] & 0xFF) << 8) | (b[p + 1] & 0xFF);
+            out.add(new String(b, p + 2, len, StandardCharsets.UTF_8));
+            p += 2 + len;
+        }
+        return out.toArray(new String[0]);
+    }
+
+    // ---------------- Hash index ----------------
+    private interface RowMatch {
+        boolean test(int row, String key);
+    }
+
+    /**
+     * Open addressing with linear probing over a long[]: high 32 bits the
+     * key's hash, low 32 bits row + 1 (0 = empty, all ones = removed). Kept
+     * at most half full, counting removed entries, so probes stay short.
+     */
+    private static final class HashIndex {
+        private static final long REMOVED = 0xFFFFFFFFL;
+        private long[] table = new long[1024];
+        private int used; // entries plus removed markers
+
+        void clear() {
+            table = new long[1024];
+            used = 0;
+        }
+
+        int find(String key, RowMatch match) {
+            int h = key.hashCode();
+            int mask = table.length - 1;
+            for (int i = mix(h) & mask; ; i = (i + 1) & mask) {
+                long e = table[i];
+                if (e == 0) return -1;
+                int row = (int) e - 1;
+                if ((e & REMOVED) != REMOVED && (int) (e >>> 32) == h && match.test(row, key)) return row;
+            }
+        }
+
+        void add(int h, int row) {
+            if ((used + 1) * 2 > table.length) resize();
+            int mask = table.length - 1;
+            int i = mix(h) & mask;
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = ((long) h << 32) | (row + 1L);
+            used++;
+        }
+
+        void remove(int h, int row) {
+            int mask = table.length - 1;
+            long want = ((long) h << 32) | (row + 1L);
+            for (int i = mix(h) & mask; table[i] != 0; i = (i + 1) & mask) {
+                if (table[i] == want) {
+                    table[i] = ((long) h << 32) | REMOVED;
+                    return;
+                }
+            }
+        }
+
+        // grows (or just drops removed markers) and reinserts live entries
+        private void resize() {
+            long[] old = table;
+            int liveEntries = 0;
+            for (long e : old) if (e != 0 && (e & REMOVED) != REMOVED) liveEntries++;
+            int size = old.length;
+            while ((liveEntries + 1) * 4 > size) size *= 2; // leaves room before the next resize
+            table = new long[size];
+            used = 0;
+            int mask = size - 1;
+            for (long e : old) {
+                if (e == 0 || (e & REMOVED) == REMOVED) continue;
+                int i = mix((int) (e >>> 32)) & mask;
+                while (table[i] != 0) i = (i + 1) & mask;
+                table[i] = e;
+                used++;
+            }
+        }
+
+        private static int mix(int h) {
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            return h ^ (h >>> 13);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * PIN storage and checking for the banking programs.
+ *
+ * PINs are stored as salted PBKDF2-HMAC-SHA256 hashes:
+ *   pbkdf2$<iterations>$<salt>$<hash>   (salt and hash Base64, no padding)
+ * The iteration count is the cost knob (bank.pin.iterations, default 100000);
+ * raising it only affects new hashes, and older ones are upgraded the next
+ * time their owner logs in. Plain-text PINs from older files are still
+ * accepted and upgraded the same way.
+ *
+ * A 4-digit PIN has only 10000 values, so the real defence against guessing
+ * is the attempt counter: after bank.pin.maxAttempts failures in a row
+ * (default 5) an account is locked for bank.pin.lockSeconds (default 300),
+ * and while it is locked a check is refused before any hashing happens. The
+ * counter is a lock-free AtomicInteger per account.
+ *
+ * Successful checks are remembered in a bounded LRU cache (bank.pin.cacheSize,
+ * default 10000) as a keyed HMAC of the PIN tied to the exact stored hash, so
+ * an active session re-entering its PIN costs one HMAC instead of the full
+ * PBKDF2 work. Changing the PIN changes the stored hash, which makes the old
+ * entry useless; forget() drops it right away.
+ */
+final class Credentials {
+
+    enum Check { OK, WRONG_PIN, LOCKED }
+
+    private static final String PREFIX = "pbkdf2$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    /** Failures in a row for one account, and until when it is locked. */
+    private static final class Attempts {
+        final AtomicInteger failures = new AtomicInteger();
+        volatile long lockedUntil; // System.currentTimeMillis()
+    }
+
+    /** A PIN that passed the full check against a given stored hash. */
+    private static final class Verified {
+        final String stored;
+        final byte[] pinMac;
+
+        Verified(String stored, byte[] pinMac) {
+            this.stored = stored;
+            this.pinMac = pinMac;
+        }
+    }
+
+    private final int iterations;
+    private final int maxAttempts;
+    private final long lockMillis;
+    private final Map<String, Attempts> attempts = new ConcurrentHashMap<>();
+    private final Map<String, Verified> cache; // guarded by itself
+    private final SecureRandom random = new SecureRandom();
+    private final byte[] cacheKey = new byte[32]; // per process, never stored
+
+    Credentials(int iterations, int maxAttempts, long lockMillis, int cacheSize) {
+        this.iterations = Math.max(1, iterations);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.lockMillis = lockMillis;
+        int capacity = Math.max(0, cacheSize);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Verified> eldest) {
+                return size() > capacity;
+            }
+        };
+        random.nextBytes(cacheKey);
+    }
+
+    static Credentials fromSystemProperties() {
+        return new Credentials(Integer.getInteger("bank.pin.iterations", 100_000),
+                Integer.getInteger("bank.pin.maxAttempts", 5),
+                Long.getLong("bank.pin.lockSeconds", 300L) * 1000,
+                Integer.getInteger("bank.pin.cacheSize", 10_000));
+    }
+
+    /** Salted hash of pin in the stored format. */
+    String hash(String pin) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(pbkdf2(pin, salt, iterations));
+    }
+
+    /**
+     * Checks pin for account against its stored value (hash or legacy plain
+     * text). Locked accounts are refused without hashing; a wrong PIN counts
+     * towards the lock.
+     */
+    Check verify(String account, String stored, String pin) {
+        Attempts a = attempts.get(account);
+        long now = System.currentTimeMillis();
+        if (a != null && a.lockedUntil > now) return Check.LOCKED;
+
+        byte[] mac = pinMac(pin);
+        Verified v;
+        synchronized (cache) {
+            v = cache.get(account);
+        }
+        boolean ok;
+        if (v != null && v.stored.equals(stored) && MessageDigest.isEqual(v.pinMac, mac)) {
+            ok = true;
+        } else {
+            ok = matches(stored, pin);
+            if (ok) {
+                synchronized (cache) {
+                    cache.put(account, new Verified(stored, mac));
+                }
+            }
+        }
+
+        if (ok) {
+            if (a != null) attempts.remove(account);
+            return Check.OK;
+        }
+        if (a == null) a = attempts.computeIfAbsent(account, k -> new Attempts());
+        if (a.failures.incrementAndGet() >= maxAttempts) {
+            a.lockedUntil = now + lockMillis;
+            a.failures.set(0);
+        }
+        return Check.WRONG_PIN;
+    }
+
+    /** Seconds left on an account's lock, 0 if it is not locked. */
+    long lockedForSeconds(String account) {
+        Attempts a = attempts.get(account);
+        long left = a == null ? 0 : a.lockedUntil - System.currentTimeMillis();
+        return left <= 0 ? 0 : (left + 999) / 1000;
+    }
+
+    /** True if stored should be replaced by hash(pin) after a successful check (plain text or lower cost). */
+    boolean needsRehash(String stored) {
+        if (!stored.startsWith(PREFIX)) return true;
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return end < 0 || Integer.parseInt(stored.substring(PREFIX.length(), end)) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /** Drops anything remembered about account (PIN changed or reset, account deleted). */
+    void forget(String account) {
+        synchronized (cache) {
+            cache.remove(account);
+        }
+        attempts.remove(account);
+    }
+
+    // ---------------- Hashing ----------------
+    private static boolean matches(String stored, String pin) {
+        if (!stored.startsWith(PREFIX)) {
+            // legacy plain text
+            return MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8), pin.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] p = stored.split("\\$");
+        if (p.length != 4) return false;
+        try {
+            int iter = Integer.parseInt(p[1]);
+            byte[] salt = Base64.getDecoder().decode(p[2]);
+            byte[] expected = Base64.getDecoder().decode(p[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(pin, salt, iter));
+        } catch (IllegalArgumentException e) {
+            return false; // damaged hash never matches
+        }
+    }
+
+    private static byte[] pbkdf2(String pin, byte[] salt, int iterations) {
+        KeySpec spec = new PBEKeySpec(pin.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2WithHmacSHA256 unavailable", e);
+        }
+    }
+
+    private byte[] pinMac(String pin) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(cacheKey, "HmacSHA256"));
+            return mac.doFinal(pin.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+}
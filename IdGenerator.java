@@ -0,0 +1,91 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Mints unique numeric IDs (account numbers, BVNs) for the banking programs.
+ *
+ * An ID is a fixed prefix, random digits and a final Luhn check digit, so a
+ * mistyped digit or two swapped neighbours are caught by isValid() before
+ * any lookup. Digits come from ThreadLocalRandom: no generator is created
+ * per call and threads never contend on a shared one.
+ *
+ * Uniqueness: a candidate is rejected if inUse says it already belongs to an
+ * account (the caller's index), and it is also reserved here until release()
+ * is called once the account has been indexed, so two threads creating
+ * accounts at the same moment can never be handed the same ID. Collisions
+ * are simply retried; with 9 or more random digits they are rare until the
+ * book holds hundreds of millions of accounts.
+ */
+final class IdGenerator {
+
+    private final String prefix;
+    private final int randomDigits;
+    private final long bound; // 10^randomDigits
+    private final Predicate<String> inUse;
+    private final Set<String> reserved = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param prefix       fixed leading digits (may be empty)
+     * @param totalDigits  length of the ID including prefix and check digit
+     * @param inUse        true if an ID already belongs to an account
+     */
+    IdGenerator(String prefix, int totalDigits, Predicate<String> inUse) {
+        this.prefix = prefix;
+        this.randomDigits = totalDigits - prefix.length() - 1;
+        if (randomDigits < 1 || randomDigits > 18) throw new IllegalArgumentException("bad ID length " + totalDigits);
+        long b = 1;
+        for (int i = 0; i < randomDigits; i++) b *= 10;
+        this.bound = b;
+        this.inUse = inUse;
+    }
+
+    /** A new ID, unused and not handed out before; call release(id) once it is indexed. */
+    String next() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int len = prefix.length() + randomDigits + 1;
+        char[] d = new char[len];
+        prefix.getChars(0, prefix.length(), d, 0);
+        while (true) {
+            long v = rnd.nextLong(bound);
+            for (int i = len - 2; i >= prefix.length(); i--) {
+                d[i] = (char) ('0' + v % 10);
+                v /= 10;
+            }
+            d[len - 1] = (char) ('0' + checkDigit(d, len - 1));
+            String id = new String(d);
+            if (!inUse.test(id) && reserved.add(id)) return id;
+        }
+    }
+
+    /** Ends the reservation of id (it is now in the index, or was never used). */
+    void release(String id) {
+        reserved.remove(id);
+    }
+
+    /** True if id is all digits and its last digit is the Luhn check digit of the rest. */
+    static boolean isValid(String id) {
+        int len = id.length();
+        if (len < 2) return false;
+        char[] d = id.toCharArray();
+        for (char c : d) if (c < '0' || c > '9') return false;
+        return d[len - 1] - '0' == checkDigit(d, len - 1);
+    }
+
+    // Luhn: double every second digit from the right (starting next to the check digit)
+    private static int checkDigit(char[] d, int n) {
+        int sum = 0;
+        boolean dbl = true;
+        for (int i = n - 1; i >= 0; i--) {
+            int x = d[i] - '0';
+            if (dbl) {
+                x *= 2;
+                if (x > 9) x -= 9;
+            }
+            sum += x;
+            dbl = !dbl;
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,272 @@
+import java.io.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Month-end interest for AdvancedBankSystem3, spread over a ForkJoinPool.
+ *
+ * Accounts are sorted by account number and cut into chunks. Each chunk is
+ * processed by one worker, an account at a time: interest is posted through
+ * the Ledger and, while the account is still locked, its new balance, its
+ * INTEREST log line and an I record saying the chunk is done from its first
+ * account up to this one are journaled as one group (see AccountJournal).
+ * The journal therefore has every credit in the order the balances changed,
+ * each with the note that it was made; if the journal write fails, the
+ * credit is taken back before the lock is released. The worker waits for
+ * the chunk's groups to be durable once, at the end of the chunk.
+ *
+ * commitGroup hands the I records to the checkpoint, which keeps the
+ * furthest account per chunk and writes and syncs it before the journal is
+ * ever reset; after a crash, startup copies the I records it replays into
+ * the checkpoint.
+ *
+ * If the run is interrupted, the checkpoint survives and the next run with
+ * the same rate skips every account inside a completed range, so no account
+ * gets interest twice. The checkpoint is deleted once the run has finished
+ * and a snapshot has been written.
+ *
+ * Settings: bank.interest.threads (default: number of CPUs),
+ * bank.interest.chunk (accounts per chunk, default 4096).
+ */
+class InterestRun {
+
+    static final String CHECKPOINT_FILE = "interest_run.chk";
+
+    private final double rate;
+    private final int chunkSize;
+    private final int threads;
+    private final TreeMap<String, String> doneRanges = new TreeMap<>(); // firstAccNo -> lastAccNo
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong credited = new AtomicLong();
+
+    // checkpoint of the run in progress; chunk progress arrives from commitGroup under the journal lock
+    private static FileOutputStream checkpointFile;
+    private static Writer checkpoint;
+    private static final Map<String, String> unwritten = new LinkedHashMap<>(); // chunk's first accNo -> furthest done
+
+    InterestRun(double rate) {
+        this.rate = rate;
+        this.chunkSize = Math.max(1, Integer.getInteger("bank.interest.chunk", 4096));
+        this.threads = Math.max(1, Integer.getInteger("bank.interest.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Rate of an interrupted run left in the checkpoint file, or NaN if there is none. */
+    static double pendingRate() {
+        File f = new File(CHECKPOINT_FILE);
+        if (!f.exists()) return Double.NaN;
+        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
+            String header = br.readLine();
+            if (header == null || !header.startsWith("rate=")) return Double.NaN;
+            return Double.parseDouble(header.substring(5));
+        } catch (IOException | NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /** Applies interest to every SAVINGS account not already covered by the checkpoint. */
+    void run() throws IOException {
+        loadCheckpoint();
+        List<AdvancedBankSystem3.BankAccount> savings = new ArrayList<>();
+        for (AdvancedBankSystem3.BankAccount a : AdvancedBankSystem3.accountsSnapshot()) {
+            if ("SAVINGS".equalsIgnoreCase(a.accountType) && !alreadyDone(a.accountNumber)) savings.add(a);
+        }
+        savings.sort(Comparator.comparing(a -> a.accountNumber));
+        int chunks = (savings.size() + chunkSize - 1) / chunkSize;
+        if (!doneRanges.isEmpty()) {
+            System.out.println("Resuming interrupted run: " + savings.size() + " accounts left.");
+        }
+
+        long start = System.nanoTime();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "interest-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        int total = savings.size();
+        progress.scheduleAtFixedRate(() -> report(total, start), 1, 1, TimeUnit.SECONDS);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Chunks(savings, 0, chunks));
+        } finally {
+            pool.shutdown();
+            progress.shutdownNow();
+            closeCheckpoint();
+        }
+        report(total, start);
+
+        // balances are in the journal; fold them into a snapshot and drop the checkpoint
+        AdvancedBankSystem3.saveAccounts();
+        new File(CHECKPOINT_FILE).delete();
+    }
+
+    long creditedKobo() { return credited.get(); }
+
+    private void report(int total, long startNanos) {
+        long done = processed.get();
+        double secs = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        System.out.printf("Interest: %d/%d accounts (%.0f%%), %.0f accounts/s%n",
+                done, total, total == 0 ? 100.0 : done * 100.0 / total, done / secs);
+    }
+
+    private void loadCheckpoint() throws IOException {
+        File f = new File(CHECKPOINT_FILE);
+        if (f.exists() && pendingRate() == rate) {
+            try (BufferedReader br = new BufferedReader(new FileReader(f))) {
+                br.readLine(); // header
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] p = line.split(",", -1);
+                    if (p.length == 2) doneRanges.merge(p[0], p[1], InterestRun::later); // a torn last line is simply redone
+                }
+            }
+            openCheckpoint(f, true);
+        } else {
+            openCheckpoint(f, false);
+            synchronized (InterestRun.class) {
+                checkpoint.write("rate=" + rate + System.lineSeparator());
+                checkpoint.flush();
+                checkpointFile.getFD().sync();
+            }
+        }
+    }
+
+    private static synchronized void openCheckpoint(File f, boolean append) throws IOException {
+        checkpointFile = new FileOutputStream(f, append);
+        checkpoint = new BufferedWriter(new OutputStreamWriter(checkpointFile));
+    }
+
+    private static String later(String a, String b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private static synchronized void closeCheckpoint() {
+        if (checkpoint == null) return;
+        try {
+            syncCheckpoint();
+            checkpoint.close();
+        } catch (IOException e) {
+            System.out.println("Error closing interest checkpoint: " + e.getMessage());
+        }
+        checkpoint = null;
+        checkpointFile = null;
+        unwritten.clear();
+    }
+
+    /** Journal record marking a chunk's accounts first..last as credited; journaled with last's credit. */
+    static String chunkRecord(String first, String last) {
+        return "I," + first + "," + last;
+    }
+
+    /** Notes a journaled I record ("first,last") for the open checkpoint; called by commitGroup. */
+    static synchronized void chunkCommitted(String range) {
+        if (checkpoint == null) return;
+        int comma = range.indexOf(',');
+        unwritten.merge(range.substring(0, comma), range.substring(comma + 1), InterestRun::later);
+    }
+
+    /** Writes the progress noted so far and makes the checkpoint durable; called before the journal is reset. */
+    static synchronized void syncCheckpoint() throws IOException {
+        if (checkpoint == null) return;
+        writeRanges(checkpoint, unwritten);
+        unwritten.clear();
+        checkpointFile.getFD().sync();
+    }
+
+    private static void writeRanges(Writer w, Map<String, String> ranges) throws IOException {
+        for (Map.Entry<String, String> r : ranges.entrySet()) {
+            w.write(r.getKey() + "," + r.getValue() + System.lineSeparator());
+        }
+        w.flush();
+    }
+
+    /** Startup: copies the chunk ranges replayed from the journal into the checkpoint before the journal is folded away. */
+    static void recoverChunks(List<String> ranges) throws IOException {
+        File f = new File(CHECKPOINT_FILE);
+        if (ranges.isEmpty() || !f.exists()) return;
+        Map<String, String> furthest = new LinkedHashMap<>();
+        for (String r : ranges) {
+            int comma = r.indexOf(',');
+            furthest.merge(r.substring(0, comma), r.substring(comma + 1), InterestRun::later);
+        }
+        try (FileOutputStream out = new FileOutputStream(f, true)) {
+            writeRanges(new OutputStreamWriter(out), furthest);
+            out.getFD().sync();
+        }
+    }
+
+    private boolean alreadyDone(String accNo) {
+        Map.Entry<String, String> r = doneRanges.floorEntry(accNo);
+        return r != null && accNo.compareTo(r.getValue()) <= 0;
+    }
+
+    private void processChunk(List<AdvancedBankSystem3.BankAccount> chunk) throws IOException {
+        String ts = LocalDateTime.now().format(AdvancedBankSystem3.TF);
+        String note = "Interest applied: " + rate + "%";
+        String first = chunk.get(0).accountNumber;
+        long[] lastSeq = { -1 };
+
+        for (AdvancedBankSystem3.BankAccount a : chunk) {
+            // For simplicity: apply rate as a single-period percentage (not compounding)
+            AdvancedBankSystem3.ledger.applyRate(a, rate, done -> {
+                List<String> records = List.of(AdvancedBankSystem3.accountRecord(a),
+                        AdvancedBankSystem3.logRecord(a.accountNumber,
+                                AdvancedBankSystem3.transactionLine(ts, "INTEREST", done.amount, done.before, done.after, note)),
+                        chunkRecord(first, a.accountNumber));
+                try {
+                    lastSeq[0] = AdvancedBankSystem3.writeGroup(records); // hands the I record to the checkpoint
+                } catch (AdvancedBankSystem3.UnconfirmedException e) {
+                    credited.addAndGet(done.amount); // on file: the credit stands
+                    throw new UncheckedIOException(e);
+                } catch (IOException e) {
+                    // not on file, and still locked: take the credit back before anyone sees it
+                    a.balance = done.before;
+                    AdvancedBankSystem3.stats.balanceChanged(a.accountType, -done.amount);
+                    throw new UncheckedIOException(e);
+                }
+                credited.addAndGet(done.amount);
+            });
+            processed.incrementAndGet();
+        }
+
+        if (lastSeq[0] >= 0) {
+            try {
+                AdvancedBankSystem3.journal.awaitDurable(lastSeq[0]);
+            } catch (IOException e) {
+                throw new AdvancedBankSystem3.UnconfirmedException(e);
+            }
+        }
+    }
+
+    private class Chunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<AdvancedBankSystem3.BankAccount> accounts;
+        private final int from, to; // chunk indexes, to exclusive
+
+        Chunks(List<AdvancedBankSystem3.BankAccount> accounts, int from, int to) {
+            this.accounts = accounts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Chunks(accounts, from, mid), new Chunks(accounts, mid, to));
+                return;
+            }
+            if (from >= to) return;
+            int lo = from * chunkSize;
+            int hi = Math.min(lo + chunkSize, accounts.size());
+            try {
+                processChunk(accounts.subList(lo, hi));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.*;
+
+/**
+ * Just enough JSON for flat request/record objects: {"key": "text" or number, ...}.
+ * Used by the batch processor and the HTTP server; nested objects and arrays
+ * are not supported on input. Values come back as their text, so amounts can
+ * go straight to Money.parse without passing through a double.
+ */
+final class Json {
+
+    private Json() { }
+
+    /** Parses one flat object into key -> value text (null for JSON null); null if it is not one. */
+    static Map<String, String> parseObject(String s) {
+        Map<String, String> out = new LinkedHashMap<>();
+        int[] pos = { 0 };
+        skipSpaces(s, pos);
+        if (pos[0] >= s.length() || s.charAt(pos[0]) != '{') return null;
+        pos[0]++;
+        skipSpaces(s, pos);
+        if (pos[0] < s.length() && s.charAt(pos[0]) == '}') return out;
+        while (pos[0] < s.length()) {
+            String key = string(s, pos);
+            if (key == null) return null;
+            skipSpaces(s, pos);
+            if (pos[0] >= s.length() || s.charAt(pos[0]) != ':') return null;
+            pos[0]++;
+            skipSpaces(s, pos);
+            boolean quoted = pos[0] < s.length() && s.charAt(pos[0]) == '"';
+            String value = quoted ? string(s, pos) : bare(s, pos);
+            if (quoted && value == null) return null;
+            if (!quoted && value != null && value.isEmpty()) return null;
+            out.put(key, value);
+            skipSpaces(s, pos);
+            if (pos[0] >= s.length()) return null;
+            char c = s.charAt(pos[0]++);
+            if (c == '}') return out;
+            if (c != ',') return null;
+            skipSpaces(s, pos);
+        }
+        return null;
+    }
+
+    /** Appends value as a quoted JSON string. */
+    static StringBuilder quote(StringBuilder sb, String value) {
+        if (value == null) return sb.append("null");
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"');
+    }
+
+    private static String string(String s, int[] pos) {
+        if (pos[0] >= s.length() || s.charAt(pos[0]) != '"') return null;
+        StringBuilder sb = new StringBuilder();
+        for (int i = pos[0] + 1; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                pos[0] = i + 1;
+                return sb.toString();
+            }
+            if (c == '\\' && i + 1 < s.length()) {
+                char e = s.charAt(++i);
+                switch (e) {
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    case 'r' -> sb.append('\r');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        if (i + 4 >= s.length()) return null;
+                        try {
+                            sb.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+                        } catch (NumberFormatException ex) {
+                            return null;
+                        }
+                        i += 4;
+                    }
+                    default -> sb.append(e); // \" \\ \/
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return null;
+    }
+
+    // number, true or false as written; null for JSON null; "" if nothing is there
+    private static String bare(String s, int[] pos) {
+        int start = pos[0];
+        int i = start;
+        while (i < s.length() && s.charAt(i) != ',' && s.charAt(i) != '}') i++;
+        pos[0] = i;
+        String v = s.substring(start, i).trim();
+        return v.equals("null") ? null : v;
+    }
+
+    private static void skipSpaces(String s, int[] pos) {
+        while (pos[0] < s.length() && Character.isWhitespace(s.charAt(pos[0]))) pos[0]++;
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Balance-changing operations for AdvancedBankSystem3, safe to call from many
+ * threads (tellers, sessions) at once.
+ *
+ * Accounts are guarded by striped locks: the account number is hashed onto a
+ * fixed array of locks, so unrelated accounts rarely share a lock and memory
+ * stays constant however many accounts there are. A transfer takes both
+ * stripes in ascending stripe order, so two opposite transfers can never
+ * deadlock. The insufficient-funds check and the balance update happen under
+ * the same lock, so a balance can never go negative. Accounts deleted while
+ * a posting was waiting for the lock are rejected (ACCOUNT_CLOSED).
+ *
+ * The Commit callback runs while the locks are still held; it is where the
+ * caller journals the new state and logs the transaction, so those records
+ * are written in the same order the balances changed. Every successful
+ * posting is also reported to BankStats so the dashboard totals stay current.
+ */
+class Ledger {
+
+    enum Status { OK, INVALID_AMOUNT, INSUFFICIENT_FUNDS, ACCOUNT_CLOSED }
+
+    /** Outcome of one posting, amounts in kobo. For transfers "other" is the receiver. */
+    static final class Result {
+        final Status status;
+        final long amount;
+        final long before, after;
+        final long otherBefore, otherAfter;
+
+        Result(Status status, long amount, long before, long after, long otherBefore, long otherAfter) {
+            this.status = status;
+            this.amount = amount;
+            this.before = before;
+            this.after = after;
+            this.otherBefore = otherBefore;
+            this.otherAfter = otherAfter;
+        }
+
+        boolean ok() { return status == Status.OK; }
+    }
+
+    interface Commit {
+        void accept(Result r);
+    }
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final BankStats stats;
+
+    /** @param stripeCount rounded up to a power of two */
+    Ledger(int stripeCount, BankStats stats) {
+        this.stats = stats;
+        int n = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) stripes[i] = new ReentrantLock();
+        mask = n - 1;
+    }
+
+    private int stripeOf(String accountNumber) {
+        int h = accountNumber.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /** Runs action while holding the account's lock (e.g. deletion, PIN change). */
+    void withLock(AdvancedBankSystem3.BankAccount a, Runnable action) {
+        ReentrantLock l = stripes[stripeOf(a.accountNumber)];
+        l.lock();
+        try {
+            action.run();
+        } finally {
+            l.unlock();
+        }
+    }
+
+    Result deposit(AdvancedBankSystem3.BankAccount a, long amt, Commit commit) {
+        if (amt <= 0) return rejected(Status.INVALID_AMOUNT, amt);
+        ReentrantLock l = stripes[stripeOf(a.accountNumber)];
+        l.lock();
+        try {
+            if (a.closed) return rejected(Status.ACCOUNT_CLOSED, amt);
+            long before = a.balance;
+            a.balance = before + amt;
+            stats.balanceChanged(a.accountType, amt);
+            Result r = new Result(Status.OK, amt, before, a.balance, 0, 0);
+            commit.accept(r);
+            return r;
+        } finally {
+            l.unlock();
+        }
+    }
+
+    Result withdraw(AdvancedBankSystem3.BankAccount a, long amt, Commit commit) {
+        if (amt <= 0) return rejected(Status.INVALID_AMOUNT, amt);
+        ReentrantLock l = stripes[stripeOf(a.accountNumber)];
+        l.lock();
+        try {
+            if (a.closed) return rejected(Status.ACCOUNT_CLOSED, amt);
+            long before = a.balance;
+            if (amt > before) return rejected(Status.INSUFFICIENT_FUNDS, amt);
+            a.balance = before - amt;
+            stats.balanceChanged(a.accountType, -amt);
+            Result r = new Result(Status.OK, amt, before, a.balance, 0, 0);
+            commit.accept(r);
+            return r;
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /** Credits ratePercent of the current balance; the interest is computed under the lock. */
+    Result applyRate(AdvancedBankSystem3.BankAccount a, double ratePercent, Commit commit) {
+        if (!(ratePercent > 0)) return rejected(Status.INVALID_AMOUNT, 0);
+        ReentrantLock l = stripes[stripeOf(a.accountNumber)];
+        l.lock();
+        try {
+            if (a.closed) return rejected(Status.ACCOUNT_CLOSED, 0);
+            long before = a.balance;
+            long interest = Money.percentOf(before, ratePercent);
+            a.balance = before + interest;
+            stats.balanceChanged(a.accountType, interest);
+            Result r = new Result(Status.OK, interest, before, a.balance, 0, 0);
+            commit.accept(r);
+            return r;
+        } finally {
+            l.unlock();
+        }
+    }
+
+    Result transfer(AdvancedBankSystem3.BankAccount from, AdvancedBankSystem3.BankAccount to,
+                    long amt, Commit commit) {
+        if (amt <= 0) return rejected(Status.INVALID_AMOUNT, amt);
+        int s1 = stripeOf(from.accountNumber);
+        int s2 = stripeOf(to.accountNumber);
+        // always lock the lower stripe first; one lock if both share a stripe
+        ReentrantLock first = stripes[Math.min(s1, s2)];
+        ReentrantLock second = stripes[Math.max(s1, s2)];
+        first.lock();
+        if (second != first) second.lock();
+        try {
+            if (from.closed || to.closed) return rejected(Status.ACCOUNT_CLOSED, amt);
+            long fromBefore = from.balance;
+            if (amt > fromBefore) return rejected(Status.INSUFFICIENT_FUNDS, amt);
+            long toBefore = to.balance;
+            from.balance = fromBefore - amt;
+            to.balance = to.balance + amt; // re-read: from and to may be the same account
+            stats.balanceChanged(from.accountType, -amt);
+            stats.balanceChanged(to.accountType, amt);
+            Result r = new Result(Status.OK, amt, fromBefore, from.balance, toBefore, to.balance);
+            commit.accept(r);
+            return r;
+        } finally {
+            if (second != first) second.unlock();
+            first.unlock();
+        }
+    }
+
+    private static Result rejected(Status status, long amt) {
+        return new Result(status, amt, 0, 0, 0, 0);
+    }
+}
@@ -3,20 +3,35 @@ import java.nio.file.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Predicate;
 
 /**
  * Simple multi-business Billing System
  * - Supports Provision Store, Market Stall, POS, Gas Station
- * - Console UI, writes receipts to receipts/ folder
+ * - Console UI, archives receipts in receipts/ (see ReceiptArchive), found
+ *   again by receipt ID or date
+ * - Items from catalogue_<business>.csv when present (code,barcode,name,price;
+ *   see Catalogue), found by code, barcode, or name with prefix/typo search
  *
  * Customize item lists and tax/discount rules as needed.
+ * Prices and totals are kept in kobo (long, see Money) so sums are exact.
  */
 public class MarketBillingSystem {
     static Scanner sc = new Scanner(System.in);
     static final String RECEIPT_DIR = "receipts";
 
+    // no-ops unless -Dbank.metrics=true (see Metrics)
+    static final Metrics.Op M_RECEIPT = Metrics.op("billing.generateReceipt");
+    static final Metrics.Op M_SAVE_RECEIPT = Metrics.op("billing.saveReceipt");
+
+    // Receipts are rendered in a reusable buffer per thread (see ReceiptRenderer)
+    static final ReceiptRenderer.Layout RECEIPT_LAYOUT = ReceiptRenderer.Layout.fromSystemProperties();
+    static final ThreadLocal<ReceiptRenderer> RENDERER = ThreadLocal.withInitial(ReceiptRenderer::new);
+
+    static ReceiptArchive archive; // null if it could not be opened: receipts are then only printed
+
     public static void main(String[] args) {
-        ensureReceiptDir();
+        openArchive();
         System.out.println("=== Simple Billing System ===");
 
         while (true) {
@@ -25,8 +40,9 @@ public class MarketBillingSystem {
             System.out.println("2. Market Stall");
             System.out.println("3. POS / Till");
             System.out.println("4. Gas Station");
-            System.out.println("5. Exit");
-            System.out.print("Select (1-5): ");
+            System.out.println("5. Find a saved receipt");
+            System.out.println("6. Exit");
+            System.out.print("Select (1-6): ");
             int choice = readInt();
 
             switch (choice) {
@@ -34,7 +50,12 @@ public class MarketBillingSystem {
                 case 2 -> runBusiness(BusinessType.MARKET_STALL);
                 case 3 -> runBusiness(BusinessType.POS);
                 case 4 -> runBusiness(BusinessType.GAS_STATION);
-                case 5 -> { System.out.println("Goodbye!"); return; }
+                case 5 -> findReceipts();
+                case 6 -> {
+                    if (archive != null) archive.close();
+                    System.out.println("Goodbye!");
+                    return;
+                }
                 default -> System.out.println("Invalid choice.");
             }
         }
@@ -51,16 +72,18 @@ public class MarketBillingSystem {
         while (adding) {
             System.out.println("\nOptions:");
             System.out.println("1. List items");
-            System.out.println("2. Add item by code");
+            System.out.println("2. Add item (code, barcode or name)");
             System.out.println("3. Add custom item");
-            System.out.println("4. Finish and print receipt");
-            System.out.print("Choose (1-4): ");
+            System.out.println("4. Remove or change a line");
+            System.out.println("5. Finish and print receipt");
+            System.out.print("Choose (1-5): ");
             int opt = readInt();
             switch (opt) {
                 case 1 -> inventory.printAll();
                 case 2 -> addFromInventory(inventory, bill, type);
                 case 3 -> addCustomItem(bill);
-                case 4 -> {
+                case 4 -> editBill(bill);
+                case 5 -> {
                     finishAndSave(bill, type);
                     adding = false;
                 }
@@ -70,13 +93,12 @@ public class MarketBillingSystem {
     }
 
     static void addFromInventory(Inventory inventory, Bill bill, BusinessType type) {
-        System.out.print("Enter item code: ");
-        String code = sc.next().trim();
-        Item itm = inventory.findByCode(code);
-        if (itm == null) {
-            System.out.println("Item not found.");
-            return;
-        }
+        sc.nextLine(); // clear line
+        System.out.print("Enter item code, barcode or name: ");
+        String key = sc.nextLine().trim();
+        Item itm = inventory.find(key);
+        if (itm == null) itm = pickFromSearch(inventory, key);
+        if (itm == null) return;
 
         if (type == BusinessType.GAS_STATION) {
             System.out.println("Gas station mode: choose input type:");
@@ -87,36 +109,79 @@ public class MarketBillingSystem {
             if (c == 1) {
                 System.out.print("Enter litres: ");
                 double litres = readDouble();
-                double pricePerLitre = itm.price;
-                double amount = litres * pricePerLitre;
+                long pricePerLitre = itm.price;
+                long amount = Money.times(pricePerLitre, litres);
                 bill.addLine(new BillLine(itm.name + " (fuel)", litres, pricePerLitre, amount, true));
             } else {
                 System.out.print("Enter amount (currency): ");
-                double amount = readDouble();
-                double pricePerLitre = itm.price;
-                double litres = amount / pricePerLitre;
+                long amount = readMoney();
+                long pricePerLitre = itm.price;
+                double litres = (double) amount / pricePerLitre;
                 bill.addLine(new BillLine(itm.name + " (fuel)", litres, pricePerLitre, amount, true));
             }
         } else {
             System.out.print("Enter quantity: ");
             double qty = readDouble();
-            bill.addLine(new BillLine(itm.name, qty, itm.price, itm.price * qty, false));
+            bill.addLine(new BillLine(itm.name, qty, itm.price, Money.times(itm.price, qty), false));
         }
         System.out.println("Added to bill.");
     }
 
+    // Item named by key when it is not an exact code/barcode/name: one match is taken, several are offered
+    static Item pickFromSearch(Inventory inventory, String key) {
+        List<Item> found = inventory.search(key);
+        if (found.isEmpty()) {
+            System.out.println("Item not found.");
+            return null;
+        }
+        if (found.size() == 1) {
+            System.out.println("Found: " + found.get(0));
+            return found.get(0);
+        }
+        System.out.println("Matching items:");
+        for (int i = 0; i < found.size(); i++) System.out.println((i + 1) + ". " + found.get(i));
+        System.out.print("Choose (1-" + found.size() + ", 0 to cancel): ");
+        int k = readInt();
+        return k >= 1 && k <= found.size() ? found.get(k - 1) : null;
+    }
+
     static void addCustomItem(Bill bill) {
         sc.nextLine(); // clear line
         System.out.print("Custom item name: ");
         String name = sc.nextLine().trim();
         System.out.print("Price per unit: ");
-        double price = readDouble();
+        long price = readMoney();
         System.out.print("Quantity: ");
         double qty = readDouble();
-        bill.addLine(new BillLine(name, qty, price, qty * price, false));
+        bill.addLine(new BillLine(name, qty, price, Money.times(price, qty), false));
         System.out.println("Custom item added.");
     }
 
+    static void editBill(Bill bill) {
+        if (bill.lineCount() == 0) {
+            System.out.println("The bill is empty.");
+            return;
+        }
+        List<BillLine> lines = bill.lines();
+        for (int i = 0; i < lines.size(); i++) {
+            BillLine l = lines.get(i);
+            System.out.println((i + 1) + ". " + l.name + " x " + l.quantity + " = " + Money.format(l.lineTotal));
+        }
+        System.out.println("Subtotal: " + Money.format(bill.subtotal()));
+        System.out.print("Line number (0 to cancel): ");
+        int n = readInt();
+        if (n < 1 || n > bill.lineCount()) return;
+        System.out.print("New quantity (0 removes the line): ");
+        double qty = readDouble();
+        if (qty <= 0) {
+            System.out.println("Removed " + bill.removeLine(n - 1).name + ".");
+        } else {
+            bill.setQuantity(n - 1, qty);
+            System.out.println("Quantity changed.");
+        }
+        System.out.println("Subtotal now: " + Money.format(bill.subtotal()));
+    }
+
     static void finishAndSave(Bill bill, BusinessType type) {
         // Possibly ask for discount or customer details
         System.out.print("Apply discount percent? (0 for none): ");
@@ -128,34 +193,64 @@ public class MarketBillingSystem {
         String customer = sc.nextLine().trim();
         bill.customerName = customer.isEmpty() ? "Walk-in" : customer;
 
+        long t0 = M_RECEIPT.start();
         String receipt = bill.generateReceipt(type);
+        M_RECEIPT.stop(t0);
         System.out.println("\n--- Receipt ---");
         System.out.println(receipt);
 
         // save receipt
+        String id = saveReceipt(receipt);
+        if (id != null) System.out.println("Receipt saved as " + id);
+        else System.out.println("Receipt NOT saved: the receipt archive is unavailable.");
+    }
+
+    static void openArchive() {
         try {
-            String filename = saveReceiptToFile(receipt);
-            System.out.println("Receipt saved to: " + filename);
+            archive = ReceiptArchive.fromSystemProperties(Paths.get(RECEIPT_DIR));
         } catch (IOException e) {
-            System.out.println("Failed to save receipt: " + e.getMessage());
+            // billing goes on; receipts are printed but not kept until the archive can be opened
+            System.out.println("Cannot open the receipt archive: " + e.getMessage() + ". Receipts will not be saved.");
+            archive = null;
         }
     }
 
-    static void ensureReceiptDir() {
+    /** Queues the receipt in the archive and returns its ID (null without an archive); the disk write happens in the background. */
+    static String saveReceipt(String content) {
+        if (archive == null) return null;
+        long t0 = M_SAVE_RECEIPT.start();
+        String id = archive.submit(content);
+        M_SAVE_RECEIPT.stop(t0, content.length());
+        return id;
+    }
+
+    static void findReceipts() {
+        System.out.print("Receipt ID, or date (yyyy-MM-dd) to list that day's receipts: ");
+        String q = sc.next().trim();
+        if (archive == null) {
+            System.out.println("The receipt archive is unavailable.");
+            return;
+        }
         try {
-            Files.createDirectories(Paths.get(RECEIPT_DIR));
+            if (ReceiptArchive.key(q) >= 0) {
+                String text = archive.read(q);
+                System.out.println(text == null ? "No receipt " + q + "." : text);
+                return;
+            }
+            LocalDate day = LocalDate.parse(q);
+            List<ReceiptArchive.Entry> found = archive.between(day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+            DateTimeFormatter time = DateTimeFormatter.ofPattern("HH:mm:ss");
+            for (ReceiptArchive.Entry e : found) {
+                System.out.printf("%-16s %s %8d bytes%n", e.id, e.time().format(time), e.length);
+            }
+            System.out.println(found.size() + " receipt(s) on " + day + ".");
+        } catch (DateTimeException e) {
+            System.out.println("Not a receipt ID or date: " + q);
         } catch (IOException e) {
-            // ignore
+            System.out.println("Error reading receipts: " + e.getMessage());
         }
     }
 
-    static String saveReceiptToFile(String content) throws IOException {
-        String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        String filename = RECEIPT_DIR + "/receipt_" + ts + ".txt";
-        Files.writeString(Paths.get(filename), content, StandardOpenOption.CREATE_NEW);
-        return filename;
-    }
-
     // Utilities for safe input
     static int readInt() {
         while (!sc.hasNextInt()) {
@@ -175,6 +270,18 @@ public class MarketBillingSystem {
         return v;
     }
 
+    // Reads a naira amount, returned in kobo
+    static long readMoney() {
+        while (true) {
+            String s = sc.next();
+            try {
+                return Money.parse(s);
+            } catch (NumberFormatException e) {
+                System.out.print("Enter amount: ");
+            }
+        }
+    }
+
     // --- Domain classes ---
 
     enum BusinessType {
@@ -194,22 +301,47 @@ public class MarketBillingSystem {
 
     static class Item {
         String code;
+        String barcode; // empty if none
         String name;
-        double price; // price per unit (or per litre for gas)
-        Item(String code, String name, double price) {
+        long price; // kobo per unit (or per litre for gas)
+        Item(String code, String name, double priceNaira) {
+            this(code, "", name, Money.ofNaira(priceNaira));
+        }
+        Item(String code, String barcode, String name, long price) {
             this.code = code;
+            this.barcode = barcode;
             this.name = name;
             this.price = price;
         }
         public String toString() {
-            return code + " - " + name + " @ " + String.format("%.2f", price);
+            return code + " - " + name + " @ " + Money.format(price);
         }
     }
 
+    // Items come from catalogue_<business>.csv (e.g. catalogue_provision_store.csv, see Catalogue)
+    // in bank.catalogue.dir when there is one, otherwise from the built-in list below
     static class Inventory {
-        private final Map<String, Item> items = new LinkedHashMap<>();
+        static final int LIST_LIMIT = 50;
+        static final int SEARCH_LIMIT = 10;
+
+        private final Catalogue catalogue;
+
+        Inventory(Catalogue catalogue) { this.catalogue = catalogue; }
+
         static Inventory createFor(BusinessType type) {
-            Inventory inv = new Inventory();
+            Path file = Paths.get(System.getProperty("bank.catalogue.dir", "."),
+                    "catalogue_" + type.name().toLowerCase(Locale.ROOT) + ".csv");
+            if (Files.exists(file)) {
+                try {
+                    long start = System.nanoTime();
+                    Catalogue c = Catalogue.load(file);
+                    System.out.printf("Loaded %d items from %s in %d ms%n", c.size(), file, (System.nanoTime() - start) / 1_000_000);
+                    return new Inventory(c);
+                } catch (IOException e) {
+                    System.out.println("Could not read " + file + " (" + e.getMessage() + "), using the built-in items.");
+                }
+            }
+            Catalogue.Builder inv = new Catalogue.Builder();
             switch (type) {
                 case PROVISION_STORE -> {
                     inv.add(new Item("P001","Rice 50kg (per bag)", 25000));
@@ -233,23 +365,30 @@ public class MarketBillingSystem {
                     inv.add(new Item("G002", "Diesel", 720.0));
                 }
             }
-            return inv;
+            return new Inventory(inv.build());
         }
-        void add(Item it) { items.put(it.code, it); }
-        Item findByCode(String code) { return items.get(code.toUpperCase()); }
+        Item findByCode(String code) { return catalogue.byCode(code); }
+        /** Exact code, barcode or name. */
+        Item find(String key) { return catalogue.find(key); }
+        /** Names matching every word of query by prefix or with a typo, best first. */
+        List<Item> search(String query) { return catalogue.search(query, SEARCH_LIMIT); }
         void printAll() {
             System.out.println("\nAvailable items:");
-            for (Item it : items.values()) System.out.println(it);
+            for (Item it : catalogue.list(0, LIST_LIMIT)) System.out.println(it);
+            if (catalogue.size() > LIST_LIMIT) {
+                System.out.println("... and " + (catalogue.size() - LIST_LIMIT) + " more; add an item by name to search.");
+            }
         }
     }
 
+    // Immutable: a Bill's running totals depend on lineTotal, so a line is changed by replacing it (Bill.setLine)
     static class BillLine {
-        String name;
-        double quantity; // can be litres or units
-        double unitPrice;
-        double lineTotal;
-        boolean isFuel; // special flag to indicate litres-mode
-        BillLine(String name, double quantity, double unitPrice, double lineTotal, boolean isFuel) {
+        final String name;
+        final double quantity; // can be litres or units
+        final long unitPrice;  // kobo
+        final long lineTotal;  // kobo
+        final boolean isFuel; // special flag to indicate litres-mode
+        BillLine(String name, double quantity, long unitPrice, long lineTotal, boolean isFuel) {
             this.name = name;
             this.quantity = quantity;
             this.unitPrice = unitPrice;
@@ -258,56 +397,122 @@ public class MarketBillingSystem {
         }
     }
 
+    // Subtotal, discount and tax are kept up to date as lines are added, removed or
+    // replaced, so the totals cost O(1) however many lines the bill has
     static class Bill {
-        List<BillLine> lines = new ArrayList<>();
-        double taxRate; // eg 0.05 for 5%
-        double discountPercent = 0.0;
+        private final List<BillLine> lines = new ArrayList<>();
+        final double taxRate; // eg 0.05 for 5%
+        private double discountPercent = 0.0;
         String customerName = "Walk-in";
 
+        // all amounts in kobo
+        private long subtotal, discount, tax;
+
         Bill(double taxRate) { this.taxRate = taxRate; }
 
-        void addLine(BillLine l) { lines.add(l); }
+        void addLine(BillLine l) {
+            lines.add(l);
+            subtotal += l.lineTotal;
+            refresh();
+        }
+
+        void addLines(Collection<BillLine> ls) {
+            lines.addAll(ls);
+            for (BillLine l : ls) subtotal += l.lineTotal;
+            refresh();
+        }
+
+        /** Removes and returns line i (0-based). */
+        BillLine removeLine(int i) {
+            BillLine old = lines.remove(i);
+            subtotal -= old.lineTotal;
+            refresh();
+            return old;
+        }
 
-        void setDiscountPercent(double pct) { if (pct >= 0) discountPercent = pct; }
+        /** Replaces line i with l and returns the old line. */
+        BillLine setLine(int i, BillLine l) {
+            BillLine old = lines.set(i, l);
+            subtotal += l.lineTotal - old.lineTotal;
+            refresh();
+            return old;
+        }
 
-        double subtotal() {
-            double s = 0;
-            for (BillLine l : lines) s += l.lineTotal;
-            return s;
+        /** Line i with a new quantity, its total recomputed from the unit price. */
+        BillLine setQuantity(int i, double qty) {
+            BillLine l = lines.get(i);
+            setLine(i, new BillLine(l.name, qty, l.unitPrice, Money.times(l.unitPrice, qty), l.isFuel));
+            return lines.get(i);
         }
-        double discountAmount() { return subtotal() * (discountPercent / 100.0); }
-        double taxAmount() { return (subtotal() - discountAmount()) * taxRate; }
-        double total() { return subtotal() - discountAmount() + taxAmount(); }
+
+        /** Removes every line matching p in one pass; returns how many went. */
+        int removeLines(Predicate<BillLine> p) {
+            int before = lines.size();
+            lines.removeIf(l -> {
+                if (!p.test(l)) return false;
+                subtotal -= l.lineTotal;
+                return true;
+            });
+            refresh();
+            return before - lines.size();
+        }
+
+        void clear() {
+            lines.clear();
+            subtotal = 0;
+            refresh();
+        }
+
+        List<BillLine> lines() { return Collections.unmodifiableList(lines); }
+
+        int lineCount() { return lines.size(); }
+
+        void setDiscountPercent(double pct) {
+            if (pct < 0) return;
+            discountPercent = pct;
+            refresh();
+        }
+
+        double discountPercent() { return discountPercent; }
+
+        // discount and tax follow from the subtotal alone
+        private void refresh() {
+            discount = Money.percentOf(subtotal, discountPercent);
+            tax = Money.times(subtotal - discount, taxRate);
+        }
+
+        long subtotal() { return subtotal; }
+        long discountAmount() { return discount; }
+        long taxAmount() { return tax; }
+        long total() { return subtotal - discount + tax; }
 
         String generateReceipt(BusinessType type) {
-            StringBuilder sb = new StringBuilder();
-            String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            sb.append("=== Receipt ===\n");
-            sb.append("Business: ").append(type.displayName).append("\n");
-            sb.append("Date: ").append(ts).append("\n");
-            sb.append("Customer: ").append(customerName).append("\n");
-            sb.append("-------------------------------\n");
-            sb.append(String.format("%-20s %6s %8s\n","Item","Qty","Amount"));
-            sb.append("-------------------------------\n");
+            return render(type, LocalDateTime.now(), RECEIPT_LAYOUT).toString();
+        }
+
+        /** Renders the receipt into this thread's ReceiptRenderer and returns it, ready for writeTo(). */
+        ReceiptRenderer render(BusinessType type, LocalDateTime when, ReceiptRenderer.Layout layout) {
+            ReceiptRenderer r = RENDERER.get().reset();
+            r.line("=== Receipt ===");
+            r.text("Business: ").line(type.displayName);
+            r.text("Date: ").dateTime(when).newline();
+            r.text("Customer: ").line(customerName);
+            r.rule('-', layout.width);
+            r.row(layout.header).cell("Item").cell("Qty").cell("Amount");
+            r.rule('-', layout.width);
             for (BillLine l : lines) {
-                String qStr = l.isFuel ? String.format("%.2fL", l.quantity) : String.format("%.2f", l.quantity);
-                sb.append(String.format("%-20s %6s %8.2f\n", truncate(l.name,20), qStr, l.lineTotal));
+                r.row(layout.item).cell(l.name).quantityCell(l.quantity, l.isFuel).moneyCell(l.lineTotal);
             }
-            sb.append("-------------------------------\n");
-            sb.append(String.format("%-20s %14.2f\n","Subtotal:", subtotal()));
+            r.rule('-', layout.width);
+            r.row(layout.total).cell("Subtotal:").moneyCell(subtotal);
             if (discountPercent > 0.0) {
-                sb.append(String.format("%-20s %13.2f\n", "Discount ("+discountPercent+"%):", -discountAmount()));
+                r.row(layout.discount).text("Discount (").plain(discountPercent).text("%):").endCell().moneyCell(-discount);
             }
-            sb.append(String.format("%-20s %14.2f\n","Tax ("+ (int)(taxRate*100) +"%):", taxAmount()));
-            sb.append(String.format("%-20s %14.2f\n","TOTAL:", total()));
-            sb.append("-------------------------------\n");
-            sb.append("Thank you for your business!\n");
-            return sb.toString();
-        }
-
-        private String truncate(String s, int len) {
-            if (s.length() <= len) return s;
-            return s.substring(0, len-3) + "...";
+            r.row(layout.total).text("Tax (").number((int) (taxRate * 100)).text("%):").endCell().moneyCell(tax);
+            r.row(layout.total).cell("TOTAL:").moneyCell(total());
+            r.rule('-', layout.width);
+            r.line("Thank you for your business!");
+            return r;
         }
     }
 }
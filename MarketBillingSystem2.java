@@ -1,5 +1,4 @@
 import java.io.*;
-import java.time.LocalDate;
 import java.util.*;
 
 public class MarketBillingSystem2 {
@@ -7,6 +6,12 @@ public class MarketBillingSystem2 {
     static Scanner sc = new Scanner(System.in);
     static String currentCashier = "";
 
+    // no-ops unless -Dbank.metrics=true (see Metrics)
+    static final Metrics.Op M_SAVE_SALE = Metrics.op("billing.saveSale");
+
+    // sales lines are written by a background thread (see SalesLog)
+    static final SalesLog SALES = SalesLog.fromSystemProperties();
+
     // --------------------- LOGIN SYSTEM -------------------------
     public static void login() {
         System.out.print("Enter cashier username: ");
@@ -45,21 +50,20 @@ public class MarketBillingSystem2 {
     // --------------------- ITEM CLASS ---------------------------
     static class Item {
         String name;
-        double price;
+        long price;      // kobo (see Money)
         int qty;
         double discount; // percentage
 
-        Item(String name, double price, int qty, double discount) {
+        Item(String name, long price, int qty, double discount) {
             this.name = name;
             this.price = price;
             this.qty = qty;
             this.discount = discount;
         }
 
-        double total() {
-            double amount = price * qty;
-            double discAmount = amount * (discount / 100.0);
-            return amount - discAmount;
+        long total() {
+            long amount = price * qty;
+            return amount - Money.percentOf(amount, discount);
         }
     }
 
@@ -69,7 +73,7 @@ public class MarketBillingSystem2 {
         String name = sc.nextLine();
 
         System.out.print("Price: ");
-        double price = readDouble();
+        long price = readMoney();
 
         System.out.print("Quantity: ");
         int qty = readInt();
@@ -82,24 +86,17 @@ public class MarketBillingSystem2 {
 
     // --------------------- DAILY SALES SAVE ----------------------
     public static void saveSale(Item item) {
-        try {
-            String fileName = "sales_" + LocalDate.now() + ".csv";
-            FileWriter fw = new FileWriter(fileName, true);
-
-            fw.write(currentCashier + "," + item.name + "," + item.qty + "," +
-                    item.price + "," + item.discount + "," + item.total() + "\n");
-            fw.close();
-
-        } catch (Exception e) {
-            System.out.println("Error saving sales report.");
-        }
+        long t0 = M_SAVE_SALE.start();
+        String row = currentCashier + "," + item.name + "," + item.qty + "," +
+                Money.format(item.price) + "," + item.discount + "," + Money.format(item.total());
+        SALES.record(row);
+        M_SAVE_SALE.stop(t0, row.length() + 1);
     }
 
     // --------------------- VIEW DAILY REPORT ---------------------
     public static void viewReport() {
-        String fileName = "sales_" + LocalDate.now() + ".csv";
-
-        File f = new File(fileName);
+        if (!SALES.flush()) System.out.println("(Some sales are still waiting to be written.)");
+        File f = SALES.today().toFile();
         if (!f.exists()) {
             System.out.println("No sales recorded today.");
             return;
@@ -108,16 +105,16 @@ public class MarketBillingSystem2 {
         System.out.println("\n------ DAILY SALES REPORT ------");
         try (BufferedReader br = new BufferedReader(new FileReader(f))) {
             String line;
-            double total = 0;
+            long total = 0;
 
             while ((line = br.readLine()) != null) {
                 String[] arr = line.split(",");
                 System.out.println("Cashier: " + arr[0] + ", Item: " + arr[1] +
                         ", Qty: " + arr[2] + ", Total: " + arr[5]);
-                total += Double.parseDouble(arr[5]);
+                total += Money.parse(arr[5]);
             }
 
-            System.out.println("\nTotal revenue today: ₦" + total);
+            System.out.println("\nTotal revenue today: ₦" + Money.format(total));
         } catch (Exception e) {
             System.out.println("Error reading report.");
         }
@@ -132,6 +129,18 @@ public class MarketBillingSystem2 {
         return sc.nextInt();
     }
 
+    // Reads a naira amount, returned in kobo
+    public static long readMoney() {
+        while (true) {
+            String s = sc.next();
+            try {
+                return Money.parse(s);
+            } catch (NumberFormatException e) {
+                System.out.print("Enter amount: ");
+            }
+        }
+    }
+
     public static double readDouble() {
         while (!sc.hasNextDouble()) {
             sc.next();
@@ -171,19 +180,21 @@ public class MarketBillingSystem2 {
                 case 2:
                     System.out.println("\n--- CART ITEMS ---");
                     for (Item i : cart) {
-                        System.out.println(i.name + " | ₦" + i.price + " x " + i.qty +
+                        System.out.println(i.name + " | ₦" + Money.format(i.price) + " x " + i.qty +
                                 " | Discount: " + i.discount + "%");
                     }
                     break;
 
                 case 3:
                     System.out.println("\n----- RECEIPT -----");
-                    double sum = 0;
+                    long sum = 0;
                     for (Item i : cart) {
-                        System.out.println(i.name + " - Total: ₦" + i.total());
-                        sum += i.total();
+                        long lineTotal = i.total();
+                        System.out.println(i.name + " - Total: ₦" + Money.format(lineTotal));
+                        sum += lineTotal;
                     }
-                    System.out.println("GRAND TOTAL: ₦" + sum);
+                    System.out.println("GRAND TOTAL: ₦" + Money.format(sum));
+                    SALES.checkout();
                     break;
 
                 case 4:
@@ -191,6 +202,7 @@ public class MarketBillingSystem2 {
                     break;
 
                 case 5:
+                    SALES.close();
                     System.out.println("Goodbye!");
                     System.exit(0);
                     break;
@@ -1,5 +1,4 @@
 import java.io.*;
-import java.time.LocalDate;
 import java.util.*;
 
 public class MarketBillingSystem6 {
@@ -7,6 +6,13 @@ public class MarketBillingSystem6 {
     static Scanner sc = new Scanner(System.in);
     static String currentCashier = "";
 
+    // no-ops unless -Dbank.metrics=true (see Metrics)
+    static final Metrics.Op M_SAVE_SALE = Metrics.op("billing.saveSale");
+
+    // sales lines are written by a background thread (see SalesLog)
+    static final SalesLog SALES = SalesLog.fromSystemProperties();
+    static final Metrics.Op M_RECEIPT = Metrics.op("billing.printReceipt");
+
     // --------------------- LOGIN SYSTEM -------------------------
     public static void login() {
         System.out.print("Enter cashier username: ");
@@ -45,21 +51,20 @@ public class MarketBillingSystem6 {
     // --------------------- ITEM CLASS ---------------------------
     static class Item {
         String name;
-        double price;
+        long price;      // kobo (see Money)
         int qty;
         double discount; // percentage
 
-        Item(String name, double price, int qty, double discount) {
+        Item(String name, long price, int qty, double discount) {
             this.name = name;
             this.price = price;
             this.qty = qty;
             this.discount = discount;
         }
 
-        double total() {
-            double amount = price * qty;
-            double discAmount = amount * (discount / 100.0);
-            return amount - discAmount;
+        long total() {
+            long amount = price * qty;
+            return amount - Money.percentOf(amount, discount);
         }
     }
 
@@ -69,7 +74,7 @@ public class MarketBillingSystem6 {
         String name = sc.nextLine();
 
         System.out.print("Price: ");
-        double price = readDouble();
+        long price = readMoney();
 
         System.out.print("Quantity: ");
         int qty = readInt();
@@ -82,24 +87,17 @@ public class MarketBillingSystem6 {
 
     // --------------------- DAILY SALES SAVE ----------------------
     public static void saveSale(Item item) {
-        try {
-            String fileName = "sales_" + LocalDate.now() + ".csv";
-            FileWriter fw = new FileWriter(fileName, true);
-
-            fw.write(currentCashier + "," + item.name + "," + item.qty + "," +
-                    item.price + "," + item.discount + "," + item.total() + "\n");
-            fw.close();
-
-        } catch (Exception e) {
-            System.out.println("Error saving sales report.");
-        }
+        long t0 = M_SAVE_SALE.start();
+        String row = currentCashier + "," + item.name + "," + item.qty + "," +
+                Money.format(item.price) + "," + item.discount + "," + Money.format(item.total());
+        SALES.record(row);
+        M_SAVE_SALE.stop(t0, row.length() + 1);
     }
 
     // --------------------- VIEW DAILY REPORT ---------------------
     public static void viewReport() {
-        String fileName = "sales_" + LocalDate.now() + ".csv";
-
-        File f = new File(fileName);
+        if (!SALES.flush()) System.out.println("(Some sales are still waiting to be written.)");
+        File f = SALES.today().toFile();
         if (!f.exists()) {
             System.out.println("No sales recorded today.");
             return;
@@ -108,21 +106,71 @@ public class MarketBillingSystem6 {
         System.out.println("\n------ DAILY SALES REPORT ------");
         try (BufferedReader br = new BufferedReader(new FileReader(f))) {
             String line;
-            double total = 0;
+            long total = 0;
 
             while ((line = br.readLine()) != null) {
                 String[] arr = line.split(",");
                 System.out.println("Cashier: " + arr[0] + ", Item: " + arr[1] +
                         ", Qty: " + arr[2] + ", Total: " + arr[5]);
-                total += Double.parseDouble(arr[5]);
+                total += Money.parse(arr[5]);
             }
 
-            System.out.println("\nTotal revenue today: ₦" + total);
+            System.out.println("\nTotal revenue today: ₦" + Money.format(total));
         } catch (Exception e) {
             System.out.println("Error reading report.");
         }
     }
 
+    // --------------------- RECEIPT -----------------------------
+    // Logo and store details never change: built once
+    static final String RECEIPT_HEADER = String.join("\n",
+            "",
+            "==================================================",
+            "   ____        _ _ _                     ",
+            "  / __ \\      | (_) |                    ",
+            " | |  | |_ __ | |_| |_ _   _ _ __ ___    ",
+            " | |  | | '_ \\| | | __| | | | '_ ` _ \\   ",
+            " | |__| | | | | | | |_| |_| | | | | | |  ",
+            "  \\____/|_| |_|_|_|\\__|\\__,_|_| |_| |_|  ",
+            "        ONITUWO ENTERPRISE STORE          ",
+            "==================================================",
+            "Address: No. 15 Ilorin Road, Offa, Kwara State",
+            "Phone: 08123456789 | 09098765432",
+            "==================================================",
+            "");
+    static final int RECEIPT_WIDTH = 50;
+    static final ReceiptRenderer.Template ITEM_ROW = ReceiptRenderer.Template.compile("%-28.28s %5s %15s");
+    static final ReceiptRenderer.Template TOTAL_ROW = ReceiptRenderer.Template.compile("%-34s %15s");
+    static final ReceiptRenderer receipt = new ReceiptRenderer(); // console thread only
+
+    // Rendered into one reusable buffer and printed in a single write (see ReceiptRenderer)
+    public static void printReceipt(List<Item> cart, String paymentMethod) {
+        long t0 = M_RECEIPT.start();
+        ReceiptRenderer r = receipt.reset();
+        r.text(RECEIPT_HEADER);
+        r.text("Receipt No: REC").number(System.currentTimeMillis()).newline();
+        r.text("Cashier: ").line(currentCashier);
+        r.text("Payment Method: ").line(paymentMethod);
+        r.text("Date: ").dateTime(java.time.LocalDateTime.now()).newline();
+        r.rule('-', RECEIPT_WIDTH);
+
+        long sum = 0;
+        for (Item i : cart) {
+            long lineTotal = i.total();
+            r.row(ITEM_ROW).cell(i.name).text('x').number(i.qty).endCell().text('₦').money(lineTotal).endCell();
+            sum += lineTotal;
+        }
+
+        r.rule('-', RECEIPT_WIDTH);
+        r.row(TOTAL_ROW).cell("GRAND TOTAL:").text('₦').money(sum).endCell();
+        r.rule('-', RECEIPT_WIDTH);
+        r.line("Thank you for shopping at Onituwo Enterprise!");
+        r.line("Please come again ❤️");
+        r.rule('=', RECEIPT_WIDTH).newline();
+        r.writeTo(System.out);
+        M_RECEIPT.stop(t0);
+    }
+
     // --------------------- INPUT HELPERS -------------------------
     public static int readInt() {
         while (!sc.hasNextInt()) {
@@ -132,6 +180,18 @@ public class MarketBillingSystem6 {
         return sc.nextInt();
     }
 
+    // Reads a naira amount, returned in kobo
+    public static long readMoney() {
+        while (true) {
+            String s = sc.next();
+            try {
+                return Money.parse(s);
+            } catch (NumberFormatException e) {
+                System.out.print("Enter amount: ");
+            }
+        }
+    }
+
     public static double readDouble() {
         while (!sc.hasNextDouble()) {
             sc.next();
@@ -171,7 +231,7 @@ public class MarketBillingSystem6 {
                 case 2:
                     System.out.println("\n--- CART ITEMS ---");
                     for (Item i : cart) {
-                        System.out.println(i.name + " | ₦" + i.price + " x " + i.qty +
+                        System.out.println(i.name + " | ₦" + Money.format(i.price) + " x " + i.qty +
                                 " | Discount: " + i.discount + "%");
                     }
                     break;
@@ -183,46 +243,8 @@ public class MarketBillingSystem6 {
     // Ask for payment method
     System.out.print("Enter payment method (Cash, Transfer, POS): ");
     String paymentMethod = sc.nextLine();
-
-    // ----- ASCII LOGO -----
-    System.out.println("\n==================================================");
-    System.out.println("   ____        _ _ _                     ");
-    System.out.println("  / __ \\      | (_) |                    ");
-    System.out.println(" | |  | |_ __ | |_| |_ _   _ _ __ ___    ");
-    System.out.println(" | |  | | '_ \\| | | __| | | | '_ ` _ \\   ");
-    System.out.println(" | |__| | | | | | | |_| |_| | | | | | |  ");
-    System.out.println("  \\____/|_| |_|_|_|\\__|\\__,_|_| |_| |_|  ");
-    System.out.println("        ONITUWO ENTERPRISE STORE          ");
-    System.out.println("==================================================");
-
-    // Store address and contact
-    System.out.println("Address: No. 15 Ilorin Road, Offa, Kwara State");
-    System.out.println("Phone: 08123456789 | 09098765432");
-    System.out.println("==================================================");
-
-    // Auto generate receipt number
-    String receiptNumber2 = "REC" + System.currentTimeMillis();
-    System.out.println("Receipt No: " + receiptNumber2);
-    System.out.println("Cashier: " + currentCashier);
-    System.out.println("Payment Method: " + paymentMethod);
-    System.out.println("Date: " + java.time.LocalDateTime.now());
-    System.out.println("--------------------------------------------------");
-
-    // ----- ITEMS SECTION -----
-    double sum2 = 0;
-    for (Item i : cart) {
-        System.out.println(i.name + "   x" + i.qty + "   ₦" + i.total());
-        sum2 += i.total();
-    }
-
-    System.out.println("--------------------------------------------------");
-    System.out.println("GRAND TOTAL: ₦" + sum2);
-    System.out.println("--------------------------------------------------");
-
-    // ----- FOOTER -----
-    System.out.println("Thank you for shopping at Onituwo Enterprise!");
-    System.out.println("Please come again ❤️");
-    System.out.println("==================================================\n");
+    printReceipt(cart, paymentMethod);
+    SALES.checkout();
     break;
 
 
@@ -231,6 +253,7 @@ public class MarketBillingSystem6 {
                     break;
 
                 case 5:
+                    SALES.close();
                     System.out.println("Goodbye!");
                     System.exit(0);
                     break;
@@ -0,0 +1,221 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, latency histograms and I/O byte counts for the hot paths of the
+ * bank and the billing systems.
+ *
+ * Each instrumented operation is an Op held in a static field of the class
+ * that runs it, e.g.
+ *   static final Metrics.Op TRANSFER = Metrics.op("bank.transfer");
+ *   long t0 = TRANSFER.start();
+ *   ...
+ *   TRANSFER.stop(t0);            // or stop(t0, bytesWritten), failed(t0)
+ * An Op counts calls and failures, adds up bytes and keeps a log-linear
+ * latency histogram in the style of HdrHistogram: exact below 64 ns, then 32
+ * sub-buckets per power of two (about 3% precision) up to roughly 36 minutes,
+ * in one fixed array of atomic counters. Recording is a handful of atomic
+ * adds with no allocation or locking.
+ *
+ * Off unless -Dbank.metrics=true. ENABLED is a constant, so when it is off
+ * start() and stop() reduce to a test the JIT folds away.
+ *
+ * When on, the report (admin dashboard, or report()) is also written every
+ * bank.metrics.dumpSeconds (default 60; 0 = never) to bank.metrics.file
+ * (default metrics.txt), replaced atomically, and once more at exit.
+ */
+final class Metrics {
+
+    static final boolean ENABLED = Boolean.getBoolean("bank.metrics");
+
+    private static final Map<String, Op> ops = new ConcurrentHashMap<>();
+    private static final long startedAt = System.currentTimeMillis();
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    static {
+        if (ENABLED) startDumps();
+    }
+
+    private Metrics() { }
+
+    /** The op with this name, created on first use. Names sort into report sections: "bank.", "io.", "billing.". */
+    static Op op(String name) {
+        return ops.computeIfAbsent(name, Op::new);
+    }
+
+    static final class Op {
+        final String name;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private Op(String name) {
+            this.name = name;
+        }
+
+        /** Start time to hand to stop(); 0 when metrics are off. */
+        long start() {
+            return ENABLED ? System.nanoTime() : 0;
+        }
+
+        void stop(long t0) {
+            if (ENABLED) record(System.nanoTime() - t0);
+        }
+
+        /** Records the call and the bytes it read or wrote. */
+        void stop(long t0, long byteCount) {
+            if (!ENABLED) return;
+            record(System.nanoTime() - t0);
+            bytes.add(byteCount);
+        }
+
+        /** Records a call that ended in an error; its time still goes into the histogram. */
+        void failed(long t0) {
+            if (!ENABLED) return;
+            record(System.nanoTime() - t0);
+            failures.increment();
+        }
+
+        /** Bytes moved outside a timed call. */
+        void bytes(long byteCount) {
+            if (ENABLED) bytes.add(byteCount);
+        }
+
+        private void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            calls.increment();
+            totalNanos.add(nanos);
+            buckets.incrementAndGet(bucketOf(nanos));
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) max = maxNanos.get();
+        }
+
+        long calls() { return calls.sum(); }
+
+        /** Latency at quantile q (0..1) in nanoseconds: the top of the bucket holding it. */
+        long percentile(double q) {
+            long n = 0;
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) n += counts[i] = buckets.get(i);
+            if (n == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(highestIn(i), maxNanos.get());
+            }
+            return maxNanos.get();
+        }
+
+        void reset() {
+            calls.reset();
+            failures.reset();
+            bytes.reset();
+            totalNanos.reset();
+            maxNanos.set(0);
+            for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+        }
+    }
+
+    // ---------------- Histogram buckets ----------------
+    // 0..63 ns one bucket each; from 64 ns on, 32 buckets per power of two
+    private static final int LINEAR = 64, SUB = 32, SUB_BITS = 5, TOP_EXPONENT = 41;
+    private static final int BUCKETS = LINEAR + (TOP_EXPONENT - 6) * SUB;
+    private static final long MAX_TRACKED = (1L << TOP_EXPONENT) - 1;
+
+    static int bucketOf(long v) {
+        if (v < LINEAR) return (int) v;
+        if (v > MAX_TRACKED) v = MAX_TRACKED;
+        int e = 63 - Long.numberOfLeadingZeros(v); // 6..40
+        int sub = (int) (v >>> (e - SUB_BITS)) - SUB;
+        return LINEAR + (e - 6) * SUB + sub;
+    }
+
+    static long highestIn(int bucket) {
+        if (bucket < LINEAR) return bucket;
+        int e = (bucket - LINEAR) / SUB + 6;
+        long sub = (bucket - LINEAR) % SUB;
+        return ((SUB + sub + 1) << (e - SUB_BITS)) - 1;
+    }
+
+    // ---------------- Report ----------------
+    /** One line per op that has been called, sorted by name. */
+    static String report() {
+        StringBuilder sb = new StringBuilder(2048);
+        long up = (System.currentTimeMillis() - startedAt) / 1000;
+        sb.append("Metrics at ").append(LocalDateTime.now().format(TIME))
+                .append(" (").append(up).append(" s since start").append(ENABLED ? "" : "; off, run with -Dbank.metrics=true")
+                .append(")\n");
+        sb.append(String.format("%-26s %10s %7s %9s %9s %9s %9s %9s %9s %12s%n",
+                "operation", "calls", "failed", "mean", "p50", "p90", "p99", "p99.9", "max", "bytes"));
+        List<Op> sorted = new ArrayList<>(ops.values());
+        sorted.sort(Comparator.comparing(o -> o.name));
+        for (Op o : sorted) {
+            long n = o.calls();
+            if (n == 0 && o.bytes.sum() == 0) continue;
+            sb.append(String.format("%-26s %10d %7d %9s %9s %9s %9s %9s %9s %12s%n", o.name, n, o.failures.sum(),
+                    duration(n == 0 ? 0 : o.totalNanos.sum() / n), duration(o.percentile(0.50)),
+                    duration(o.percentile(0.90)), duration(o.percentile(0.99)), duration(o.percentile(0.999)),
+                    duration(o.maxNanos.get()), size(o.bytes.sum())));
+        }
+        return sb.toString();
+    }
+
+    static void resetAll() {
+        for (Op o : ops.values()) o.reset();
+    }
+
+    private static String duration(long nanos) {
+        if (nanos < 10_000) return nanos + "ns";
+        if (nanos < 10_000_000) return nanos / 1000 + "us";
+        if (nanos < 10_000_000_000L) return nanos / 1_000_000 + "ms";
+        return nanos / 1_000_000_000 + "s";
+    }
+
+    private static String size(long b) {
+        if (b < 10_000) return b + "B";
+        if (b < 10_000_000) return b / 1024 + "KiB";
+        return b / (1024 * 1024) + "MiB";
+    }
+
+    // ---------------- Dump file ----------------
+    private static void startDumps() {
+        long every = Long.getLong("bank.metrics.dumpSeconds", 60L);
+        if (every > 0) {
+            ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-dump");
+                t.setDaemon(true);
+                return t;
+            });
+            timer.scheduleAtFixedRate(Metrics::dumpQuietly, every, every, TimeUnit.SECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(Metrics::dumpQuietly, "metrics-final-dump"));
+    }
+
+    private static void dumpQuietly() {
+        try {
+            dump();
+        } catch (IOException e) {
+            System.err.println("Error writing metrics: " + e.getMessage());
+        }
+    }
+
+    /** Writes report() to bank.metrics.file through a temporary file, so readers never see half a report. */
+    static void dump() throws IOException {
+        Path target = Paths.get(System.getProperty("bank.metrics.file", "metrics.txt")).toAbsolutePath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.writeString(tmp, report(), StandardCharsets.UTF_8);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Money as a plain long count of kobo (1 naira = 100 kobo).
+ *
+ * Balances and totals are stored and added as longs, so sums are exact and
+ * nothing is boxed; parse() and format() work on the characters directly
+ * instead of going through Double or BigDecimal.
+ *
+ * Text form is the usual "1234.50" (always two decimals when formatted).
+ * parse() also reads what older files contain: "7485.0", "12", "-3.5" and
+ * scientific notation such as "1.2345E7" written by String.valueOf(double).
+ */
+final class Money {
+
+    static final long KOBO_PER_NAIRA = 100;
+
+    private Money() { }
+
+    /**
+     * Parses a naira amount into kobo. Digits past the second decimal are
+     * rounded half up.
+     *
+     * @throws NumberFormatException if s is not a number or does not fit in a long
+     */
+    static long parse(CharSequence s) {
+        int len = s.length();
+        int i = 0;
+        while (i < len && s.charAt(i) == ' ') i++;
+        while (len > i && s.charAt(len - 1) == ' ') len--;
+        if (i == len) throw new NumberFormatException("empty amount");
+
+        boolean negative = false;
+        char c = s.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+
+        long whole = 0;
+        int digits = 0;
+        for (; i < len && (c = s.charAt(i)) >= '0' && c <= '9'; i++, digits++) {
+            if (whole > (Long.MAX_VALUE / KOBO_PER_NAIRA - 10) / 10) throw new NumberFormatException("amount too large: " + s);
+            whole = whole * 10 + (c - '0');
+        }
+
+        long frac = 0;
+        int fracDigits = 0;
+        boolean roundUp = false;
+        if (i < len && s.charAt(i) == '.') {
+            for (i++; i < len && (c = s.charAt(i)) >= '0' && c <= '9'; i++, digits++) {
+                if (fracDigits < 2) frac = frac * 10 + (c - '0');
+                else if (fracDigits == 2) roundUp = c >= '5';
+                fracDigits++;
+            }
+        }
+        if (digits == 0) throw new NumberFormatException("not an amount: " + s);
+        if (i < len) {
+            c = s.charAt(i);
+            if (c == 'e' || c == 'E') return ofNaira(Double.parseDouble(s.toString().trim())); // rare, old files only
+            throw new NumberFormatException("not an amount: " + s);
+        }
+        if (fracDigits == 1) frac *= 10;
+
+        long kobo = whole * KOBO_PER_NAIRA + frac + (roundUp ? 1 : 0);
+        return negative ? -kobo : kobo;
+    }
+
+    static String format(long kobo) {
+        return appendTo(new StringBuilder(24), kobo).toString();
+    }
+
+    /** Appends kobo as "naira.kk" without creating intermediate strings. */
+    static StringBuilder appendTo(StringBuilder sb, long kobo) {
+        if (kobo < 0) {
+            sb.append('-');
+            if (kobo == Long.MIN_VALUE) return sb.append("92233720368547758.08");
+            kobo = -kobo;
+        }
+        long frac = kobo % KOBO_PER_NAIRA;
+        sb.append(kobo / KOBO_PER_NAIRA).append('.');
+        if (frac < 10) sb.append('0');
+        return sb.append(frac);
+    }
+
+    /** Converts a naira amount held as a double (e.g. a hard-coded price) to kobo. */
+    static long ofNaira(double naira) {
+        if (Double.isNaN(naira) || Math.abs(naira) > Long.MAX_VALUE / KOBO_PER_NAIRA) {
+            throw new NumberFormatException("not a representable amount: " + naira);
+        }
+        return Math.round(naira * KOBO_PER_NAIRA);
+    }
+
+    /** percent% of kobo, rounded to the nearest kobo (used for interest, discount and tax). */
+    static long percentOf(long kobo, double percent) {
+        return Math.round(kobo * (percent / 100.0));
+    }
+
+    /** kobo multiplied by a fractional quantity (litres, kg), rounded to the nearest kobo. */
+    static long times(long kobo, double quantity) {
+        return Math.round(kobo * quantity);
+    }
+}
@@ -0,0 +1,538 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Archive of issued receipts for the billing systems. It appends receipts to
+ * rolling segment files from a background thread, instead of writing one
+ * small file per receipt.
+ *
+ * submit() gives the receipt its ID and queues it, so the till never waits
+ * on the disk. The writer thread drains the queue in batches. It appends each
+ * receipt to the day's segment, receipts/receipts-<yyyyMMdd>-<NNN>.log:
+ *   --- R1792345678123 2026-10-17 19:53:33 ---
+ *   <receipt text>
+ * It adds one line per receipt to the segment's index, receipts-...idx:
+ *   key,epochMillis,offset,length
+ * and then flushes (and by default fsyncs) the batch, log before index.
+ * A segment is closed at midnight or when it reaches
+ * bank.receipts.segmentBytes (default 8 MiB). At startup, any log tail not
+ * covered by the index (a crash mid-batch) is cut off; after a failed batch
+ * the segment is cut back the same way before anything more is appended.
+ *
+ * IDs: the key is the submit time in epoch milliseconds, bumped past the
+ * last key issued or found on disk. IDs are therefore unique and increasing
+ * even in bursts or after a crash, and each one tells roughly when the
+ * receipt was made.
+ *
+ * Memory is bounded in three ways:
+ *  - Only the key and time range of each segment is kept. Lookups by ID or
+ *    by time read just the index files whose range matches.
+ *  - The queue holds at most bank.receipts.queue receipts (default 1024).
+ *  - Those receipts hold at most bank.receipts.queueBytes of text (default
+ *    16 MiB). In a burst beyond that, submit() waits for the writer.
+ * If a batch cannot be written, its receipts are saved as separate
+ * R<key>.txt files instead, and read() also looks there.
+ * bank.receipts.fsync=false leaves syncing to the OS.
+ */
+final class ReceiptArchive {
+
+    private static final Metrics.Op M_WRITE = Metrics.op("io.receipts.write");
+    private static final Metrics.Op M_SYNC = Metrics.op("io.receipts.fsync");
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Pattern SEGMENT = Pattern.compile("receipts-(\\d{8})-(\\d{3,})\\.idx");
+    private static final int MAX_BATCH = 256;
+
+    /** Where one archived receipt is. */
+    static final class Entry {
+        final String id;
+        final long epochMillis;
+        final Path file;
+        final long offset;
+        final int length;
+
+        private Entry(long key, long epochMillis, Path file, long offset, int length) {
+            this.id = id(key);
+            this.epochMillis = epochMillis;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        LocalDateTime time() {
+            return localTime(epochMillis);
+        }
+    }
+
+    private static final class Segment {
+        final String day;
+        final int number;
+        final Path log, idx;
+        // range of the receipts in the index, published by the writer after each batch
+        volatile long firstKey = Long.MAX_VALUE, lastKey = Long.MIN_VALUE;
+        volatile long firstMillis = Long.MAX_VALUE, lastMillis = Long.MIN_VALUE;
+        long size, idxSize; // committed bytes in the log and the index (writer thread)
+
+        Segment(Path dir, String day, int number) {
+            this.day = day;
+            this.number = number;
+            String base = String.format("receipts-%s-%03d", day, number);
+            this.log = dir.resolve(base + ".log");
+            this.idx = dir.resolve(base + ".idx");
+        }
+
+        void include(long key, long millis) {
+            if (key < firstKey) firstKey = key;
+            if (key > lastKey) lastKey = key;
+            if (millis < firstMillis) firstMillis = millis;
+            if (millis > lastMillis) lastMillis = millis;
+        }
+    }
+
+    // A queued receipt; with no text, a marker that flush() or close() waits on
+    private static final class Job {
+        final long key, millis;
+        final byte[] text;
+        final int permits; // bytes taken from the queue budget
+        final CountDownLatch done;
+        final boolean stop;
+        boolean archived;
+
+        Job(long key, long millis, byte[] text, int permits) {
+            this.key = key;
+            this.millis = millis;
+            this.text = text;
+            this.permits = permits;
+            this.done = null;
+            this.stop = false;
+        }
+
+        Job(boolean stop) {
+            this.key = this.millis = 0;
+            this.text = null;
+            this.permits = 0;
+            this.done = new CountDownLatch(1);
+            this.stop = stop;
+        }
+    }
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private final int maxQueuedBytes;
+    private final BlockingQueue<Job> queue;
+    private final Semaphore queuedBytes;
+    private final List<Segment> segments = new ArrayList<>(); // oldest first; guarded by itself
+    private final Thread writer;
+    private long lastKey; // guarded by this, like every put on the queue
+    private boolean closed;
+
+    // writer thread only
+    private Segment current;
+    private FileOutputStream logFile, idxFile;
+    private OutputStream log;
+    private final StringBuilder idxLines = new StringBuilder();
+    private final List<Job> uncommitted = new ArrayList<>();
+    private long appended; // log bytes of the uncommitted receipts
+
+    ReceiptArchive(Path dir, long segmentBytes, int queueCapacity, int maxQueuedBytes, boolean fsync) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queuedBytes = new Semaphore(maxQueuedBytes);
+        Files.createDirectories(dir);
+        recover();
+        writer = new Thread(this::run, "receipt-archive");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "receipt-archive-shutdown"));
+    }
+
+    static ReceiptArchive fromSystemProperties(Path dir) throws IOException {
+        return new ReceiptArchive(dir,
+                Long.getLong("bank.receipts.segmentBytes", 8L << 20),
+                Integer.getInteger("bank.receipts.queue", 1024),
+                Integer.getInteger("bank.receipts.queueBytes", 16 << 20),
+                Boolean.parseBoolean(System.getProperty("bank.receipts.fsync", "true")));
+    }
+
+    static String id(long key) {
+        return "R" + key;
+    }
+
+    /** The key of an ID ("R1792345678123", the R optional), or -1 if it is not one. */
+    static long key(String id) {
+        String s = id.trim();
+        if (s.startsWith("R") || s.startsWith("r")) s = s.substring(1);
+        if (s.isEmpty() || s.length() > 18) return -1;
+        for (int i = 0; i < s.length(); i++) if (s.charAt(i) < '0' || s.charAt(i) > '9') return -1;
+        return Long.parseLong(s);
+    }
+
+    // ---------------- Submitting ----------------
+    /** Queues the receipt and returns its ID; waits only if the queue is full. */
+    String submit(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int permits = Math.min(bytes.length, maxQueuedBytes);
+        queuedBytes.acquireUninterruptibly(permits);
+        synchronized (this) {
+            if (closed) {
+                queuedBytes.release(permits);
+                throw new IllegalStateException("receipt archive is closed");
+            }
+            long now = System.currentTimeMillis();
+            lastKey = Math.max(lastKey + 1, now);
+            put(new Job(lastKey, now, bytes, permits));
+            return id(lastKey);
+        }
+    }
+
+    /** Waits until every receipt submitted so far is written. */
+    void flush() {
+        Job marker = new Job(false);
+        synchronized (this) {
+            if (closed) return;
+            put(marker);
+        }
+        await(marker.done);
+    }
+
+    /** Writes what is queued and stops the writer; called at exit by a shutdown hook. */
+    void close() {
+        Job stop = new Job(true);
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            put(stop);
+        }
+        await(stop.done);
+    }
+
+    private void put(Job job) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(job);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void await(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                if (latch.await(100, TimeUnit.MILLISECONDS)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // ---------------- Lookup ----------------
+    /** The text of receipt id, or null if there is none. */
+    String read(String id) throws IOException {
+        long key = key(id);
+        if (key < 0) return null;
+        flush();
+        for (Segment s : snapshot()) {
+            if (key < s.firstKey || key > s.lastKey) continue;
+            for (long[] e : readIndex(s.idx)) {
+                if (e[0] == key) return readText(s.log, e[2], (int) e[3]);
+            }
+        }
+        Path loose = dir.resolve(id(key) + ".txt");
+        return Files.exists(loose) ? Files.readString(loose, StandardCharsets.UTF_8) : null;
+    }
+
+    /** Receipts made from from (inclusive) to to (exclusive), oldest first. */
+    List<Entry> between(LocalDateTime from, LocalDateTime to) throws IOException {
+        long lo = epochMillis(from), hi = epochMillis(to);
+        flush();
+        List<Entry> found = new ArrayList<>();
+        for (Segment s : snapshot()) {
+            if (s.lastMillis < lo || s.firstMillis >= hi) continue;
+            for (long[] e : readIndex(s.idx)) {
+                if (e[1] >= lo && e[1] < hi) found.add(new Entry(e[0], e[1], s.log, e[2], (int) e[3]));
+            }
+        }
+        found.sort(Comparator.comparingLong((Entry e) -> e.epochMillis).thenComparing(e -> e.id));
+        return found;
+    }
+
+    String read(Entry e) throws IOException {
+        return readText(e.file, e.offset, e.length);
+    }
+
+    private List<Segment> snapshot() {
+        synchronized (segments) {
+            return new ArrayList<>(segments);
+        }
+    }
+
+    private static String readText(Path file, long offset, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, offset + buf.position()) < 0) throw new EOFException("receipt cut short in " + file);
+            }
+        }
+        return new String(buf.array(), StandardCharsets.UTF_8);
+    }
+
+    // Complete, well-formed lines of an index: {key, millis, offset, length, end of line in the index}
+    private static List<long[]> readIndex(Path idx) throws IOException {
+        byte[] b;
+        try {
+            b = Files.readAllBytes(idx);
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+        List<long[]> entries = new ArrayList<>();
+        long[] e = new long[5];
+        int field = 0;
+        boolean digits = false, bad = false;
+        for (int i = 0; i < b.length; i++) {
+            byte c = b[i];
+            if (c >= '0' && c <= '9' && field < 4) {
+                e[field] = e[field] * 10 + (c - '0');
+                digits = true;
+            } else if (c == ',' && digits && field < 3) {
+                field++;
+                digits = false;
+            } else if (c == '\n') {
+                if (!bad && digits && field == 3) {
+                    e[4] = i + 1;
+                    entries.add(e);
+                }
+                e = new long[5];
+                field = 0;
+                digits = bad = false;
+            } else {
+                bad = true;
+            }
+        }
+        return entries;
+    }
+
+    // ---------------- Startup ----------------
+    // Finds the segments, cuts off unindexed log tails and notes the highest key issued
+    private void recover() throws IOException {
+        List<Segment> found = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "receipts-*.idx")) {
+            for (Path p : ds) {
+                Matcher m = SEGMENT.matcher(p.getFileName().toString());
+                if (m.matches()) found.add(new Segment(dir, m.group(1), Integer.parseInt(m.group(2))));
+            }
+        }
+        found.sort(Comparator.comparing((Segment s) -> s.day).thenComparingInt(s -> s.number));
+        for (Segment s : found) {
+            long logSize = Files.exists(s.log) ? Files.size(s.log) : 0;
+            long logEnd = 0, idxEnd = 0;
+            for (long[] e : readIndex(s.idx)) {
+                long end = e[2] + e[3] + 1;
+                if (end > logSize) break; // indexed but never reached the disk
+                s.include(e[0], e[1]);
+                logEnd = end;
+                idxEnd = e[4];
+            }
+            truncate(s.idx, idxEnd);
+            if (logSize > logEnd) truncate(s.log, logEnd);
+            s.size = logEnd;
+            s.idxSize = idxEnd;
+            if (s.lastKey > lastKey) lastKey = s.lastKey;
+        }
+        // receipts saved separately when a batch failed
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "R*.txt")) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                long k = key(name.substring(0, name.length() - 4));
+                if (k > lastKey) lastKey = k;
+            }
+        }
+        segments.addAll(found);
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        if (!Files.exists(file) || Files.size(file) <= size) return;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(size);
+        }
+    }
+
+    // ---------------- Writer thread ----------------
+    private void run() {
+        List<Job> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            boolean stop = write(batch);
+            batch.clear();
+            if (stop) return;
+        }
+    }
+
+    // Appends and commits one batch; true if it held the close() marker
+    private boolean write(List<Job> batch) {
+        boolean stop = false;
+        long t0 = M_WRITE.start(), bytes = 0;
+        try {
+            for (Job j : batch) {
+                if (j.text != null) bytes += append(j);
+                else if (j.stop) stop = true;
+            }
+            commit();
+            M_WRITE.stop(t0, bytes);
+        } catch (IOException e) {
+            M_WRITE.failed(t0);
+            System.out.println("Error archiving receipts: " + e.getMessage());
+            abandonBatch();
+            for (Job j : batch) if (j.text != null && !j.archived) saveSeparately(j);
+        }
+        if (stop) closeSegment();
+        for (Job j : batch) {
+            if (j.text != null) queuedBytes.release(j.permits);
+            else j.done.countDown();
+        }
+        return stop;
+    }
+
+    private long append(Job j) throws IOException {
+        LocalDateTime t = localTime(j.millis);
+        String day = t.format(DAY);
+        byte[] header = ("--- " + id(j.key) + " " + t.format(TIME) + " ---\n").getBytes(StandardCharsets.UTF_8);
+        long need = header.length + j.text.length + 1L;
+        long size = current == null ? 0 : current.size + appended;
+        if (current == null || !current.day.equals(day) || (size > 0 && size + need > segmentBytes)) roll(day);
+        long offset = current.size + appended + header.length;
+        log.write(header);
+        log.write(j.text);
+        log.write('\n');
+        appended += need;
+        idxLines.append(j.key).append(',').append(j.millis).append(',')
+                .append(offset).append(',').append(j.text.length).append('\n');
+        uncommitted.add(j);
+        return need;
+    }
+
+    // Makes the receipts appended since the last commit durable and findable
+    private void commit() throws IOException {
+        if (uncommitted.isEmpty()) return;
+        log.flush();
+        byte[] lines = idxLines.toString().getBytes(StandardCharsets.US_ASCII);
+        idxFile.write(lines);
+        if (fsync) {
+            long t0 = M_SYNC.start();
+            logFile.getFD().sync();
+            idxFile.getFD().sync();
+            M_SYNC.stop(t0);
+        }
+        for (Job j : uncommitted) {
+            current.include(j.key, j.millis);
+            j.archived = true;
+        }
+        current.size += appended;
+        current.idxSize += lines.length;
+        appended = 0;
+        uncommitted.clear();
+        idxLines.setLength(0);
+    }
+
+    // Commits the current segment and opens the next one for day
+    private void roll(String day) throws IOException {
+        commit();
+        Segment reuse = null;
+        int number = 1;
+        synchronized (segments) {
+            for (Segment s : segments) {
+                if (s.day.equals(day)) {
+                    number = Math.max(number, s.number + 1);
+                    reuse = s;
+                }
+            }
+            // after a restart, carry on with today's last segment if it has room
+            if (current != null || reuse == null || reuse.size >= segmentBytes) {
+                reuse = new Segment(dir, day, number);
+                segments.add(reuse);
+            }
+        }
+        closeSegment();
+        // anything past the committed sizes was never indexed, or was left by a failed batch
+        truncate(reuse.log, reuse.size);
+        truncate(reuse.idx, reuse.idxSize);
+        current = reuse;
+        logFile = new FileOutputStream(current.log.toFile(), true);
+        log = new BufferedOutputStream(logFile, 1 << 16);
+        idxFile = new FileOutputStream(current.idx.toFile(), true);
+    }
+
+    private void closeSegment() {
+        if (current == null) return;
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.out.println("Error closing receipt segment: " + e.getMessage());
+        }
+        try {
+            idxFile.close();
+        } catch (IOException ignored) {
+        }
+        current = null;
+        appended = 0;
+        uncommitted.clear();
+        idxLines.setLength(0);
+    }
+
+    // After a failed batch: closes the segment and cuts it back to what was committed, so
+    // that neither the failed receipts nor a torn index line are found there later
+    private void abandonBatch() {
+        Segment s = current;
+        closeSegment();
+        if (s == null) return;
+        try {
+            truncate(s.log, s.size);
+            truncate(s.idx, s.idxSize);
+        } catch (IOException e) {
+            // roll() tries again before the segment is next appended to, and recover() at startup
+            System.out.println("Error trimming receipt segment: " + e.getMessage());
+        }
+    }
+
+    private void saveSeparately(Job j) {
+        Path p = dir.resolve(id(j.key) + ".txt");
+        try {
+            Files.write(p, j.text, StandardOpenOption.CREATE_NEW);
+            j.archived = true;
+        } catch (IOException e) {
+            System.out.println("Receipt " + id(j.key) + " could not be saved: " + e.getMessage());
+        }
+    }
+
+    private static LocalDateTime localTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    private static long epochMillis(LocalDateTime t) {
+        return t.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
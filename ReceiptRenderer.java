@@ -0,0 +1,340 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds receipt text in one reusable char buffer, for the billing systems.
+ *
+ * Fixed-width rows come from a Template compiled once from a printf-like
+ * pattern such as "%-20.20s %6s %8s": "%Ws" right-aligns a cell in W
+ * columns, "%-Ws" left-aligns it, and a precision ("%-20.20s") cuts longer
+ * text to that many characters ending in "...". Longer cells without a
+ * precision overflow, as with String.format. Cells are then filled one by
+ * one straight into the buffer:
+ *   r.row(layout.item).cell(name).quantityCell(qty, false).moneyCell(total);
+ * Amounts, quantities and dates are written digit by digit, so after the
+ * buffer has grown to fit the largest receipt, rendering allocates nothing.
+ * The result goes out in one write to a Writer, as UTF-8 into a ByteBuffer
+ * (e.g. a printer's transfer buffer), or as a String.
+ *
+ * A renderer is not thread-safe; keep one per thread (see MarketBillingSystem).
+ * Layout gives the receipt widths: the console/file layout of the original
+ * receipts and 58 mm and 80 mm thermal printer widths, picked with
+ * -Dbank.receipt.layout=console|58mm|80mm.
+ */
+final class ReceiptRenderer {
+
+    // ---------------- Templates ----------------
+    static final class Template {
+        private final String[] literals; // before each field, plus one after the last
+        private final int[] widths, precisions;
+        private final boolean[] left;
+
+        private Template(List<String> literals, List<int[]> fields) {
+            this.literals = literals.toArray(new String[0]);
+            widths = new int[fields.size()];
+            precisions = new int[fields.size()];
+            left = new boolean[fields.size()];
+            for (int i = 0; i < fields.size(); i++) {
+                left[i] = fields.get(i)[0] == 1;
+                widths[i] = fields.get(i)[1];
+                precisions[i] = fields.get(i)[2];
+            }
+        }
+
+        /** Compiles pattern: literal text and %[-]W[.P]s fields. */
+        static Template compile(String pattern) {
+            List<String> literals = new ArrayList<>();
+            List<int[]> fields = new ArrayList<>();
+            StringBuilder lit = new StringBuilder();
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c != '%') {
+                    lit.append(c);
+                    continue;
+                }
+                int j = i + 1;
+                boolean leftAlign = j < pattern.length() && pattern.charAt(j) == '-';
+                if (leftAlign) j++;
+                int width = 0, precision = 0;
+                while (j < pattern.length() && Character.isDigit(pattern.charAt(j))) width = width * 10 + pattern.charAt(j++) - '0';
+                if (j < pattern.length() && pattern.charAt(j) == '.') {
+                    j++;
+                    while (j < pattern.length() && Character.isDigit(pattern.charAt(j))) precision = precision * 10 + pattern.charAt(j++) - '0';
+                    if (precision < 4) throw new IllegalArgumentException("precision must be at least 4: " + pattern);
+                }
+                if (j >= pattern.length() || pattern.charAt(j) != 's') {
+                    throw new IllegalArgumentException("expected %[-]W[.P]s at " + i + " in " + pattern);
+                }
+                literals.add(lit.toString());
+                lit.setLength(0);
+                fields.add(new int[] { leftAlign ? 1 : 0, width, precision });
+                i = j;
+            }
+            literals.add(lit.toString());
+            return new Template(literals, fields);
+        }
+    }
+
+    /** The templates and widths of one kind of output. */
+    static final class Layout {
+        final String name;
+        final int width;          // rule lines and free text
+        final Template item;      // name, quantity, amount
+        final Template header;    // the column titles, same widths as item
+        final Template total;     // label, amount
+        final Template discount;  // label, (negative) amount
+
+        Layout(String name, int width, String item, String total, String discount) {
+            this.name = name;
+            this.width = width;
+            this.item = Template.compile(item);
+            this.header = Template.compile(item.replaceAll("\\.\\d+s", "s"));
+            this.total = Template.compile(total);
+            this.discount = Template.compile(discount);
+        }
+
+        // The original MarketBillingSystem receipt, column for column
+        static final Layout CONSOLE = new Layout("console", 31, "%-20.20s %6s %8s", "%-20s %14s", "%-20s %13s");
+        static final Layout THERMAL_58MM = new Layout("58mm", 32, "%-15.15s %6s %9s", "%-18s %13s", "%-18s %13s");
+        static final Layout THERMAL_80MM = new Layout("80mm", 48, "%-28.28s %8s %10s", "%-30s %17s", "%-30s %17s");
+
+        static Layout fromSystemProperties() {
+            return switch (System.getProperty("bank.receipt.layout", "console").trim().toLowerCase(Locale.ROOT)) {
+                case "58mm", "58" -> THERMAL_58MM;
+                case "80mm", "80" -> THERMAL_80MM;
+                default -> CONSOLE;
+            };
+        }
+    }
+
+    // ---------------- Buffer ----------------
+    private char[] buf = new char[1024];
+    private int pos;
+    private Template row;   // row being filled, null between rows
+    private int field, cellStart;
+    private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder();
+
+    /** Empties the buffer for the next receipt (its capacity is kept). */
+    ReceiptRenderer reset() {
+        pos = 0;
+        row = null;
+        return this;
+    }
+
+    int length() { return pos; }
+
+    private void ensure(int more) {
+        if (pos + more > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + more));
+    }
+
+    ReceiptRenderer text(CharSequence s) {
+        int n = s.length();
+        ensure(n);
+        if (s instanceof String str) {
+            str.getChars(0, n, buf, pos);
+            pos += n;
+        } else {
+            for (int i = 0; i < n; i++) buf[pos++] = s.charAt(i);
+        }
+        return this;
+    }
+
+    ReceiptRenderer text(char c) {
+        ensure(1);
+        buf[pos++] = c;
+        return this;
+    }
+
+    ReceiptRenderer newline() {
+        return text('\n');
+    }
+
+    ReceiptRenderer line(CharSequence s) {
+        return text(s).newline();
+    }
+
+    /** n copies of c, then a newline. */
+    ReceiptRenderer rule(char c, int n) {
+        ensure(n + 1);
+        for (int i = 0; i < n; i++) buf[pos++] = c;
+        buf[pos++] = '\n';
+        return this;
+    }
+
+    ReceiptRenderer number(long v) {
+        if (v < 0) {
+            if (v == Long.MIN_VALUE) return text(Long.toString(v));
+            text('-');
+            v = -v;
+        }
+        ensure(19);
+        int start = pos;
+        do {
+            buf[pos++] = (char) ('0' + v % 10);
+            v /= 10;
+        } while (v > 0);
+        reverse(start, pos - 1);
+        return this;
+    }
+
+    /** kobo as "naira.kk", as Money.format writes it. */
+    ReceiptRenderer money(long kobo) {
+        if (kobo == Long.MIN_VALUE) return text(Money.format(kobo));
+        if (kobo < 0) {
+            text('-');
+            kobo = -kobo;
+        }
+        number(kobo / Money.KOBO_PER_NAIRA);
+        long frac = kobo % Money.KOBO_PER_NAIRA;
+        ensure(3);
+        buf[pos++] = '.';
+        buf[pos++] = (char) ('0' + frac / 10);
+        buf[pos++] = (char) ('0' + frac % 10);
+        return this;
+    }
+
+    /**
+     * v with two decimals, exactly as "%.2f" prints it. %.2f rounds the
+     * decimal form of v half up (1.005 gives "1.01"), which v * 100 can miss,
+     * so values that land near a half hundredth, and large ones, go through
+     * String.format itself.
+     */
+    ReceiptRenderer decimal2(double v) {
+        double scaled = Math.abs(v) * 100;
+        if (!(scaled < 1e9) || Math.abs(scaled - Math.floor(scaled) - 0.5) < 1e-6) return text(String.format("%.2f", v));
+        if (v < 0 || (v == 0 && 1 / v < 0)) text('-'); // "-0.00" included, as %.2f prints it
+        return money(Math.round(scaled));
+    }
+
+    /** v as Double.toString prints it ("5.0", "12.5"); whole numbers without building a String. */
+    ReceiptRenderer plain(double v) {
+        if (v == Math.rint(v) && Math.abs(v) < 1e7 && !(v == 0 && 1 / v < 0)) return number((long) v).text(".0");
+        return text(Double.toString(v));
+    }
+
+    /** "yyyy-MM-dd HH:mm:ss". */
+    ReceiptRenderer dateTime(LocalDateTime t) {
+        pad(t.getYear(), 4).text('-');
+        pad(t.getMonthValue(), 2).text('-');
+        pad(t.getDayOfMonth(), 2).text(' ');
+        pad(t.getHour(), 2).text(':');
+        pad(t.getMinute(), 2).text(':');
+        return pad(t.getSecond(), 2);
+    }
+
+    private ReceiptRenderer pad(int v, int digits) {
+        ensure(digits);
+        for (int i = digits - 1; i >= 0; i--) {
+            buf[pos + i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        pos += digits;
+        return this;
+    }
+
+    private void reverse(int i, int j) {
+        while (i < j) {
+            char t = buf[i];
+            buf[i++] = buf[j];
+            buf[j--] = t;
+        }
+    }
+
+    // ---------------- Rows ----------------
+    /** Starts a row of t; fill it with one cell call per field. The row ends itself after the last. */
+    ReceiptRenderer row(Template t) {
+        if (row != null) throw new IllegalStateException("previous row not complete");
+        row = t;
+        field = 0;
+        beginCell();
+        return this;
+    }
+
+    ReceiptRenderer cell(CharSequence s) {
+        text(s);
+        return endCell();
+    }
+
+    ReceiptRenderer moneyCell(long kobo) {
+        money(kobo);
+        return endCell();
+    }
+
+    /** Quantity with two decimals, with an "L" after it for litres. */
+    ReceiptRenderer quantityCell(double qty, boolean litres) {
+        decimal2(qty);
+        if (litres) text('L');
+        return endCell();
+    }
+
+    private void beginCell() {
+        text(row.literals[field]);
+        cellStart = pos;
+    }
+
+    /** Ends a cell written with text()/number()/money() calls, e.g. a label with a figure in it. */
+    ReceiptRenderer endCell() {
+        if (row == null) throw new IllegalStateException("no row started");
+        int len = pos - cellStart;
+        int precision = row.precisions[field], width = row.widths[field];
+        if (precision > 0 && len > precision) {
+            pos = cellStart + precision - 3;
+            text("...");
+            len = precision;
+        }
+        if (len < width) {
+            int padding = width - len;
+            ensure(padding);
+            if (row.left[field]) {
+                for (int i = 0; i < padding; i++) buf[pos++] = ' ';
+            } else {
+                System.arraycopy(buf, cellStart, buf, cellStart + padding, len);
+                for (int i = 0; i < padding; i++) buf[cellStart + i] = ' ';
+                pos += padding;
+            }
+        }
+        if (++field < row.widths.length) {
+            beginCell();
+        } else {
+            text(row.literals[field]).newline();
+            row = null;
+        }
+        return this;
+    }
+
+    // ---------------- Output ----------------
+    void writeTo(Writer out) throws IOException {
+        out.write(buf, 0, pos);
+    }
+
+    /** Prints the receipt in the stream's own encoding (one String, where a Writer needs none). */
+    void writeTo(PrintStream out) {
+        out.append(CharBuffer.wrap(buf, 0, pos));
+        out.flush();
+    }
+
+    /** Encodes the receipt as UTF-8 into out; throws BufferOverflowException if it does not fit. */
+    void writeTo(ByteBuffer out) {
+        utf8.reset();
+        CoderResult r = utf8.encode(CharBuffer.wrap(buf, 0, pos), out, true);
+        if (r.isOverflow()) throw new BufferOverflowException();
+        utf8.flush(out);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, pos);
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Background writer for the daily sales files (sales_<yyyy-MM-dd>.csv) of
+ * the market billing systems.
+ *
+ * record() puts a sale line on a bounded queue and returns at once, so the
+ * cashier never waits on the disk. It only waits if bank.sales.queue lines
+ * (default 4096) are already queued because the disk has fallen far behind.
+ *
+ * One writer thread keeps the day's file open. It collects lines in memory
+ * and appends them in one write every bank.sales.flushMs (default 1000), or
+ * soon after checkout() at the end of a sale. Each line goes to the file of
+ * the day it was recorded, even if it is written after midnight. The day's
+ * file is closed on the first tick after midnight. flush() waits until
+ * everything recorded so far is in the file (the daily report calls it
+ * before reading); close() does the same at exit.
+ *
+ * If a write fails, the lines are kept and retried on the next tick.
+ * Meanwhile new sales wait in the queue, and flush() gives up after
+ * bank.sales.waitMs (default 5000).
+ * The files use the platform charset, as FileWriter did before.
+ */
+final class SalesLog {
+
+    private static final Metrics.Op M_WRITE = Metrics.op("io.sales.write");
+    private static final int MAX_BATCH = 512;
+
+    // A sale line; with no line, a marker asking for a flush
+    private static final class Sale {
+        final LocalDate day;
+        final String line;
+        final CountDownLatch done;
+        final boolean stop;
+
+        Sale(LocalDate day, String line) {
+            this.day = day;
+            this.line = line;
+            this.done = null;
+            this.stop = false;
+        }
+
+        Sale(boolean wait, boolean stop) {
+            this.day = null;
+            this.line = null;
+            this.done = wait ? new CountDownLatch(1) : null;
+            this.stop = stop;
+        }
+    }
+
+    private final Path dir;
+    private final long flushNanos, waitMillis;
+    private final BlockingQueue<Sale> queue;
+    private final Thread writer;
+    private boolean closed; // guarded by this, like every put on the queue
+
+    // writer thread only
+    private final List<Sale> pending = new ArrayList<>();
+    private LocalDate openDay;
+    private Writer out;
+
+    SalesLog(Path dir, int queueCapacity, long flushMillis, long waitMillis) {
+        this.dir = dir;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.waitMillis = waitMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        writer = new Thread(this::run, "sales-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "sales-shutdown"));
+    }
+
+    /** Writes sales_<date>.csv in the working directory, as before. */
+    static SalesLog fromSystemProperties() {
+        return new SalesLog(Paths.get(""),
+                Integer.getInteger("bank.sales.queue", 4096),
+                Long.getLong("bank.sales.flushMs", 1000L),
+                Long.getLong("bank.sales.waitMs", 5000L));
+    }
+
+    static Path fileFor(Path dir, LocalDate day) {
+        return dir.resolve("sales_" + day + ".csv");
+    }
+
+    Path today() {
+        return fileFor(dir, LocalDate.now());
+    }
+
+    // ---------------- Callers ----------------
+    /** Queues one line (without line separator) for today's file. */
+    void record(String line) {
+        Sale s = new Sale(LocalDate.now(), line);
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("sales log is closed");
+            put(s);
+        }
+    }
+
+    /** Asks for what is queued to be written now, without waiting for it. */
+    void checkout() {
+        synchronized (this) {
+            if (!closed) queue.offer(new Sale(false, false)); // if full, the writer is busy anyway
+        }
+    }
+
+    /** Waits until every line recorded so far is in the file; false if that took over bank.sales.waitMs. */
+    boolean flush() {
+        Sale marker = new Sale(true, false);
+        synchronized (this) {
+            if (closed) return true;
+            put(marker);
+        }
+        return await(marker.done);
+    }
+
+    /** Writes what is queued and stops the writer; called at exit by a shutdown hook. */
+    void close() {
+        Sale stop = new Sale(true, true);
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            put(stop);
+        }
+        await(stop.done);
+    }
+
+    private void put(Sale s) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(s);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private boolean await(CountDownLatch done) {
+        try {
+            return done.await(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // ---------------- Writer thread ----------------
+    private void run() {
+        List<Sale> batch = new ArrayList<>(MAX_BATCH);
+        List<CountDownLatch> waiting = new ArrayList<>();
+        long nextTick = System.nanoTime() + flushNanos;
+        boolean flushNow = false, stop = false, failing = false;
+        while (true) {
+            if (!failing) {
+                long wait = nextTick - System.nanoTime();
+                if (!flushNow && wait > 0) {
+                    try {
+                        Sale first = queue.poll(wait, TimeUnit.NANOSECONDS);
+                        if (first != null) batch.add(first);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                queue.drainTo(batch, MAX_BATCH - batch.size());
+                for (Sale s : batch) {
+                    if (s.line != null) {
+                        pending.add(s);
+                    } else {
+                        flushNow = true;
+                        if (s.done != null) waiting.add(s.done);
+                        stop |= s.stop;
+                    }
+                }
+                batch.clear();
+            }
+
+            boolean tick = System.nanoTime() - nextTick >= 0;
+            if (failing || flushNow || tick || pending.size() >= MAX_BATCH) {
+                boolean ok = writePending();
+                failing = !ok;
+                if (tick) {
+                    nextTick = System.nanoTime() + flushNanos;
+                    if (ok && openDay != null && !openDay.equals(LocalDate.now())) closeFile(); // midnight
+                }
+                if (ok) {
+                    for (CountDownLatch d : waiting) d.countDown();
+                    waiting.clear();
+                    flushNow = false;
+                    if (stop) {
+                        closeFile();
+                        return;
+                    }
+                } else {
+                    // keep the lines and stop draining the queue until the next tick
+                    sleepNanos(nextTick - System.nanoTime());
+                }
+            }
+        }
+    }
+
+    // Appends the pending lines to their days' files; false (lines kept) if a write failed
+    private boolean writePending() {
+        int written = 0;
+        long t0 = M_WRITE.start(), chars = 0;
+        try {
+            StringBuilder sb = new StringBuilder(4096);
+            while (written < pending.size()) {
+                LocalDate day = pending.get(written).day;
+                int end = written;
+                sb.setLength(0);
+                while (end < pending.size() && pending.get(end).day.equals(day)) {
+                    sb.append(pending.get(end++).line).append('\n');
+                }
+                open(day);
+                out.write(sb.toString());
+                out.flush();
+                chars += sb.length();
+                written = end;
+            }
+            if (written > 0) M_WRITE.stop(t0, chars);
+            pending.clear();
+            return true;
+        } catch (IOException e) {
+            M_WRITE.failed(t0);
+            System.out.println("Error saving sales report: " + e.getMessage());
+            pending.subList(0, written).clear();
+            closeFile(); // reopened on the next try
+            return false;
+        }
+    }
+
+    private void open(LocalDate day) throws IOException {
+        if (out != null && day.equals(openDay)) return;
+        closeFile();
+        out = new OutputStreamWriter(new FileOutputStream(fileFor(dir, day).toFile(), true), Charset.defaultCharset());
+        openDay = day;
+    }
+
+    private void closeFile() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.out.println("Error closing sales file: " + e.getMessage());
+        }
+        out = null;
+        openDay = null;
+    }
+
+    private static void sleepNanos(long nanos) {
+        if (nanos <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Where AdvancedBankSystem3 keeps its per-account files: flat in the working
+ * directory (the original layout) or spread over hashed shard directories.
+ *
+ * With N shards, account number A belongs to shard hash(A) mod N, and that
+ * shard's directory shards<N>/<shard in hex>/ holds the shard's part of the
+ * account snapshot (accounts.csv or accounts.bin) and the
+ * transactions_<A>.csv files of its accounts. No directory grows past
+ * roughly (accounts / N) files, and the snapshot parts can be loaded and
+ * written in parallel (see ShardedAccountStore). The journal stays a single
+ * file in the working directory, so a transfer between shards is still one
+ * atomic commit.
+ *
+ * The shard count is recorded in shards.layout ("shards=N"); no file means
+ * the flat layout. It changes only through an offline rebalance, run while
+ * the bank is stopped:
+ *   java ShardLayout 64      (move to 64 shards; 0 = back to the flat layout)
+ * The rebalance loads the book (recovering the journal if needed), writes
+ * the snapshot into the new tree, hard-links every transaction file into
+ * its new place (copying where links are not possible), switches
+ * shards.layout atomically, and only then removes the old files. A crash
+ * before the switch leaves the old layout untouched.
+ */
+final class ShardLayout {
+
+    static final String LAYOUT_FILE = "shards.layout";
+
+    final int shards; // 0 = flat
+    private final int hexDigits;
+
+    ShardLayout(int shards) {
+        if (shards < 0 || shards > 4096) throw new IllegalArgumentException("shard count must be 0..4096");
+        this.shards = shards;
+        this.hexDigits = shards <= 1 ? 1 : (Integer.toHexString(shards - 1).length());
+    }
+
+    /** The layout recorded in shards.layout (flat if there is none). */
+    static ShardLayout current() {
+        Path p = Paths.get(LAYOUT_FILE);
+        if (!Files.exists(p)) return new ShardLayout(0);
+        try {
+            for (String line : Files.readAllLines(p, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.startsWith("shards=")) return new ShardLayout(Integer.parseInt(line.substring(7).trim()));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("unreadable " + LAYOUT_FILE + ": " + e.getMessage(), e);
+        }
+        throw new IllegalStateException(LAYOUT_FILE + " has no shards= line");
+    }
+
+    boolean flat() { return shards == 0; }
+
+    int shardOf(String accNo) {
+        int h = accNo.hashCode();
+        h ^= h >>> 16;
+        h *= 0x45d9f3b; // spread sequential account numbers
+        h ^= h >>> 16;
+        return Math.floorMod(h, shards);
+    }
+
+    /** Root of this layout's tree; "." for the flat layout. */
+    String root() {
+        return flat() ? "." : "shards" + shards;
+    }
+
+    /** Directory of one shard, e.g. shards64/3f. */
+    String dir(int shard) {
+        String hex = Integer.toHexString(shard);
+        while (hex.length() < hexDigits) hex = "0" + hex;
+        return root() + File.separator + hex;
+    }
+
+    /** Transaction log file of an account in this layout. */
+    String txFile(String accNo) {
+        String name = "transactions_" + accNo + ".csv";
+        return flat() ? name : dir(shardOf(accNo)) + File.separator + name;
+    }
+
+    /** Creates the shard directories (harmless if they exist). */
+    void createDirectories() throws IOException {
+        for (int s = 0; s < shards; s++) Files.createDirectories(Paths.get(dir(s)));
+    }
+
+    // ---------------- Offline rebalance ----------------
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: java ShardLayout <shard count>   (0 = flat layout; stop the bank first)");
+            return;
+        }
+        if (!AdvancedBankSystem3.lockDataDirectory()) return;
+        ShardLayout to = new ShardLayout(Integer.parseInt(args[0].trim()));
+        ShardLayout from = current();
+        if (to.shards == from.shards) {
+            System.out.println("Already using " + describe(from) + ".");
+            return;
+        }
+        long start = System.nanoTime();
+
+        // the book as of now, journal replayed (and recovered) by the usual startup path
+        AdvancedBankSystem3.loadAccounts();
+        List<AdvancedBankSystem3.BankAccount> all = AdvancedBankSystem3.accountsSnapshot();
+        AdvancedBankSystem3.txLog.closeAll();
+
+        // 1. new tree: snapshot parts and transaction files, next to the old tree
+        to.createDirectories();
+        AccountStore newStore = AccountStore.forLayout(to);
+        newStore.save(all);
+        int moved = 0;
+        for (AdvancedBankSystem3.BankAccount a : all) {
+            Path src = Paths.get(from.txFile(a.accountNumber));
+            if (!Files.exists(src)) continue;
+            Path dst = Paths.get(to.txFile(a.accountNumber));
+            Files.deleteIfExists(dst); // left over from an earlier interrupted rebalance
+            try {
+                Files.createLink(dst, src);
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(src, dst, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            moved++;
+        }
+
+        // 2. switch: from here on the new tree is the book
+        if (to.flat()) {
+            Files.deleteIfExists(Paths.get(LAYOUT_FILE));
+        } else {
+            AccountStore.replaceAtomically(LAYOUT_FILE, tmp -> {
+                try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+                    out.write(("shards=" + to.shards + "\n").getBytes(StandardCharsets.US_ASCII));
+                    out.getFD().sync();
+                }
+            });
+        }
+
+        // 3. old files
+        for (AdvancedBankSystem3.BankAccount a : all) {
+            String old = from.txFile(a.accountNumber);
+            Files.deleteIfExists(Paths.get(old));
+            Files.deleteIfExists(Paths.get(TransactionHistory.indexFile(old))); // rebuilt on demand
+        }
+        if (from.flat()) {
+            Files.deleteIfExists(Paths.get(AdvancedBankSystem3.ACCOUNTS_FILE));
+            Files.deleteIfExists(Paths.get(BinaryAccountStore.DEFAULT_FILE));
+        } else {
+            deleteTree(Paths.get(from.root()));
+        }
+        System.out.printf("Rebalanced %d accounts (%d transaction files) from %s to %s in %d ms%n", all.size(), moved,
+                describe(from), describe(to), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static String describe(ShardLayout l) {
+        return l.flat() ? "the flat layout" : l.shards + " shards";
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        try (Stream<Path> walk = Files.walk(root)) {
+            List<Path> paths = new ArrayList<>();
+            walk.forEach(paths::add);
+            Collections.reverse(paths); // children before their directory
+            for (Path p : paths) Files.deleteIfExists(p);
+        }
+    }
+}
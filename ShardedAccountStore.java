@@ -0,0 +1,106 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Account snapshot split over the shard directories of a ShardLayout: each
+ * shard keeps its own accounts.csv or accounts.bin (per bank.store) holding
+ * only the accounts that hash to it.
+ *
+ * Loading reads all shards at once on a small pool (bank.shards.loadThreads,
+ * default: one per processor, at most the shard count), so startup is bound
+ * by the disk rather than by parsing one big file on one thread. The sink is
+ * still called on the caller's thread, shard by shard, so callers need no
+ * locking. Saving partitions the accounts by shard and writes the parts in
+ * parallel, each replaced atomically on its own.
+ *
+ * A save is per shard atomic, not across shards; that is enough because the
+ * journal is only reset after every shard has been written, and replaying it
+ * over a mix of old and new parts gives the same book.
+ */
+final class ShardedAccountStore implements AccountStore {
+
+    private final ShardLayout layout;
+    private final AccountStore[] parts;
+    private final int threads;
+
+    ShardedAccountStore(ShardLayout layout, IntFunction<AccountStore> part) {
+        if (layout.flat()) throw new IllegalArgumentException("flat layout has no shards");
+        this.layout = layout;
+        try {
+            layout.createDirectories(); // transaction logs are opened straight into them
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.parts = new AccountStore[layout.shards];
+        for (int s = 0; s < parts.length; s++) parts[s] = part.apply(s);
+        this.threads = Math.max(1, Math.min(layout.shards,
+                Integer.getInteger("bank.shards.loadThreads", Runtime.getRuntime().availableProcessors())));
+    }
+
+    @Override
+    public String fileName() {
+        return layout.root() + File.separator + "*" + File.separator + new File(parts[0].fileName()).getName();
+    }
+
+    @Override
+    public void load(Consumer<AdvancedBankSystem3.BankAccount> sink) throws IOException {
+        List<List<AdvancedBankSystem3.BankAccount>> loaded = runAll(s -> {
+            List<AdvancedBankSystem3.BankAccount> list = new ArrayList<>();
+            parts[s].load(list::add);
+            return list;
+        });
+        for (List<AdvancedBankSystem3.BankAccount> shard : loaded) shard.forEach(sink);
+    }
+
+    @Override
+    public void save(Collection<AdvancedBankSystem3.BankAccount> accounts) throws IOException {
+        List<List<AdvancedBankSystem3.BankAccount>> byShard = new ArrayList<>(parts.length);
+        int expected = accounts.size() / parts.length + 16;
+        for (int s = 0; s < parts.length; s++) byShard.add(new ArrayList<>(expected));
+        for (AdvancedBankSystem3.BankAccount a : accounts) byShard.get(layout.shardOf(a.accountNumber)).add(a);
+        runAll(s -> {
+            parts[s].save(byShard.get(s));
+            return null;
+        });
+    }
+
+    private interface ShardTask<T> {
+        T run(int shard) throws IOException;
+    }
+
+    // Runs task for every shard on a short-lived pool; results come back in shard order
+    private <T> List<T> runAll(ShardTask<T> task) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "shard-io");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<T>> futures = new ArrayList<>(parts.length);
+            for (int s = 0; s < parts.length; s++) {
+                int shard = s;
+                futures.add(pool.submit(() -> task.run(shard)));
+            }
+            List<T> results = new ArrayList<>(parts.length);
+            for (int s = 0; s < futures.size(); s++) {
+                try {
+                    results.add(futures.get(s).get());
+                } catch (ExecutionException e) {
+                    Throwable c = e.getCause();
+                    if (c instanceof IOException io) throw new IOException("shard " + layout.dir(s) + ": " + io.getMessage(), io);
+                    if (c instanceof RuntimeException re) throw re;
+                    throw new IOException(c);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while reading shards");
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,384 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Account statements for AdvancedBankSystem3, streamed from the
+ * transactions_<accNo>.csv files.
+ *
+ * A statement runs the account's history through a fixed pipeline:
+ *   date range   the history index (TransactionHistory) finds the first and
+ *                last line of the period by binary search
+ *   balance      opening balance from the first line of the period (or the
+ *                last one before it), then the balance after every line
+ *   type filter  only the requested types (DEPOSIT, TRANSFER_OUT, ...) are
+ *                written and counted; the running balance still covers all
+ *   totals       credits, debits and count of the written lines, and the
+ *                closing balance of the period
+ *   renderer     CSV, JSON or fixed-width text, straight to a Writer
+ * Lines are decoded and written one at a time, so memory stays the same
+ * however long the history is.
+ *
+ * Month end writes one statement per account for a calendar month into
+ * statements/<yyyy-MM>/<accNo>.<csv|json|txt>, on bank.statements.threads
+ * workers (default: one per processor). Accounts are fed to the workers a
+ * page at a time through a bounded queue, so the whole book is never held.
+ * Admin menu, or headless:
+ *   java AdvancedBankSystem3 --statements 2026-09 [csv|json|text]
+ */
+final class StatementGenerator {
+
+    enum Format {
+        CSV("csv"), JSON("json"), TEXT("txt");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        static Format parse(String s) {
+            return switch (s.trim().toLowerCase(Locale.ROOT)) {
+                case "json" -> JSON;
+                case "text", "txt", "fixed" -> TEXT;
+                default -> CSV;
+            };
+        }
+    }
+
+    /** Period (either end may be null for open-ended), types to include (null = all) and output format. */
+    static final class Spec {
+        final LocalDateTime from, to;
+        final Set<String> types;
+        final Format format;
+
+        Spec(LocalDateTime from, LocalDateTime to, Set<String> types, Format format) {
+            this.from = from;
+            this.to = to;
+            this.types = types;
+            this.format = format;
+        }
+
+        boolean includes(String type) {
+            return types == null || types.contains(type);
+        }
+    }
+
+    /** Period figures, amounts in kobo. */
+    static final class Totals {
+        long opening, closing, credits, debits;
+        int count;
+    }
+
+    /** Writes one statement for a to out. */
+    static Totals write(AdvancedBankSystem3.BankAccount a, Spec spec, Writer out) throws IOException {
+        try (TransactionHistory h = AdvancedBankSystem3.openHistory(a.accountNumber)) {
+            int first = spec.from == null ? 0 : h.firstAtOrAfter(spec.from);
+            int end = spec.to == null ? h.lineCount() : h.firstAtOrAfter(spec.to.plusSeconds(1));
+
+            Totals t = new Totals();
+            // opening: balance before the first line of the period, else after the last line before it,
+            // else (no history at all) the balance on the account
+            if (first < h.lineCount()) t.opening = field(h.line(first), 3, a.balance);
+            else if (first > 0) t.opening = field(h.line(first - 1), 4, a.balance);
+            else t.opening = a.balance;
+            Renderer r = switch (spec.format) {
+                case JSON -> new JsonRenderer(out);
+                case TEXT -> new TextRenderer(out);
+                default -> new CsvRenderer(out);
+            };
+            r.begin(a, spec, t.opening);
+
+            long[] running = { t.opening };
+            h.forEach(first, end, line -> {
+                // timestamp,type,amount,before,after,note
+                String[] p = line.split(",", 6);
+                if (p.length < 5) return;
+                long before, after;
+                try {
+                    before = Money.parse(p[3]);
+                    after = Money.parse(p[4]);
+                } catch (NumberFormatException e) {
+                    return; // damaged line: not part of the statement
+                }
+                long delta = after - before;
+                running[0] = after;
+                if (!spec.includes(p[1])) return;
+                if (delta >= 0) t.credits += delta;
+                else t.debits -= delta;
+                t.count++;
+                r.row(p[0], p[1], delta, after, p.length > 5 ? p[5] : "");
+            });
+            t.closing = running[0];
+            r.end(t);
+            return t;
+        }
+    }
+
+    private static long field(String line, int index, long otherwise) {
+        String[] p = line.split(",", 6);
+        try {
+            return p.length > index ? Money.parse(p[index]) : otherwise;
+        } catch (NumberFormatException e) {
+            return otherwise;
+        }
+    }
+
+    // ---------------- Month end ----------------
+    /** Writes statements for every account for month; returns the number written. */
+    static int monthEnd(YearMonth month, Format format) throws IOException {
+        Spec spec = new Spec(month.atDay(1).atStartOfDay(), month.atEndOfMonth().atTime(23, 59, 59), null, format);
+        Path dir = Paths.get("statements", month.toString());
+        Files.createDirectories(dir);
+        int threads = Math.max(1, Integer.getInteger("bank.statements.threads", Runtime.getRuntime().availableProcessors()));
+        int pageSize = 1024;
+        // bounded hand-off: the reader never gets more than a few pages ahead of the workers
+        ExecutorService pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), r -> {
+                    Thread t = new Thread(r, "statement-worker");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+        try {
+            for (int from = 0; ; from += pageSize) {
+                List<AdvancedBankSystem3.BankAccount> page = AdvancedBankSystem3.accountsPage(from, pageSize);
+                if (page.isEmpty()) break;
+                pool.execute(() -> {
+                    for (AdvancedBankSystem3.BankAccount a : page) {
+                        Path file = dir.resolve(a.accountNumber + "." + format.extension);
+                        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                            write(a, spec, w);
+                            written.incrementAndGet();
+                        } catch (IOException | UncheckedIOException e) {
+                            if (failed.getAndIncrement() < 10) {
+                                System.out.println("Error writing statement for " + a.accountNumber + ": " + e.getMessage());
+                            }
+                        }
+                    }
+                });
+                if (page.size() < pageSize) break;
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.printf("Wrote %d statements for %s to %s in %d ms%s%n", written.get(), month, dir,
+                (System.nanoTime() - start) / 1_000_000, failed.get() > 0 ? " (" + failed.get() + " failed)" : "");
+        return written.get();
+    }
+
+    // ---------------- Renderers ----------------
+    private interface Renderer {
+        void begin(AdvancedBankSystem3.BankAccount a, Spec spec, long opening) throws IOException;
+
+        /** delta is signed: positive credits, negative debits. */
+        void row(String time, String type, long delta, long balance, String note) throws IOException;
+
+        void end(Totals t) throws IOException;
+    }
+
+    // One StringBuilder per statement, cleared for every row
+    private abstract static class Buffered implements Renderer {
+        final Writer out;
+        final StringBuilder sb = new StringBuilder(160);
+
+        Buffered(Writer out) {
+            this.out = out;
+        }
+
+        void emit() throws IOException {
+            out.append(sb);
+            sb.setLength(0);
+        }
+
+        static String period(LocalDateTime t, String otherwise) {
+            return t == null ? otherwise : t.format(AdvancedBankSystem3.TF);
+        }
+    }
+
+    /** Header row, one row per transaction, then OPENING/TOTAL/CLOSING summary rows. */
+    private static final class CsvRenderer extends Buffered {
+        CsvRenderer(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void begin(AdvancedBankSystem3.BankAccount a, Spec spec, long opening) throws IOException {
+            sb.append("timestamp,type,debit,credit,balance,note\n");
+            sb.append(period(spec.from, "")).append(",OPENING,,,");
+            Money.appendTo(sb, opening).append(",\n");
+            emit();
+        }
+
+        @Override
+        public void row(String time, String type, long delta, long balance, String note) throws IOException {
+            sb.append(time).append(',').append(type).append(',');
+            if (delta < 0) Money.appendTo(sb, -delta);
+            sb.append(',');
+            if (delta >= 0) Money.appendTo(sb, delta);
+            sb.append(',');
+            Money.appendTo(sb, balance).append(',');
+            quote(note).append('\n');
+            emit();
+        }
+
+        @Override
+        public void end(Totals t) throws IOException {
+            sb.append(",TOTAL,");
+            Money.appendTo(sb, t.debits).append(',');
+            Money.appendTo(sb, t.credits).append(",,").append(t.count).append(" transactions\n");
+            sb.append(",CLOSING,,,");
+            Money.appendTo(sb, t.closing).append(",\n");
+            emit();
+        }
+
+        private StringBuilder quote(String s) {
+            if (s.indexOf(',') < 0 && s.indexOf('"') < 0) return sb.append(s);
+            return sb.append('"').append(s.replace("\"", "\"\"")).append('"');
+        }
+    }
+
+    /** One JSON object; transactions are written as an array element by element. */
+    private static final class JsonRenderer extends Buffered {
+        private boolean first = true;
+
+        JsonRenderer(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void begin(AdvancedBankSystem3.BankAccount a, Spec spec, long opening) throws IOException {
+            sb.append("{\"account\":");
+            Json.quote(sb, a.accountNumber).append(",\"name\":");
+            Json.quote(sb, a.name).append(",\"from\":");
+            if (spec.from == null) sb.append("null"); else Json.quote(sb, period(spec.from, ""));
+            sb.append(",\"to\":");
+            if (spec.to == null) sb.append("null"); else Json.quote(sb, period(spec.to, ""));
+            sb.append(",\"opening\":\"");
+            Money.appendTo(sb, opening).append("\",\"transactions\":[");
+            emit();
+        }
+
+        @Override
+        public void row(String time, String type, long delta, long balance, String note) throws IOException {
+            if (!first) sb.append(',');
+            first = false;
+            sb.append("\n{\"timestamp\":");
+            Json.quote(sb, time).append(",\"type\":");
+            Json.quote(sb, type).append(",\"amount\":\"");
+            Money.appendTo(sb, delta).append("\",\"balance\":\"");
+            Money.appendTo(sb, balance).append("\",\"note\":");
+            Json.quote(sb, note).append('}');
+            emit();
+        }
+
+        @Override
+        public void end(Totals t) throws IOException {
+            sb.append("],\"count\":").append(t.count).append(",\"credits\":\"");
+            Money.appendTo(sb, t.credits).append("\",\"debits\":\"");
+            Money.appendTo(sb, t.debits).append("\",\"closing\":\"");
+            Money.appendTo(sb, t.closing).append("\"}\n");
+            emit();
+        }
+    }
+
+    /** Fixed-width columns for printing. */
+    private static final class TextRenderer extends Buffered {
+        private static final int TIME = 19, TYPE = 14, MONEY = 15;
+        private static final int WIDTH = TIME + 1 + TYPE + 3 * MONEY + 2 + 24;
+
+        TextRenderer(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void begin(AdvancedBankSystem3.BankAccount a, Spec spec, long opening) throws IOException {
+            sb.append("STATEMENT OF ACCOUNT\n");
+            sb.append("Account : ").append(a.accountNumber).append("  ").append(a.name).append('\n');
+            sb.append("Period  : ").append(period(spec.from, "start")).append(" to ").append(period(spec.to, "now")).append('\n');
+            line();
+            pad(sb.append("Date"), TIME + 1);
+            pad(sb.append("Type"), TIME + 1 + TYPE);
+            right("Debit", MONEY);
+            right("Credit", MONEY);
+            right("Balance", MONEY);
+            sb.append("  Note\n");
+            line();
+            pad(sb, TIME + 1);
+            pad(sb.append("OPENING"), TIME + 1 + TYPE);
+            skip(2 * MONEY);
+            money(opening);
+            sb.append('\n');
+            emit();
+        }
+
+        @Override
+        public void row(String time, String type, long delta, long balance, String note) throws IOException {
+            pad(sb.append(time), TIME + 1);
+            pad(sb.append(type), TIME + 1 + TYPE);
+            if (delta < 0) money(-delta); else skip(MONEY);
+            if (delta >= 0) money(delta); else skip(MONEY);
+            money(balance);
+            sb.append("  ").append(note).append('\n');
+            emit();
+        }
+
+        @Override
+        public void end(Totals t) throws IOException {
+            line();
+            pad(sb, TIME + 1);
+            pad(sb.append("TOTAL"), TIME + 1 + TYPE);
+            money(t.debits);
+            money(t.credits);
+            skip(MONEY);
+            sb.append("  ").append(t.count).append(" transactions\n");
+            pad(sb, TIME + 1);
+            pad(sb.append("CLOSING"), TIME + 1 + TYPE);
+            skip(2 * MONEY);
+            money(t.closing);
+            sb.append('\n');
+            emit();
+        }
+
+        private void line() {
+            for (int i = 0; i < WIDTH; i++) sb.append('-');
+            sb.append('\n');
+        }
+
+        // pads the current line with spaces up to column col
+        private static StringBuilder pad(StringBuilder sb, int col) {
+            int lineStart = sb.lastIndexOf("\n") + 1;
+            while (sb.length() - lineStart < col) sb.append(' ');
+            return sb;
+        }
+
+        private void skip(int width) {
+            for (int i = 0; i < width; i++) sb.append(' ');
+        }
+
+        private void right(String s, int width) {
+            for (int i = s.length(); i < width; i++) sb.append(' ');
+            sb.append(s);
+        }
+
+        // right-aligned amount in a MONEY-wide column
+        private void money(long kobo) {
+            int at = sb.length();
+            Money.appendTo(sb, kobo);
+            int len = sb.length() - at;
+            for (int i = len; i < MONEY; i++) sb.insert(at, ' ');
+        }
+    }
+}
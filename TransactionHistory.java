@@ -0,0 +1,313 @@
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only view of one transactions_<accNo>.csv file for paged and
+ * date-range queries (admin transaction view, statements, HTTP history).
+ *
+ * The CSV is memory-mapped and a sidecar index <file>.idx records, for every
+ * line, its byte offset and its timestamp. "Last N" and "page K" go straight
+ * to the right offsets and "between T1 and T2" is a binary search on the
+ * timestamps, so only the requested lines are ever decoded.
+ *
+ * The index is brought up to date each time a history is opened: only the
+ * bytes appended since the last open are scanned. If the CSV shrank or was
+ * replaced, the index is rebuilt from scratch.
+ *
+ * Index layout (big-endian longs):
+ *   header  indexedBytes, lineCount
+ *   entries lineCount x (offset, epochSecond)
+ * Timestamps are "yyyy-MM-dd HH:mm:ss" local times, compared as written.
+ * Lines are appended in time order, which the range search relies on.
+ *
+ * close() unmaps both files at once rather than whenever the GC gets to it.
+ * Windows cannot delete a mapped file, so delete() puts off a file that an
+ * open history still maps until that history is closed.
+ */
+class TransactionHistory implements Closeable {
+
+    private static final int HEADER = 16;
+    private static final int ENTRY = 16;
+
+    // files whose delete failed because a history still mapped them; retried as histories close
+    private static final Set<String> deleteOnClose = ConcurrentHashMap.newKeySet();
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER; // sun.misc.Unsafe.invokeCleaner, null if unavailable
+
+    static {
+        Object unsafe = null;
+        Method cleaner = null;
+        try {
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            Field f = c.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+            cleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // no early unmapping: the GC unmaps, and deletes on Windows wait for it
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = cleaner;
+    }
+
+    private final String csvFile;
+    private final ByteBuffer data;     // mapped CSV, up to indexedBytes
+    private final LongBuffer entries;  // mapped index entries
+    private final MappedByteBuffer dataMap, indexMap; // the mappings themselves, null if none
+    private final int lines;
+    private volatile boolean closed;
+
+    private TransactionHistory(String csvFile, MappedByteBuffer dataMap, MappedByteBuffer indexMap, int lines) {
+        this.csvFile = csvFile;
+        this.dataMap = dataMap;
+        this.indexMap = indexMap;
+        this.data = dataMap != null ? dataMap : ByteBuffer.allocate(0);
+        this.entries = indexMap != null ? indexMap.asLongBuffer() : LongBuffer.allocate(0);
+        this.lines = lines;
+    }
+
+    static String indexFile(String csvFile) {
+        return csvFile + ".idx";
+    }
+
+    /** Opens csvFile, indexing any lines added since the last open. Missing file = empty history. */
+    static TransactionHistory open(String csvFile) throws IOException {
+        Path csv = Paths.get(csvFile);
+        if (!Files.exists(csv)) return new TransactionHistory(csvFile, null, null, 0);
+
+        try (FileChannel dataCh = FileChannel.open(csv, StandardOpenOption.READ);
+             FileChannel idxCh = FileChannel.open(Paths.get(indexFile(csvFile)),
+                     StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            long size = dataCh.size();
+            if (size > Integer.MAX_VALUE) throw new IOException(csvFile + " is too large to map");
+            MappedByteBuffer data = dataCh.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            try {
+                long indexedBytes = 0;
+                long count = 0;
+                if (idxCh.size() >= HEADER) {
+                    ByteBuffer h = ByteBuffer.allocate(HEADER);
+                    idxCh.read(h, 0);
+                    h.flip();
+                    indexedBytes = h.getLong();
+                    count = h.getLong();
+                    if (indexedBytes > size || idxCh.size() < HEADER + count * ENTRY) {
+                        indexedBytes = 0; // CSV was truncated or replaced, or the index is damaged
+                        count = 0;
+                    }
+                }
+                if (indexedBytes < size) {
+                    long[] added = indexTail(data, (int) indexedBytes, count == 0 ? Long.MIN_VALUE : lastTime(idxCh, count));
+                    int n = (int) added[added.length - 1];
+                    if (n > 0) {
+                        ByteBuffer buf = ByteBuffer.allocate(n * ENTRY);
+                        for (int i = 0; i < n; i++) buf.putLong(added[2 * i]).putLong(added[2 * i + 1]);
+                        buf.flip();
+                        idxCh.write(buf, HEADER + count * ENTRY);
+                        count += n;
+                        indexedBytes = added[2 * n];
+                    }
+                    // header last: a crash before this point just leaves entries that get overwritten
+                    ByteBuffer h = ByteBuffer.allocate(HEADER).putLong(indexedBytes).putLong(count);
+                    h.flip();
+                    idxCh.write(h, 0);
+                }
+                MappedByteBuffer entries = count == 0 ? null : idxCh.map(FileChannel.MapMode.READ_ONLY, HEADER, count * ENTRY);
+                data.limit((int) indexedBytes);
+                return new TransactionHistory(csvFile, data, entries, (int) count);
+            } catch (IOException | RuntimeException e) {
+                unmap(data);
+                throw e;
+            }
+        }
+    }
+
+    /** Unmaps the files. The history must not be used afterwards. */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        unmap(dataMap);
+        unmap(indexMap);
+        if (deleteOnClose.contains(csvFile) && deleteFiles(csvFile)) deleteOnClose.remove(csvFile);
+    }
+
+    private static void unmap(MappedByteBuffer b) {
+        if (b == null || INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, b);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the GC
+        }
+    }
+
+    /**
+     * Deletes csvFile and its index (when the account is deleted). If an open
+     * history still maps them and the OS refuses (Windows), they are deleted
+     * when that history is closed.
+     */
+    static void delete(String csvFile) {
+        if (!deleteFiles(csvFile)) deleteOnClose.add(csvFile);
+    }
+
+    private static boolean deleteFiles(String csvFile) {
+        boolean deleted = true;
+        for (String f : new String[] { csvFile, indexFile(csvFile) }) {
+            try {
+                Files.deleteIfExists(Paths.get(f));
+            } catch (IOException e) {
+                deleted = false;
+            }
+        }
+        return deleted;
+    }
+
+    int lineCount() { return lines; }
+
+    /** Lines from (inclusive) to (exclusive), oldest first. */
+    List<String> lines(int from, int to) {
+        from = Math.max(0, from);
+        to = Math.min(lines, to);
+        List<String> out = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) out.add(line(i));
+        return out;
+    }
+
+    List<String> last(int n) {
+        return lines(lines - Math.max(0, Math.min(n, lines)), lines);
+    }
+
+    /** Page k (1-based) of pageSize lines, oldest first; empty past the end. */
+    List<String> page(int k, int pageSize) {
+        long from = (k - 1L) * pageSize; // as a long: k comes straight from ?page=
+        if (k < 1 || pageSize < 1 || from >= lines) return List.of();
+        return lines((int) from, (int) Math.min(lines, from + pageSize));
+    }
+
+    int pageCount(int pageSize) {
+        return (lines + pageSize - 1) / pageSize;
+    }
+
+    /** Lines with from <= timestamp <= to. */
+    List<String> between(LocalDateTime from, LocalDateTime to) {
+        return between(from, to, Integer.MAX_VALUE);
+    }
+
+    /** The first (oldest) max lines with from <= timestamp <= to. */
+    List<String> between(LocalDateTime from, LocalDateTime to, int max) {
+        long lo = from.toEpochSecond(ZoneOffset.UTC);
+        long hi = to.toEpochSecond(ZoneOffset.UTC);
+        int start = firstAtOrAfter(lo);
+        return lines(start, (int) Math.min(firstAtOrAfter(hi + 1), (long) start + max));
+    }
+
+    /** Position of the first line with timestamp >= t (lineCount() if there is none). */
+    int firstAtOrAfter(LocalDateTime t) {
+        return firstAtOrAfter(t.toEpochSecond(ZoneOffset.UTC));
+    }
+
+    interface LineSink {
+        void accept(String line) throws IOException;
+    }
+
+    /** Feeds lines from (inclusive) to (exclusive) one at a time, so nothing accumulates however long the range. */
+    void forEach(int from, int to, LineSink sink) throws IOException {
+        to = Math.min(lines, to);
+        for (int i = Math.max(0, from); i < to; i++) sink.accept(line(i));
+    }
+
+    private int firstAtOrAfter(long epochSecond) {
+        if (closed) throw new IllegalStateException("history of " + csvFile + " is closed");
+        int lo = 0, hi = lines;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (entries.get(2 * mid + 1) < epochSecond) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    String line(int i) {
+        if (closed) throw new IllegalStateException("history of " + csvFile + " is closed");
+        int start = (int) entries.get(2 * i);
+        int end = i + 1 < lines ? (int) entries.get(2 * i + 2) : data.limit();
+        while (end > start && (data.get(end - 1) == '\n' || data.get(end - 1) == '\r')) end--;
+        byte[] b = new byte[end - start];
+        data.get(start, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static long lastTime(FileChannel idxCh, long count) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(8);
+        idxCh.read(b, HEADER + (count - 1) * ENTRY + 8);
+        b.flip();
+        return b.getLong();
+    }
+
+    /**
+     * Scans complete lines from pos. Returns {off0, t0, off1, t1, ..., endOfLastLine, n}.
+     * An unreadable timestamp inherits the previous one, so times never go backwards.
+     */
+    private static long[] indexTail(ByteBuffer data, int pos, long prevTime) {
+        int limit = data.capacity();
+        long[] out = new long[64];
+        int n = 0;
+        int end = pos;
+        while (pos < limit) {
+            int nl = pos;
+            while (nl < limit && data.get(nl) != '\n') nl++;
+            if (nl == limit) break; // partial last line; pick it up next time
+            long t = parseTimestamp(data, pos, nl);
+            if (t == Long.MIN_VALUE || t < prevTime) t = prevTime;
+            prevTime = t;
+            if (2 * n + 3 > out.length) out = Arrays.copyOf(out, out.length * 2);
+            out[2 * n] = pos;
+            out[2 * n + 1] = t;
+            n++;
+            pos = nl + 1;
+            end = pos;
+        }
+        if (2 * n + 2 > out.length) out = Arrays.copyOf(out, 2 * n + 2);
+        out[2 * n] = end;
+        out[out.length - 1] = n;
+        return out;
+    }
+
+    /** Parses "yyyy-MM-dd HH:mm:ss" at pos to epoch seconds (as UTC); Long.MIN_VALUE if malformed. */
+    private static long parseTimestamp(ByteBuffer b, int pos, int limit) {
+        if (limit - pos < 19) return Long.MIN_VALUE;
+        int year = digits(b, pos, 4), month = digits(b, pos + 5, 2), day = digits(b, pos + 8, 2);
+        int hour = digits(b, pos + 11, 2), min = digits(b, pos + 14, 2), sec = digits(b, pos + 17, 2);
+        if ((year | month | day | hour | min | sec) < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return Long.MIN_VALUE;
+        }
+        // days from civil (proleptic Gregorian), avoids creating a LocalDateTime per line
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097L + doe - 719468;
+        return days * 86400 + hour * 3600 + min * 60 + sec;
+    }
+
+    private static int digits(ByteBuffer b, int pos, int len) {
+        int v = 0;
+        for (int i = pos; i < pos + len; i++) {
+            int d = b.get(i) - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+}
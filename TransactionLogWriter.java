@@ -0,0 +1,238 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Long-lived writer for the per-account transactions_<accNo>.csv files.
+ *
+ * Instead of opening and closing the file for every line, writers are kept
+ * open in a small LRU cache (least recently used file is closed when the
+ * cache is full). Lines are buffered in memory and written out in batches
+ * (group commit) by a background thread every flushMillis.
+ *
+ * Fsync policy:
+ *  - ALWAYS      every append is flushed and synced before append() returns;
+ *                appendAll() writes its whole batch, then syncs each file once
+ *  - INTERVAL    batches are flushed and synced every flushMillis (default);
+ *                files evicted from the cache are synced on the next tick
+ *                rather than while the caller waits
+ *  - ON_SHUTDOWN batches are flushed every flushMillis, synced only on close
+ *                (files evicted from the cache are closed without a sync)
+ *
+ * Settings (system properties): bank.txlog.fsync=always|interval|shutdown,
+ * bank.txlog.maxOpen (default 64), bank.txlog.flushMs (default 200).
+ * The lines written are exactly what logTransaction() produced before.
+ */
+class TransactionLogWriter {
+
+    private static final Metrics.Op M_APPEND = Metrics.op("io.txlog.append");
+    private static final Metrics.Op M_SYNC = Metrics.op("io.txlog.fsync");
+
+    enum FsyncPolicy {
+        ALWAYS, INTERVAL, ON_SHUTDOWN;
+
+        /** always|interval|shutdown from a system property, default interval. */
+        static FsyncPolicy fromProperty(String name) {
+            return switch (System.getProperty(name, "interval").trim().toLowerCase(Locale.ROOT)) {
+                case "always" -> ALWAYS;
+                case "shutdown", "on_shutdown" -> ON_SHUTDOWN;
+                default -> INTERVAL;
+            };
+        }
+    }
+
+    private static class OpenLog {
+        final FileOutputStream fos;
+        final Writer writer;
+        boolean dirty;  // buffered lines not yet written to the file
+        boolean unsynced; // written to the file but not yet fsynced
+        boolean closed;   // evicted or closed; an evicted file left unsynced is in evictedUnsynced
+
+        OpenLog(File file) throws IOException {
+            fos = new FileOutputStream(file, true);
+            writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8), 8192);
+        }
+    }
+
+    private final FsyncPolicy policy;
+    private final LinkedHashMap<String, OpenLog> open;
+    private Set<String> evictedUnsynced = new HashSet<>(); // closed with lines not yet synced (INTERVAL)
+    private final ScheduledExecutorService flusher;
+
+    TransactionLogWriter(FsyncPolicy policy, int maxOpen, long flushMillis) {
+        this.policy = policy;
+        // access-ordered map: the eldest entry is the least recently used file
+        this.open = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OpenLog> eldest) {
+                if (size() <= maxOpen) return false;
+                // no sync while the caller waits: the flusher syncs evicted files on its next tick
+                OpenLog log = eldest.getValue();
+                closeQuietly(log, false);
+                if (policy != FsyncPolicy.ON_SHUTDOWN && log.unsynced) evictedUnsynced.add(eldest.getKey());
+                return true;
+            }
+        };
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "txlog-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        if (policy != FsyncPolicy.ALWAYS) {
+            flusher.scheduleWithFixedDelay(this::flushAllQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::closeAll, "txlog-shutdown"));
+    }
+
+    static TransactionLogWriter fromSystemProperties() {
+        return new TransactionLogWriter(FsyncPolicy.fromProperty("bank.txlog.fsync"),
+                Integer.getInteger("bank.txlog.maxOpen", 64),
+                Long.getLong("bank.txlog.flushMs", 200L));
+    }
+
+    /** Queues one line (without line separator) for the given file. */
+    synchronized void append(String fileName, String line) throws IOException {
+        OpenLog log = write(fileName, line);
+        if (policy == FsyncPolicy.ALWAYS) flush(log, true);
+    }
+
+    /**
+     * Queues a batch of lines grouped by file, taking the writer lock once.
+     * Under ALWAYS the batch is one group commit: every line is written
+     * first, then each file it touched is flushed and synced once.
+     */
+    synchronized void appendAll(Map<String, List<String>> linesByFile) throws IOException {
+        List<OpenLog> touched = new ArrayList<>(linesByFile.size());
+        for (Map.Entry<String, List<String>> e : linesByFile.entrySet()) {
+            OpenLog log = null;
+            for (String line : e.getValue()) log = write(e.getKey(), line);
+            if (log != null) touched.add(log);
+        }
+        if (policy != FsyncPolicy.ALWAYS) return;
+        for (OpenLog log : touched) {
+            if (!log.closed) flush(log, true);
+        }
+        syncEvicted(); // files the batch itself pushed out of the cache
+    }
+
+    // Buffers one line in fileName's writer, opening it if needed
+    private OpenLog write(String fileName, String line) throws IOException {
+        OpenLog log = open.get(fileName);
+        if (log == null) {
+            log = new OpenLog(new File(fileName));
+            open.put(fileName, log);
+        }
+        long t0 = M_APPEND.start();
+        log.writer.write(line);
+        log.writer.write(System.lineSeparator());
+        M_APPEND.stop(t0, utf8Length(line) + System.lineSeparator().length());
+        log.dirty = true;
+        return log;
+    }
+
+    // Bytes line takes in the file, without encoding it a second time
+    private static int utf8Length(String line) {
+        int n = line.length();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c >= 0x800) {
+                n += Character.isSurrogate(c) ? 1 : 2; // a surrogate pair is 4 bytes for 2 chars
+            } else if (c >= 0x80) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** Makes everything appended to fileName visible to readers of the file. */
+    synchronized void flush(String fileName) throws IOException {
+        OpenLog log = open.get(fileName);
+        if (log != null) flush(log, false);
+    }
+
+    /** Flushes and closes fileName (e.g. before the file is deleted). */
+    synchronized void close(String fileName) {
+        OpenLog log = open.remove(fileName);
+        if (log != null) closeQuietly(log, true);
+    }
+
+    synchronized void flushAll() throws IOException {
+        for (OpenLog log : open.values()) flush(log, policy == FsyncPolicy.INTERVAL);
+    }
+
+    /** Flushes and syncs every open or recently evicted file, whatever the policy (before the journal is reset). */
+    void syncAll() throws IOException {
+        synchronized (this) {
+            for (OpenLog log : open.values()) flush(log, true);
+        }
+        syncEvicted();
+    }
+
+    void closeAll() {
+        synchronized (this) {
+            for (OpenLog log : open.values()) closeQuietly(log, true);
+            open.clear();
+        }
+        try {
+            syncEvicted();
+        } catch (IOException e) {
+            System.out.println("Error syncing transaction logs: " + e.getMessage());
+        }
+    }
+
+    private void flushAllQuietly() {
+        try {
+            flushAll();
+            syncEvicted();
+        } catch (IOException e) {
+            System.out.println("Error flushing transaction logs: " + e.getMessage());
+        }
+    }
+
+    // Syncs files closed by eviction since the last call; each once, outside the writer lock
+    private void syncEvicted() throws IOException {
+        Set<String> files;
+        synchronized (this) {
+            if (evictedUnsynced.isEmpty()) return;
+            files = evictedUnsynced;
+            evictedUnsynced = new HashSet<>();
+        }
+        for (String f : files) {
+            try (FileChannel ch = FileChannel.open(Paths.get(f), StandardOpenOption.READ)) {
+                ch.force(false);
+            } catch (NoSuchFileException deleted) {
+                // account deleted meanwhile
+            }
+        }
+    }
+
+    private void flush(OpenLog log, boolean sync) throws IOException {
+        if (log.dirty) {
+            log.writer.flush();
+            log.dirty = false;
+            log.unsynced = true;
+        }
+        if (sync && log.unsynced) {
+            long t0 = M_SYNC.start();
+            log.fos.getFD().sync();
+            M_SYNC.stop(t0);
+            log.unsynced = false;
+        }
+    }
+
+    private void closeQuietly(OpenLog log, boolean sync) {
+        log.closed = true;
+        try {
+            flush(log, sync);
+        } catch (IOException e) {
+            System.out.println("Error flushing transaction log: " + e.getMessage());
+        }
+        try {
+            log.writer.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
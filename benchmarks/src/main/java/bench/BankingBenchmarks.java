@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH suite for AdvancedBankSystem3: account lookup, CSV parsing, snapshot
+ * save and load, and transaction logging, over books of 10^3 to 10^7
+ * accounts. The workloads are those of BankBenchmark.Fixture.
+ *
+ * Run from an empty scratch directory (the book, its journal and the
+ * transaction files are written to the working directory; forks of one run
+ * share it):
+ *   java -jar benchmarks.jar BankingBenchmarks -p size=1000,10000,100000
+ * 10^6 and 10^7 accounts need a larger heap, e.g. -jvmArgsAppend -Xmx8g.
+ * Fast operations are timed in batches of BATCH calls and reported per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BankingBenchmarks {
+
+    static final int BATCH = 1000;
+
+    @Param({ "1000", "10000", "100000", "1000000", "10000000" })
+    public int size;
+
+    private LongUnaryOperator find, fromCsv, save, load, log;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Object f = Workloads.fixture(size);
+        find = Workloads.op(f, "findByAccountNumber");
+        fromCsv = Workloads.op(f, "BankAccount.fromCSV");
+        save = Workloads.op(f, "saveAccounts");
+        load = Workloads.op(f, "loadAccounts");
+        log = Workloads.op(f, "logTransaction");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long findByAccountNumber() {
+        return find.applyAsLong(BATCH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long fromCSV() {
+        return fromCsv.applyAsLong(BATCH);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long saveAccounts() {
+        return save.applyAsLong(1);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long loadAccounts() {
+        return load.applyAsLong(1);
+    }
+
+    /** Appends BATCH lines over 1000 files, then flushes them (one group commit per batch). */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long logTransaction() {
+        return log.applyAsLong(BATCH);
+    }
+}
@@ -0,0 +1,44 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH suite for the billing systems: rendering a MarketBillingSystem receipt
+ * of 10^3 and 10^4 lines, and recording a MarketBillingSystem6 sale (queued
+ * for SalesLog's writer, which appends to sales_<date>.csv in the working
+ * directory). Run from a scratch directory, as BankingBenchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BillingBenchmarks {
+
+    @Param({ "1000", "10000" })
+    public int lines;
+
+    private LongUnaryOperator receipt, saveSale;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Object f = Workloads.fixture(lines);
+        receipt = Workloads.op(f, "Bill.generateReceipt");
+        saveSale = Workloads.op(f, "MarketBillingSystem6.saveSale");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long generateReceipt() {
+        return receipt.applyAsLong(1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BankingBenchmarks.BATCH)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long saveSale() {
+        return saveSale.applyAsLong(BankingBenchmarks.BATCH);
+    }
+}
@@ -0,0 +1,43 @@
+package bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Bridge to BankBenchmark.Fixture. The code under test is in the default
+ * package, which named packages (and so JMH's generated code) cannot import;
+ * the fixture is therefore built by reflection once per trial, and its
+ * operations come back as plain LongUnaryOperators, called directly.
+ */
+final class Workloads {
+
+    private Workloads() { }
+
+    /** Builds the book (size accounts) and bill the operations run on. */
+    static Object fixture(int size) {
+        try {
+            return Class.forName("BankBenchmark$Fixture").getConstructor(int.class).newInstance(size);
+        } catch (InvocationTargetException e) {
+            throw rethrow(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BankBenchmark is not on the class path", e);
+        }
+    }
+
+    /** The named workload; applyAsLong(n) runs it n times. */
+    static LongUnaryOperator op(Object fixture, String name) {
+        try {
+            return (LongUnaryOperator) fixture.getClass().getMethod("op", String.class).invoke(fixture, name);
+        } catch (InvocationTargetException e) {
+            throw rethrow(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException r) return r;
+        if (t instanceof Error err) throw err;
+        return new IllegalStateException(t);
+    }
+}